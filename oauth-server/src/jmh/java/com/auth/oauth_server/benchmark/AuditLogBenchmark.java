@@ -0,0 +1,54 @@
+package com.auth.oauth_server.benchmark;
+
+import com.auth.oauth_server.service.AuditLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 監査イベントの記録 (リクエストスレッド側の負担)
+ * 書き出しスレッドも同時に動いているので、CPU が少ない環境ではその分も含まれる。
+ * 書き出しが追いつかずに捨てた件数は終了時に出力する
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AuditLogBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private AuditLog auditLog;
+    private Path dir;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("audit-jmh");
+        context = BenchmarkContext.start("--oauth.audit.dir=" + dir, "--oauth.audit.max-segments=2");
+        auditLog = context.getBean(AuditLog.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%n[audit] written=%d, dropped=%d%n", auditLog.written(), auditLog.dropped());
+        context.close();
+    }
+
+    @Benchmark
+    public void record() {
+        auditLog.record(AuditLog.Type.TOKEN_ISSUED, "admin", "client-app", "read write");
+    }
+
+    @Benchmark
+    public void recordCode() {
+        auditLog.recordCode(AuditLog.Type.CODE_ISSUED, "admin", "client-app", "0b5f3c1e-8d2a-4c7b-9e61-3f0a2d4b6c88");
+    }
+}
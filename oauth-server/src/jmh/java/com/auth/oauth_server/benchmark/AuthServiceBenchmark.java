@@ -0,0 +1,115 @@
+package com.auth.oauth_server.benchmark;
+
+import com.auth.oauth_server.controller.AuthController;
+import com.auth.oauth_server.service.AuthService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AuthService のリクエストごとに呼ばれる処理
+ * 認可コードの発行・消費は複数スレッドから同じストアに対して行う (競合時の性能)
+ * tokenExchange は authorization_code でのトークン発行 (tokens/s) を、
+ * クライアントシークレットのキャッシュの有無 (ttl 0 = 無効) で比較する。BCrypt は既定のコスト 10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AuthServiceBenchmark {
+
+    private static final String VERIFIER = "dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk";
+
+    private ConfigurableApplicationContext context;
+    private AuthService authService;
+    private String s256Challenge;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = BenchmarkContext.start();
+        authService = context.getBean(AuthService.class);
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(VERIFIER.getBytes(StandardCharsets.US_ASCII));
+        s256Challenge = Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean verifyPkcePlain() {
+        return authService.verifyPkce(VERIFIER, "plain", VERIFIER);
+    }
+
+    @Benchmark
+    public boolean verifyPkceS256() {
+        return authService.verifyPkce(s256Challenge, "S256", VERIFIER);
+    }
+
+    @Benchmark
+    public boolean validateScope() {
+        return authService.validateScope("client-app", "read");
+    }
+
+    // スペース区切りの複数スコープ (正規化した文字列まで作る)
+    @Benchmark
+    public String grantMultiScope() {
+        return authService.grantScope("client-app", "write read");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public AuthService.AuthCodeData createAndConsumeCode() {
+        String code = authService.createAuthorizationCode("admin", "client-app", "read", s256Challenge, "S256", "http://localhost:8080/callback");
+        return authService.consumeCode(code);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public ResponseEntity<?> tokenExchange(TokenExchange exchange) {
+        String code = exchange.authService.createAuthorizationCode("admin", "client-app", "read", null, null, "http://localhost:8080/callback");
+        return exchange.controller.getToken("authorization_code", code, "http://localhost:8080/callback", null, null, null, "client-app", "123456");
+    }
+
+    // トークン発行用の別コンテキスト (シークレットキャッシュの設定と BCrypt のコストが他のベンチマークと異なる)
+    @State(Scope.Benchmark)
+    public static class TokenExchange {
+
+        @Param({"0", "300"})
+        public int secretCacheTtlSeconds;
+
+        private ConfigurableApplicationContext context;
+        private AuthService authService;
+        private AuthController controller;
+
+        @Setup
+        public void setUp() {
+            context = BenchmarkContext.start(
+                    "--oauth.password.bcrypt-strength=10",
+                    "--oauth.client-secret-cache.ttl-seconds=" + secretCacheTtlSeconds,
+                    "--oauth.rate-limit.enabled=false");
+            authService = context.getBean(AuthService.class);
+            controller = context.getBean(AuthController.class);
+        }
+
+        @TearDown
+        public void tearDown() {
+            context.close();
+        }
+    }
+}
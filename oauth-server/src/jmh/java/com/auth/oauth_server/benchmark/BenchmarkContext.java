@@ -0,0 +1,41 @@
+package com.auth.oauth_server.benchmark;
+
+import com.auth.oauth_server.OauthServerApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ベンチマーク対象の Bean を取り出すための Web なしアプリケーションコンテキスト
+ * 各ベンチマークの @Setup(Level.Trial) で起動し、@TearDown で閉じる
+ * overrides に既定値と同じプロパティがあれば置き換える (同じ引数を 2 回渡すとカンマで連結されるため)
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {}
+
+    static ConfigurableApplicationContext start(String... overrides) {
+        Map<String, String> args = new LinkedHashMap<>();
+        for (String arg : List.of(
+                "--spring.datasource.url=jdbc:h2:mem:jmh;DB_CLOSE_DELAY=-1",
+                "--oauth.password.bcrypt-strength=4",
+                "--logging.level.root=WARN")) {
+            args.put(name(arg), arg);
+        }
+        for (String arg : overrides) {
+            args.put(name(arg), arg);
+        }
+        return new SpringApplicationBuilder(OauthServerApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.values().toArray(String[]::new));
+    }
+
+    private static String name(String arg) {
+        int eq = arg.indexOf('=');
+        return eq < 0 ? arg : arg.substring(0, eq);
+    }
+}
@@ -0,0 +1,64 @@
+package com.auth.oauth_server.benchmark;
+
+import com.auth.oauth_server.service.JwtService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT の発行と検証 (extractUsername / extractScope)
+ * verifiedCacheSize=0 は毎回署名検証する場合、それ以外は検証済みキャッシュに当たる場合
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtServiceBenchmark {
+
+    @Param({"RS256", "ES256", "HS256"})
+    public String algorithm;
+
+    @Param({"0", "10000"})
+    public int verifiedCacheSize;
+
+    private ConfigurableApplicationContext context;
+    private JwtService jwtService;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(
+                "--jwt.signing-algorithm=" + algorithm,
+                "--jwt.verified-cache.max-size=" + verifiedCacheSize);
+        jwtService = context.getBean(JwtService.class);
+        token = jwtService.generateToken("admin", "read write", "client-app");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken("admin", "read write", "client-app");
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return jwtService.extractUsername(token);
+    }
+
+    @Benchmark
+    public String extractScope() {
+        return jwtService.extractScope(token);
+    }
+}
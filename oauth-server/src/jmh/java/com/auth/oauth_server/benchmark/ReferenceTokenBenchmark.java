@@ -0,0 +1,77 @@
+package com.auth.oauth_server.benchmark;
+
+import com.auth.oauth_server.service.JwtService;
+import com.auth.oauth_server.service.ReferenceTokenStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 参照型アクセストークン (ReferenceTokenStore) と JWT の比較
+ * liveTokens 件を表に載せた状態で JwtService.verify (ハンドルは表の参照) の時間を測る。
+ * JWT 側は JwtServiceBenchmark の extractUsername (verifiedCacheSize=0 / 10000) と比べる。
+ * セットアップ時にトークン長と、100 万件あたりのヒープ増加量 (GC 後) を出力する
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReferenceTokenBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int liveTokens;
+
+    private ConfigurableApplicationContext context;
+    private JwtService jwtService;
+    private ReferenceTokenStore store;
+    private String handle;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("--oauth.reference-token.capacity=" + (liveTokens * 2));
+        jwtService = context.getBean(JwtService.class);
+        store = context.getBean(ReferenceTokenStore.class);
+
+        long expiresAt = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        long before = usedHeap();
+        for (int i = 0; i < liveTokens; i++) {
+            handle = store.issue("user" + (i % 1000), "read write", "client-app", expiresAt);
+        }
+        long after = usedHeap();
+        String jwt = jwtService.generateToken("admin", "read write", "client-app");
+        System.out.printf("%n[reference] live=%d, handle=%d chars, jwt=%d chars, heap/1M tokens=%.1f MB%n",
+                store.size(), handle.length(), jwt.length(), (after - before) * 1_000_000.0 / liveTokens / (1024 * 1024));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public JwtService.VerifiedToken verify() {
+        return jwtService.verify(handle);
+    }
+
+    // 発行したものはすぐ失効させる (表の件数を liveTokens のまま保つ)
+    @Benchmark
+    public boolean issueAndRevoke() {
+        return store.revoke(store.issue("admin", "read write", "client-app", System.currentTimeMillis() + 60_000));
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,84 @@
+package com.auth.oauth_server.benchmark;
+
+import com.auth.oauth_server.service.AuthService;
+import com.auth.oauth_server.service.JwtService;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JFR の段階イベント (StageEvents) の負担
+ * recording=off は JFR を動かさない場合、on は jfr/oauth.jfc で記録している場合。
+ * 対象はイベント 1 個あたりの処理が軽い段階 (重い段階では差が誤差に埋もれる)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StageEventsBenchmark {
+
+    private static final String VERIFIER = "dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk";
+
+    @Param({"off", "on"})
+    public String recording;
+
+    private ConfigurableApplicationContext context;
+    private AuthService authService;
+    private JwtService jwtService;
+    private Recording jfr;
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = BenchmarkContext.start();
+        authService = context.getBean(AuthService.class);
+        jwtService = context.getBean(JwtService.class);
+        token = jwtService.generateToken("admin", "read write", "client-app");
+        if ("on".equals(recording)) {
+            try (Reader jfc = new InputStreamReader(
+                    getClass().getResourceAsStream("/jfr/oauth.jfc"), StandardCharsets.UTF_8)) {
+                jfr = new Recording(Configuration.create(jfc));
+            }
+            jfr.setToDisk(true);
+            jfr.start();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (jfr != null) {
+            jfr.close();
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public boolean verifyPkcePlain() {
+        return authService.verifyPkce(VERIFIER, "plain", VERIFIER);
+    }
+
+    // 検証済みキャッシュに当たる場合
+    @Benchmark
+    public JwtService.VerifiedToken verifyCached() {
+        return jwtService.verify(token);
+    }
+
+    @Benchmark
+    public AuthService.AuthCodeData createAndConsumeCode() {
+        String code = authService.createAuthorizationCode("admin", "client-app", "read", VERIFIER, "plain", "http://localhost:8080/callback");
+        return authService.consumeCode(code);
+    }
+}
@@ -0,0 +1,122 @@
+package com.auth.oauth_server.benchmark;
+
+import com.auth.oauth_server.controller.AuthController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /oauth/token のコントローラー処理 + レスポンス本文の書き出し (1 呼び出しあたりの割り当てバイト数を -prof gc で見る)
+ * 本文は MVC と同じく、登録済みの HttpMessageConverter のうち最初に書き出せるもので JSON にする。
+ * Tomcat 自体の処理は含まない。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TokenEndpointBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private AuthController controller;
+    private HttpMessageConverters converters;
+    private final Output output = new Output();
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("--oauth.rate-limit.enabled=false");
+        controller = context.getBean(AuthController.class);
+        converters = context.getBean(HttpMessageConverters.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    // client_credentials (キャッシュ済みトークンの再利用) の成功レスポンス
+    @Benchmark
+    public int clientCredentials() throws IOException {
+        return write(controller.getToken("client_credentials", null, null, null, null, "read", "client-app", "123456"));
+    }
+
+    // 定型のエラーレスポンス (未対応の grant_type)
+    @Benchmark
+    public int unsupportedGrantType() throws IOException {
+        return write(controller.getToken("password", null, null, null, null, null, "client-app", "123456"));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private int write(ResponseEntity<?> response) throws IOException {
+        Object body = response.getBody();
+        output.reset();
+        MediaType contentType = response.getHeaders().getContentType();
+        for (HttpMessageConverter converter : converters.getConverters()) {
+            if (converter.canWrite(body.getClass(), contentType != null ? contentType : MediaType.APPLICATION_JSON)) {
+                converter.write(body, contentType != null ? contentType : MediaType.APPLICATION_JSON, output);
+                return output.body.size;
+            }
+        }
+        throw new IllegalStateException("書き出せる HttpMessageConverter がありません: " + body.getClass());
+    }
+
+    // 書き出し先 (Tomcat の出力バッファと同じく、同期なし・使い回しのバッファ)
+    private static final class Output implements HttpOutputMessage {
+
+        final Body body = new Body();
+        final HttpHeaders headers = new HttpHeaders();
+
+        void reset() {
+            body.size = 0;
+            headers.clear();
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    private static final class Body extends OutputStream {
+
+        byte[] buffer = new byte[8192];
+        int size;
+
+        @Override
+        public void write(int b) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (size + len > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(size * 2, size + len));
+            }
+            System.arraycopy(b, off, buffer, size, len);
+            size += len;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.auth.oauth_server;
+
+import com.auth.oauth_server.service.BulkImportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * 起動時の一括インポート (oauth.import.users-file / oauth.import.clients-file が指定された場合のみ)
+ * 例: java -jar oauth-server.jar --oauth.import.users-file=users.csv --oauth.import.exit-when-done=true
+ */
+@Component
+public class BulkImportRunner implements CommandLineRunner {
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Value("${oauth.import.clients-file:}")
+    private String clientsFile;
+
+    @Value("${oauth.import.users-file:}")
+    private String usersFile;
+
+    // 取り込み後にアプリを終了する (移行専用に起動した場合)
+    @Value("${oauth.import.exit-when-done:false}")
+    private boolean exitWhenDone;
+
+    @Override
+    public void run(String... args) throws Exception {
+        if (clientsFile.isBlank() && usersFile.isBlank()) {
+            return;
+        }
+        if (!clientsFile.isBlank()) {
+            bulkImportService.importClients(Path.of(clientsFile));
+        }
+        if (!usersFile.isBlank()) {
+            bulkImportService.importUsers(Path.of(usersFile));
+        }
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+}
@@ -2,8 +2,10 @@ package com.auth.oauth_server;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling // 期限切れ認可コードの掃除などのバックグラウンド処理
 public class OauthServerApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,147 @@
+package com.auth.oauth_server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * CDS アーカイブ作成用の学習実行 (oauth.training-run.enabled=true の場合のみ)
+ *
+ * 起動完了後に自分自身へ OAuth フロー一式 (authorize → login-action → token (PKCE) → profile →
+ * refresh_token → introspect → client_credentials → jwks) を流して終了する。
+ * -XX:ArchiveClassesAtExit と組み合わせると、起動時だけでなく最初のリクエスト処理で読み込まれるクラスもアーカイブに入る。
+ * フローが失敗した場合は終了コード 1 (ビルド・イメージ作成を失敗させる)。
+ * 例: java -XX:ArchiveClassesAtExit=application.jsa -Dspring.aot.enabled=true -jar app.jar
+ *         --server.port=0 --oauth.training-run.enabled=true
+ */
+@Component
+public class TrainingRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(TrainingRunner.class);
+
+    private static final String CLIENT_ID = "client-app";
+    private static final String CLIENT_SECRET = "123456";
+    private static final String REDIRECT_URI = "http://localhost:8080/callback";
+    private static final String VERIFIER = "dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk";
+    private static final Pattern CODE = Pattern.compile("[?&]code=([^&]+)");
+    private static final Pattern ACCESS_TOKEN = Pattern.compile("\"access_token\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern REFRESH_TOKEN = Pattern.compile("\"refresh_token\"\\s*:\\s*\"([^\"]+)\"");
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Value("${oauth.training-run.enabled:false}")
+    private boolean enabled;
+
+    // フローの繰り返し回数 (2 回目以降はキャッシュに当たる経路を通る)
+    @Value("${oauth.training-run.iterations:3}")
+    private int iterations;
+
+    // 起動時の CommandLineRunner (DataInitializer の初期データ投入) が終わってから流す
+    @EventListener(ApplicationReadyEvent.class)
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        int exitCode = 0;
+        try {
+            String baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient http = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            for (int i = 0; i < iterations; i++) {
+                flow(http, baseUrl);
+            }
+            log.info("学習実行が完了しました ({} 回)", iterations);
+        } catch (Exception e) {
+            log.error("学習実行に失敗しました", e);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+
+    private void flow(HttpClient http, String baseUrl) throws Exception {
+        String challenge = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                MessageDigest.getInstance("SHA-256").digest(VERIFIER.getBytes(StandardCharsets.US_ASCII)));
+        expect(200, send(http, HttpRequest.newBuilder(URI.create(baseUrl + "/oauth/authorize?client_id=" + CLIENT_ID
+                + "&redirect_uri=" + encode(REDIRECT_URI) + "&response_type=code&scope=read&state=training"
+                + "&code_challenge=" + challenge + "&code_challenge_method=S256")).GET()));
+
+        HttpResponse<String> login = send(http, form(baseUrl, "/login-action",
+                "username=admin&password=password&client_id=" + CLIENT_ID + "&redirect_uri=" + encode(REDIRECT_URI)
+                        + "&scope=read&state=training&code_challenge=" + challenge + "&code_challenge_method=S256"));
+        expect(302, login);
+        String code = extract(CODE, login.headers().firstValue("Location").orElse(""));
+
+        HttpResponse<String> token = send(http, form(baseUrl, "/oauth/token",
+                "grant_type=authorization_code&code=" + code + "&redirect_uri=" + encode(REDIRECT_URI)
+                        + "&code_verifier=" + VERIFIER + "&client_id=" + CLIENT_ID + "&client_secret=" + CLIENT_SECRET));
+        expect(200, token);
+        String accessToken = extract(ACCESS_TOKEN, token.body());
+
+        expect(200, send(http, HttpRequest.newBuilder(URI.create(baseUrl + "/api/profile"))
+                .header("Authorization", "Bearer " + accessToken).GET()));
+
+        expect(200, send(http, form(baseUrl, "/oauth/token",
+                "grant_type=refresh_token&refresh_token=" + extract(REFRESH_TOKEN, token.body())
+                        + "&client_id=" + CLIENT_ID + "&client_secret=" + CLIENT_SECRET)));
+
+        expect(200, send(http, form(baseUrl, "/oauth/introspect",
+                "token=" + accessToken + "&client_id=" + CLIENT_ID + "&client_secret=" + CLIENT_SECRET)));
+
+        expect(200, send(http, form(baseUrl, "/oauth/token",
+                "grant_type=client_credentials&scope=read&client_id=" + CLIENT_ID + "&client_secret=" + CLIENT_SECRET)));
+
+        expect(200, send(http, HttpRequest.newBuilder(URI.create(baseUrl + "/.well-known/jwks.json")).GET()));
+    }
+
+    private static HttpRequest.Builder form(String baseUrl, String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private static HttpResponse<String> send(HttpClient http, HttpRequest.Builder request) throws Exception {
+        return http.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void expect(int status, HttpResponse<String> response) {
+        if (response.statusCode() != status) {
+            throw new IllegalStateException(response.uri().getPath() + " が " + response.statusCode() + " を返しました");
+        }
+    }
+
+    private static String extract(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        if (!matcher.find()) {
+            throw new IllegalStateException("応答から値を取り出せません");
+        }
+        return matcher.group(1);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
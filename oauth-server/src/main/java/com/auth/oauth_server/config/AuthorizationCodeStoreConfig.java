@@ -0,0 +1,40 @@
+package com.auth.oauth_server.config;
+
+import com.auth.oauth_server.service.AuthorizationCodeStore;
+import com.auth.oauth_server.service.InMemoryAuthorizationCodeStore;
+import com.auth.oauth_server.service.JdbcAuthorizationCodeStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@Configuration
+public class AuthorizationCodeStoreConfig {
+
+    // 認可コードストアの実装 (oauth.code-store.type)。@Conditional と違い AOT 処理で固定されず、起動時の値で選ぶ
+    // 戻り値の型はインターフェースなので、AOT 実行時はフィールド注入も @PostConstruct も効かない。依存と初期化はここで渡す
+    @Bean
+    public AuthorizationCodeStore authorizationCodeStore(
+            @Value("${oauth.code-store.type:memory}") String type,
+            @Value("${oauth.code-store.capacity:100000}") int capacity,
+            @Value("${oauth.code-store.ttl-seconds:600}") long ttlSeconds,
+            @Value("${oauth.code-store.purge-batch-size:500}") int purgeBatchSize,
+            MeterRegistry meterRegistry,
+            ObjectProvider<JdbcTemplate> jdbcTemplate) {
+        return switch (type) {
+            case "memory" -> {
+                InMemoryAuthorizationCodeStore store = new InMemoryAuthorizationCodeStore(meterRegistry, capacity, ttlSeconds);
+                store.registerMetrics();
+                yield store;
+            }
+            case "jdbc" -> {
+                JdbcAuthorizationCodeStore store = new JdbcAuthorizationCodeStore(jdbcTemplate.getObject(), meterRegistry, ttlSeconds, purgeBatchSize);
+                store.init();
+                yield store;
+            }
+            default -> throw new IllegalStateException("不明な認可コードストアです: oauth.code-store.type=" + type + " (memory / jdbc)");
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package com.auth.oauth_server.config;
+
+import com.auth.oauth_server.service.RateLimitService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * BCrypt を伴うエンドポイント (ログイン・トークン発行・イントロスペクション・失効) へのレート制限
+ * コントローラーに入る前 (= ハッシュ計算や DB アクセスの前) に判定し、超過時は 429 と Retry-After を返す
+ *
+ * 送信元 IP は getRemoteAddr() を使う。ロードバランサーの背後では server.forward-headers-strategy=native により
+ * Tomcat が信頼できるプロキシ (server.tomcat.remoteip.internal-proxies) からの X-Forwarded-For で置き換える
+ * (そうしないと全リクエストがロードバランサーの IP になり、1 つのバケットを共有してしまう)。
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitFilter.class);
+
+    private static final Set<String> LIMITED_PATHS = Set.of("/login-action", "/oauth/token", "/oauth/introspect", "/oauth/revoke");
+    private static final byte[] TOO_MANY_REQUESTS = "{\"error\":\"too_many_requests\",\"error_description\":\"リクエストが多すぎます。しばらくしてから再度お試しください\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private RateLimitService rateLimitService;
+
+    @Value("${oauth.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !"POST".equals(request.getMethod()) || !LIMITED_PATHS.contains(path(request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        // フォームの client_id / username (JSON のバッチイントロスペクションなどでは null)
+        String clientId = request.getParameter("client_id");
+        String username = "/login-action".equals(path(request)) ? request.getParameter("username") : null;
+        long waitMillis = rateLimitService.tryAcquire(request.getRemoteAddr(), clientId, username);
+        if (waitMillis == 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+        log.debug("レート制限を超過しました: ip={}, client_id={}, username={}", request.getRemoteAddr(), clientId, username);
+        response.setStatus(429);
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString((waitMillis + 999) / 1000));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(TOO_MANY_REQUESTS.length);
+        response.getOutputStream().write(TOO_MANY_REQUESTS);
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+}
@@ -1,5 +1,6 @@
 package com.auth.oauth_server.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -25,8 +26,9 @@ public class SecurityConfig {
         return http.build();
     }
 
+    // BCrypt のコスト (oauth.password.bcrypt-strength)。変更すると既存ハッシュは次回ログイン成功時に作り直される
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${oauth.password.bcrypt-strength:10}") int strength) {
+        return new BCryptPasswordEncoder(strength);
     }
 }
@@ -0,0 +1,111 @@
+package com.auth.oauth_server.config;
+
+import com.auth.oauth_server.controller.TokenResponse;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TokenResponse を JSON としてレスポンスに直接書き出す
+ *
+ * Jackson のリフレクションや中間の Map・文字列・バッファを使わず、固定部分は事前にエンコードしたバイト列、
+ * 値は 1 文字ずつ出力ストリーム (Tomcat の出力バッファ) へ直接書く (トークンは ASCII なのでエスケープ不要の経路を通る)。
+ * 本文は出力バッファに収まるので、Content-Length は Tomcat が付ける。
+ */
+@Component
+public class TokenResponseConverter extends AbstractHttpMessageConverter<TokenResponse> {
+
+    private static final byte[] ACCESS_TOKEN = ascii("{\"access_token\":\"");
+    private static final byte[] TOKEN_TYPE_EXPIRES_IN = ascii("\",\"token_type\":\"Bearer\",\"expires_in\":");
+    private static final byte[] SCOPE = ascii(",\"scope\":\"");
+    private static final byte[] REFRESH_TOKEN = ascii(",\"refresh_token\":\"");
+    private static final byte[] HEX = ascii("0123456789abcdef");
+
+    public TokenResponseConverter() {
+        super(MediaType.APPLICATION_JSON); // JSON は常に UTF-8 なので charset は付けない
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return TokenResponse.class == clazz;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected TokenResponse readInternal(Class<? extends TokenResponse> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("TokenResponse は読み込みに対応していません", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(TokenResponse response, HttpOutputMessage outputMessage) throws IOException {
+        OutputStream out = outputMessage.getBody();
+        out.write(ACCESS_TOKEN);
+        writeString(out, response.accessToken());
+        out.write(TOKEN_TYPE_EXPIRES_IN);
+        writeLong(out, response.expiresIn());
+        if (response.scope() != null) {
+            out.write(SCOPE);
+            writeString(out, response.scope());
+            out.write('"');
+        }
+        if (response.refreshToken() != null) {
+            out.write(REFRESH_TOKEN);
+            writeString(out, response.refreshToken());
+            out.write('"');
+        }
+        out.write('}');
+    }
+
+    // JSON 文字列の中身を書き出す (ASCII の通常文字はそのまま、それ以外は JSON のエスケープ表記にする)
+    private static void writeString(OutputStream out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isPlain(c)) {
+                out.write(c);
+            } else if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else {
+                out.write('\\');
+                out.write('u');
+                out.write(HEX[(c >> 12) & 0xF]);
+                out.write(HEX[(c >> 8) & 0xF]);
+                out.write(HEX[(c >> 4) & 0xF]);
+                out.write(HEX[c & 0xF]);
+            }
+        }
+    }
+
+    private static boolean isPlain(char c) {
+        return c >= 0x20 && c < 0x7F && c != '"' && c != '\\';
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.write((int) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -2,32 +2,50 @@ package com.auth.oauth_server.controller;
 
 import com.auth.oauth_server.entity.User;
 import com.auth.oauth_server.repository.UserRepository;
+import com.auth.oauth_server.service.AuditLog;
 import com.auth.oauth_server.service.AuthService;
+import com.auth.oauth_server.service.ClientCredentialsTokenCache;
 import com.auth.oauth_server.service.JwtService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.auth.oauth_server.service.PasswordHasher;
+import com.auth.oauth_server.service.RefreshTokenStore;
+import com.auth.oauth_server.service.SsoSessionService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.view.RedirectView;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Optional;
 
 @Controller
 public class AuthController {
 
-    private static final Logger log = LoggerFactory.getLogger(AuthController.class);
-
     @Autowired
     private AuthService authService;
     @Autowired
     private JwtService jwtService;
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private RefreshTokenStore refreshTokenStore;
+    @Autowired
+    private ClientCredentialsTokenCache clientCredentialsTokenCache;
+    @Autowired
+    private SsoSessionService ssoSessionService;
+    @Autowired
+    private AuditLog auditLog;
+
+    // SSO セッション (ログイン済みなら /oauth/authorize でログイン画面を省略)
+    @Value("${oauth.sso.enabled:true}")
+    private boolean ssoEnabled;
+    // SSO Cookie に Secure 属性を付ける (HTTPS で運用する場合は true)
+    @Value("${oauth.sso.cookie-secure:false}")
+    private boolean ssoCookieSecure;
 
     /**
      * 1. 標準的な認可エントリポイント (新規)
@@ -35,7 +53,7 @@ public class AuthController {
      * URL例: /oauth/authorize?client_id=client-app&redirect_uri=xxx&response_type=code&state=abc
      */
     @GetMapping("/oauth/authorize")
-    public String authorize(
+    public Object authorize(
             @RequestParam("client_id") String clientId,
             @RequestParam("redirect_uri") String redirectUri,
             @RequestParam("response_type") String responseType, // code 必須
@@ -43,28 +61,52 @@ public class AuthController {
             @RequestParam(value = "code_challenge", required = false) String codeChallenge,
             @RequestParam(value = "code_challenge_method", required = false) String codeChallengeMethod,
             @RequestParam(value = "state", required = false) String state,
+            @RequestParam(value = "prompt", required = false) String prompt,
+            @CookieValue(value = SsoSessionService.COOKIE_NAME, required = false) String ssoCookie,
             Model model
     ) {
-        log.info("認可リクエストを受信しました, client_id: {}", clientId);
-
         // 第一チェック：アプリとリダイレクトURIが正当か確認
         if (!authService.validateClient(clientId, redirectUri)) {
             model.addAttribute("error", "不正なアプリ、またはリダイレクトURIが一致しません！");
             return "error"; // ここでは手抜きしてloginページを再利用するか、別途errorページを作成してください。現在はログインページに表示されます。
         }
+        // 登録済みの値だけを記録する (未検証の値は validateClient が UNKNOWN_CLIENT などとして記録する)
+        auditLog.record(AuditLog.Type.AUTHORIZE_REQUEST, null, clientId, redirectUri);
 
-        // スコープ検証 (新規)
-        if (scope != null && !scope.isBlank() && !authService.validateScope(clientId, scope)) {
-            model.addAttribute("error", "要求されたスコープはこのクライアントに許可されていません！");
-            return "error";
+        // スコープ検証 (スペース区切りで複数指定可。以降は正規化したスコープ文字列を使う)
+        if (scope != null && !scope.isBlank()) {
+            String requestedScope = scope;
+            scope = authService.grantScope(clientId, scope);
+            if (scope == null) {
+                auditLog.record(AuditLog.Type.SCOPE_REJECTED, null, clientId, requestedScope);
+                model.addAttribute("error", "要求されたスコープはこのクライアントに許可されていません！");
+                return "error";
+            }
         }
 
         // 標準検証：認可コードモードのみサポート
         if (!"code".equalsIgnoreCase(responseType)) {
+            auditLog.record(AuditLog.Type.RESPONSE_TYPE_REJECTED, null, clientId, responseType);
             model.addAttribute("error", "サポートされていないレスポンスタイプです。response_type=code である必要があります");
             return "error";
         }
 
+        // SSO セッションが有効なら、パスワード確認なしでそのまま Code を発行する (prompt=login なら常にログイン画面へ)
+        String ssoUser = ssoEnabled && !"login".equals(prompt) ? ssoSessionService.resolve(ssoCookie) : null;
+        if (ssoUser != null && authService.isAccountLocked(ssoUser)) {
+            // ロック中のアカウントは SSO セッションを破棄してログイン画面へ (ログイン側でロックとして扱われる)
+            ssoSessionService.invalidate(ssoCookie);
+            auditLog.record(AuditLog.Type.LOGIN_LOCKED, ssoUser, clientId);
+            ssoUser = null;
+        }
+        if (ssoUser != null) {
+            String code = authService.createAuthorizationCode(ssoUser, clientId, scope, codeChallenge, codeChallengeMethod, redirectUri);
+            if (code != null) {
+                auditLog.record(AuditLog.Type.SSO_LOGIN, ssoUser, clientId);
+                return new RedirectView(String.format("%s?code=%s&state=%s", redirectUri, code, state == null ? "" : state));
+            }
+        }
+
         // パラメータをModelに一時保存してログインページに渡す
         // ユーザーがパスワードを入力する際に、これらの情報が必要になるため
         model.addAttribute("client_id", clientId);
@@ -112,23 +154,65 @@ public class AuthController {
             @RequestParam(value = "code_challenge", required = false) String codeChallenge,
             @RequestParam(value = "code_challenge_method", required = false) String codeChallengeMethod,
             @RequestParam(value = "state", defaultValue = "") String state,
-            Model model
+            @CookieValue(value = SsoSessionService.COOKIE_NAME, required = false) String ssoCookie,
+            Model model,
+            HttpServletResponse response
     ) {
         // 第二チェック：クライアントの正当性を再確認 (エントリポイントを回避して直接 POST されるのを防ぐ)
         if (!authService.validateClient(clientId, redirectUri)) {
             return "redirect:/login?error=invalid_client";
         }
+        // スコープも再確認する (フォームの hidden 値は書き換えられるため)
+        if (scope != null && !scope.isBlank()) {
+            String requestedScope = scope;
+            scope = authService.grantScope(clientId, scope);
+            if (scope == null) {
+                auditLog.record(AuditLog.Type.SCOPE_REJECTED, username, clientId, requestedScope);
+                return "redirect:/login?error=invalid_scope";
+            }
+        }
 
         // ユーザーアカウントとパスワードの検証 (アカウントロック対応)
-        if (authService.authenticateUser(username, password)) {
+        boolean authenticated;
+        try {
+            authenticated = authService.authenticateUser(username, password);
+        } catch (PasswordHasher.BusyException e) {
+            // パスワード検証の待ち行列が満杯 (ログインフラッド等)
+            auditLog.record(AuditLog.Type.LOGIN_BUSY, username, clientId);
+            response.setStatus(503);
+            model.addAttribute("error", "現在混雑しています。しばらくしてから再度お試しください");
+            model.addAttribute("client_id", clientId);
+            model.addAttribute("redirect_uri", redirectUri);
+            model.addAttribute("scope", scope);
+            model.addAttribute("code_challenge", codeChallenge);
+            model.addAttribute("code_challenge_method", codeChallengeMethod);
+            model.addAttribute("state", state);
+            return "login";
+        }
+        if (authenticated) {
             // A. 認可コード (Code) の生成
             String code = authService.createAuthorizationCode(username, clientId, scope, codeChallenge, codeChallengeMethod, redirectUri);
+            if (code == null) {
+                // 認可コードの保持数が上限に達している (ログインフラッド等)
+                model.addAttribute("error", "現在混雑しています。しばらくしてから再度お試しください");
+                model.addAttribute("client_id", clientId);
+                model.addAttribute("redirect_uri", redirectUri);
+                model.addAttribute("state", state);
+                return "login";
+            }
+
+            // SSO セッションを作り直す (以降の別クライアントの認可ではログインを省略できる)
+            if (ssoEnabled) {
+                ssoSessionService.invalidate(ssoCookie);
+                String session = ssoSessionService.create(username);
+                if (session != null) {
+                    response.addHeader(HttpHeaders.SET_COOKIE, ssoCookie(session, ssoSessionService.maxAgeSeconds()).toString());
+                }
+            }
 
             // B. サードパーティアプリへリダイレクト
             // URL: http://localhost:8080/callback?code=xxx&state=xxx
             String finalUrl = String.format("%s?code=%s&state=%s", redirectUri, code, state);
-            
-            log.info("ログイン成功、Code を発行しました。リダイレクト中: {}", finalUrl);
             return new RedirectView(finalUrl);
         } else {
             // ログイン失敗。パラメータを持ち越さないと、ユーザーがリロードした際に誰に Code を送ればいいかわからなくなる
@@ -143,63 +227,148 @@ public class AuthController {
         }
     }
 
+    /**
+     * SSO セッションの終了 (Cookie も削除する)
+     */
+    @PostMapping("/oauth/logout")
+    public ResponseEntity<Void> logout(@CookieValue(value = SsoSessionService.COOKIE_NAME, required = false) String ssoCookie) {
+        String username = ssoSessionService.invalidate(ssoCookie);
+        if (username != null) {
+            auditLog.record(AuditLog.Type.LOGOUT, username, null);
+        }
+        return ResponseEntity.noContent().header(HttpHeaders.SET_COOKIE, ssoCookie("", 0).toString()).build();
+    }
+
+    private ResponseCookie ssoCookie(String value, long maxAgeSeconds) {
+        return ResponseCookie.from(SsoSessionService.COOKIE_NAME, value)
+                .httpOnly(true)
+                .secure(ssoCookieSecure)
+                .sameSite("Lax") // 他サイトからの /oauth/authorize へのトップレベル遷移では送られる
+                .path("/")
+                .maxAge(maxAgeSeconds)
+                .build();
+    }
+
     /**
      * 4. Token 交換 (API)
      * サードパーティアプリが Code + Client ID + Client Secret を持って Token と交換する
+     * grant_type=refresh_token の場合は、リフレッシュトークンで新しい Token を受け取る (パスワード再入力なし)
+     * grant_type=client_credentials の場合は、クライアント自身の Token を発行する (サービス間連携用)
      */
     @PostMapping("/oauth/token")
     @ResponseBody
     public ResponseEntity<?> getToken(
             @RequestParam("grant_type") String grantType,
-            @RequestParam("code") String code,
+            @RequestParam(value = "code", required = false) String code,
             @RequestParam(value = "redirect_uri", required = false) String redirectUri,
             @RequestParam(value = "code_verifier", required = false) String codeVerifier,
+            @RequestParam(value = "refresh_token", required = false) String refreshToken,
+            @RequestParam(value = "scope", required = false) String scope,
             @RequestParam("client_id") String clientId,
             @RequestParam("client_secret") String clientSecret // 新規：パスワード検証必須
     ) {
-        // 標準検証：認可コードモードのみサポート
-        if (!"authorization_code".equalsIgnoreCase(grantType)) {
-            return ResponseEntity.status(400).body(Map.of("error", "unsupported_grant_type", "error_description", "authorization_code のみサポートされています"));
+        // 標準検証：認可コード・リフレッシュトークン・クライアントクレデンシャルのみサポート
+        boolean isAuthorizationCode = "authorization_code".equalsIgnoreCase(grantType);
+        boolean isRefreshToken = "refresh_token".equalsIgnoreCase(grantType);
+        boolean isClientCredentials = "client_credentials".equalsIgnoreCase(grantType);
+        if (!isAuthorizationCode && !isRefreshToken && !isClientCredentials) {
+            auditLog.record(AuditLog.Type.GRANT_TYPE_REJECTED, null, clientId, grantType);
+            return TokenErrors.UNSUPPORTED_GRANT_TYPE;
         }
 
-        // 第三チェック：身元確認
+        // 第三チェック：身元確認 (結果は AuthService が監査ログに記録する)
         if (!authService.authenticateClient(clientId, clientSecret)) {
-            log.warn("クライアント認証失敗: {}", clientId);
-            return ResponseEntity.status(401).body(Map.of("error", "invalid_client", "error_description", "クライアント認証に失敗しました"));
+            return TokenErrors.INVALID_CLIENT;
+        }
+
+        if (isRefreshToken) {
+            return refresh(refreshToken, scope, clientId);
+        }
+        if (isClientCredentials) {
+            return clientCredentials(scope, clientId);
         }
 
         // Code を消費し、コンテキストを取り出す
-        AuthService.AuthCodeData data = authService.consumeCode(code);
+        AuthService.AuthCodeData data = code == null ? null : authService.consumeCode(code);
         if (data == null) {
-            return ResponseEntity.status(400).body(Map.of("error", "invalid_grant", "error_description", "認可コードが無効または期限切れです"));
+            return TokenErrors.INVALID_CODE;
+        }
+        if (!clientId.equals(data.clientId())) {
+            // 他のクライアントに発行されたコード (コードは消費済みなので、正当なクライアントも使えなくなる)
+            auditLog.recordCode(AuditLog.Type.CODE_CLIENT_MISMATCH, data.username(), clientId, code);
+            return TokenErrors.INVALID_CODE;
         }
 
         // redirect_uri の一致性確認（ハイジャック防止）
         if (redirectUri != null && !redirectUri.equals(data.redirectUri())) {
-            return ResponseEntity.status(400).body(Map.of("error", "invalid_request", "error_description", "redirect_uri が一致しません"));
+            auditLog.record(AuditLog.Type.REDIRECT_URI_MISMATCH, data.username(), clientId, redirectUri);
+            return TokenErrors.REDIRECT_URI_MISMATCH;
         }
 
         // PKCE が提供されていた場合、code_verifier を検証
         if (data.codeChallenge() != null && !data.codeChallenge().isBlank()) {
             boolean pkceOk = authService.verifyPkce(data.codeChallenge(), data.codeChallengeMethod(), codeVerifier);
             if (!pkceOk) {
-                return ResponseEntity.status(400).body(Map.of("error", "invalid_grant", "error_description", "PKCE 検証に失敗しました"));
+                auditLog.record(AuditLog.Type.PKCE_FAILURE, data.username(), clientId);
+                return TokenErrors.PKCE_FAILED;
             }
         }
 
-        // Token 生成
-        String token = jwtService.generateToken(data.username(), data.scope(), data.clientId());
+        // Token 生成 (リフレッシュトークンは新しい系列として発行)
+        String token = jwtService.issueAccessToken(data.username(), data.scope(), data.clientId());
+        String newRefreshToken = refreshTokenStore.issue(data.username(), data.clientId(), data.scope());
+        auditLog.record(AuditLog.Type.TOKEN_ISSUED, data.username(), clientId, data.scope());
+        return ResponseEntity.ok(tokenResponse(token, data.scope(), newRefreshToken));
+    }
 
-        // 標準 JSON を返す
-        Map<String, Object> response = new HashMap<>();
-        response.put("access_token", token);
-        response.put("token_type", "Bearer");
-        response.put("expires_in", 3600);
-        if (data.scope() != null) {
-            response.put("scope", data.scope());
+    // リフレッシュトークンによる更新 (DB アクセスも BCrypt もなし: ハッシュ参照 + JWT 署名 (参照型なら表への登録) のみ)
+    private ResponseEntity<?> refresh(String refreshToken, String scope, String clientId) {
+        if (refreshToken == null || refreshToken.isBlank()) {
+            return TokenErrors.REFRESH_TOKEN_MISSING;
+        }
+        RefreshTokenStore.Rotation rotation;
+        try {
+            rotation = refreshTokenStore.rotate(refreshToken, clientId);
+        } catch (RefreshTokenStore.CapacityExceededException e) {
+            return TokenErrors.REFRESH_TOKEN_UNAVAILABLE; // 元のリフレッシュトークンは有効なまま
+        }
+        if (rotation == null) {
+            auditLog.record(AuditLog.Type.REFRESH_TOKEN_INVALID, null, clientId);
+            return TokenErrors.INVALID_REFRESH_TOKEN;
         }
-        
-        log.info("Token がアプリに発行されました: {}", clientId);
-        return ResponseEntity.ok(response);
+        // 元の認可より広いスコープは要求できない (狭めるのは可。リフレッシュトークン自体は元のスコープのまま)
+        String grantedScope = rotation.scope();
+        if (scope != null && !scope.isBlank()) {
+            grantedScope = authService.narrowScope(rotation.scope(), scope);
+            if (grantedScope == null) {
+                auditLog.record(AuditLog.Type.SCOPE_REJECTED, rotation.username(), clientId, scope);
+                return TokenErrors.SCOPE_NOT_IN_GRANT;
+            }
+        }
+
+        String token = jwtService.issueAccessToken(rotation.username(), grantedScope, clientId);
+        auditLog.record(AuditLog.Type.REFRESH_TOKEN_ISSUED, rotation.username(), clientId, grantedScope);
+        return ResponseEntity.ok(tokenResponse(token, grantedScope, rotation.refreshToken()));
+    }
+
+    // クライアントクレデンシャル: 同じ (client, scope) には有効期限が近づくまで同じ Token を返す
+    private ResponseEntity<?> clientCredentials(String scope, String clientId) {
+        String grantedScope = null;
+        if (scope != null && !scope.isBlank()) {
+            grantedScope = authService.grantScope(clientId, scope);
+            if (grantedScope == null) {
+                auditLog.record(AuditLog.Type.SCOPE_REJECTED, null, clientId, scope);
+                return TokenErrors.SCOPE_NOT_ALLOWED;
+            }
+        }
+        ClientCredentialsTokenCache.CachedToken token = clientCredentialsTokenCache.getToken(clientId, grantedScope);
+        auditLog.record(AuditLog.Type.CLIENT_CREDENTIALS_ISSUED, null, clientId, grantedScope);
+        // リフレッシュトークンは発行しない (RFC 6749 4.4.3)
+        return ResponseEntity.ok(new TokenResponse(token.accessToken(), token.expiresInSeconds(), grantedScope, null));
+    }
+
+    // 標準 JSON を返す (TokenResponseConverter が直接書き出す)
+    private static TokenResponse tokenResponse(String accessToken, String scope, String refreshToken) {
+        return new TokenResponse(accessToken, 3600, scope, refreshToken);
     }
 }
@@ -0,0 +1,28 @@
+package com.auth.oauth_server.controller;
+
+import com.auth.oauth_server.service.PasswordHasher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * パスワード検証の待ち行列が満杯のときは、待たせずに 503 を返す (RFC 6749 temporarily_unavailable)
+ */
+@RestControllerAdvice
+public class BusyExceptionHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(BusyExceptionHandler.class);
+
+    @ExceptionHandler(PasswordHasher.BusyException.class)
+    public ResponseEntity<?> handleBusy(PasswordHasher.BusyException e) {
+        log.warn("パスワード検証が混雑しているためリクエストを拒否しました");
+        return ResponseEntity.status(503)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", "temporarily_unavailable", "error_description", "現在混雑しています。しばらくしてから再度お試しください"));
+    }
+}
@@ -0,0 +1,37 @@
+package com.auth.oauth_server.controller;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * リクエストに含まれるクライアント認証情報
+ * Basic 認証ヘッダー (RFC 6749 2.3.1) を優先し、なければフォームの client_id / client_secret を使う
+ */
+record ClientCredentials(String clientId, String clientSecret) {
+
+    /**
+     * @return 認証情報。ヘッダーが壊れている・どちらも指定されていない場合は null
+     */
+    static ClientCredentials resolve(String authHeader, String formClientId, String formClientSecret) {
+        if (authHeader != null && authHeader.regionMatches(true, 0, "Basic ", 0, 6)) {
+            try {
+                String decoded = new String(Base64.getDecoder().decode(authHeader.substring(6).trim()), StandardCharsets.UTF_8);
+                int colon = decoded.indexOf(':');
+                if (colon < 0) {
+                    return null;
+                }
+                // ID とシークレットはフォームエンコードされている
+                return new ClientCredentials(
+                        URLDecoder.decode(decoded.substring(0, colon), StandardCharsets.UTF_8),
+                        URLDecoder.decode(decoded.substring(colon + 1), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        if (formClientId == null || formClientSecret == null) {
+            return null;
+        }
+        return new ClientCredentials(formClientId, formClientSecret);
+    }
+}
@@ -0,0 +1,108 @@
+package com.auth.oauth_server.controller;
+
+import com.auth.oauth_server.service.AuthService;
+import com.auth.oauth_server.service.JwtService;
+import com.auth.oauth_server.service.TokenIntrospectionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * トークンイントロスペクション (RFC 7662)
+ * API ゲートウェイ向けに、複数トークンを 1 リクエストでまとめて検証するバッチモードも提供する
+ */
+@RestController
+public class IntrospectionController {
+
+    private static final Map<String, Object> INACTIVE = Map.of("active", false);
+
+    @Autowired
+    private AuthService authService;
+    @Autowired
+    private TokenIntrospectionService introspectionService;
+
+    // バッチモードで 1 リクエストに含められるトークン数の上限
+    @Value("${oauth.introspection.max-batch-size:100}")
+    private int maxBatchSize;
+
+    /**
+     * 1. 単一トークンの検証 (RFC 7662 標準形式)
+     * クライアント認証は Basic 認証ヘッダー、またはフォームの client_id / client_secret
+     */
+    @PostMapping(value = "/oauth/introspect", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<?> introspect(
+            @RequestParam("token") String token,
+            @RequestParam(value = "token_type_hint", required = false) String tokenTypeHint,
+            @RequestParam(value = "client_id", required = false) String clientId,
+            @RequestParam(value = "client_secret", required = false) String clientSecret,
+            @RequestHeader(value = "Authorization", required = false) String authHeader
+    ) {
+        if (!authenticate(authHeader, clientId, clientSecret)) {
+            return ResponseEntity.status(401).body(Map.of("error", "invalid_client", "error_description", "クライアント認証に失敗しました"));
+        }
+        return ResponseEntity.ok(toResponse(introspectionService.introspect(token)));
+    }
+
+    /**
+     * 2. バッチモード
+     * リクエスト: {"tokens": ["...", "..."]}  (クライアント認証は Basic 認証ヘッダー)
+     * レスポンス: {"results": [{...}, {...}]} (リクエストと同じ順序)
+     */
+    @PostMapping(value = "/oauth/introspect", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> introspectBatch(
+            @RequestBody BatchRequest request,
+            @RequestHeader(value = "Authorization", required = false) String authHeader
+    ) {
+        if (!authenticate(authHeader, null, null)) {
+            return ResponseEntity.status(401).body(Map.of("error", "invalid_client", "error_description", "クライアント認証に失敗しました"));
+        }
+        if (request.tokens() == null || request.tokens().isEmpty() || request.tokens().size() > maxBatchSize) {
+            return ResponseEntity.status(400).body(Map.of("error", "invalid_request", "error_description", "tokens は 1〜" + maxBatchSize + " 件で指定してください"));
+        }
+        List<Map<String, Object>> results = new ArrayList<>(request.tokens().size());
+        for (String token : request.tokens()) {
+            results.add(toResponse(introspectionService.introspect(token)));
+        }
+        return ResponseEntity.ok(Map.of("results", results));
+    }
+
+    // 呼び出し元クライアントの認証 (Basic 認証ヘッダーを優先)
+    private boolean authenticate(String authHeader, String clientId, String clientSecret) {
+        ClientCredentials credentials = ClientCredentials.resolve(authHeader, clientId, clientSecret);
+        return credentials != null && authService.authenticateClient(credentials.clientId(), credentials.clientSecret());
+    }
+
+    private static Map<String, Object> toResponse(JwtService.VerifiedToken verified) {
+        if (verified == null) {
+            return INACTIVE;
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("active", true);
+        if (verified.scope() != null) {
+            response.put("scope", verified.scope());
+        }
+        if (verified.audience() != null) {
+            response.put("client_id", verified.audience());
+            response.put("aud", verified.audience());
+        }
+        response.put("username", verified.subject());
+        response.put("sub", verified.subject());
+        response.put("token_type", "Bearer");
+        response.put("exp", verified.expiresAt() / 1000);
+        response.put("iss", "oauth-server");
+        return response;
+    }
+
+    public record BatchRequest(List<String> tokens) {}
+}
@@ -0,0 +1,47 @@
+package com.auth.oauth_server.controller;
+
+import com.auth.oauth_server.service.SigningKeyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+
+/**
+ * 公開鍵セット (JWKS) の配布
+ * リソースサーバーはここで取得した公開鍵をキャッシュし、トークンを自前で検証できる
+ */
+@RestController
+public class JwksController {
+
+    @Autowired
+    private SigningKeyManager signingKeyManager;
+
+    // 下流のキャッシュ期間 (秒)。次の鍵は切り替えより十分前に公開されるため、短くする必要はない
+    @Value("${jwt.jwks.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<byte[]> jwks(@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        // JSON は鍵の更新時に一度だけ生成したバイト列をそのまま返す
+        SigningKeyManager.JwksDocument doc = signingKeyManager.jwks();
+        CacheControl cacheControl = CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePublic();
+        if (doc.etag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(doc.etag())
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(doc.etag())
+                .cacheControl(cacheControl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(doc.payload());
+    }
+}
@@ -25,9 +25,10 @@ public class ResourceController {
         String token = authHeader.substring(7);
 
         try {
-            // 3. チケット確認：署名を検証し、ユーザー名を抽出
-            String username = jwtService.extractUsername(token);
-            String scope = jwtService.extractScope(token);
+            // 3. チケット確認：署名を一度だけ検証し、ユーザー名とスコープを取り出す
+            JwtService.VerifiedToken verified = jwtService.verify(token);
+            String username = verified.subject();
+            String scope = verified.scope();
             
             // 4. 検証合格、ようこそ
             String msg = "ようこそ, VIP ユーザー: " + username + "! これはあなたの機密データです。scope=" + (scope == null ? "" : scope);
@@ -0,0 +1,73 @@
+package com.auth.oauth_server.controller;
+
+import com.auth.oauth_server.service.AuthService;
+import com.auth.oauth_server.service.JwtService;
+import com.auth.oauth_server.service.ReferenceTokenStore;
+import com.auth.oauth_server.service.TokenRevocationService;
+import io.jsonwebtoken.JwtException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * トークン失効 (RFC 7009)
+ * 失効したトークンは以後 JwtService.verify で拒否される (参照型ハンドルは表から削除する)
+ */
+@RestController
+public class RevocationController {
+
+    private static final Logger log = LoggerFactory.getLogger(RevocationController.class);
+
+    @Autowired
+    private AuthService authService;
+    @Autowired
+    private JwtService jwtService;
+    @Autowired
+    private TokenRevocationService revocationService;
+    @Autowired
+    private ReferenceTokenStore referenceTokenStore;
+
+    @PostMapping("/oauth/revoke")
+    public ResponseEntity<?> revoke(
+            @RequestParam("token") String token,
+            @RequestParam(value = "token_type_hint", required = false) String tokenTypeHint,
+            @RequestParam(value = "client_id", required = false) String clientId,
+            @RequestParam(value = "client_secret", required = false) String clientSecret,
+            @RequestHeader(value = "Authorization", required = false) String authHeader
+    ) {
+        ClientCredentials credentials = ClientCredentials.resolve(authHeader, clientId, clientSecret);
+        if (credentials == null || !authService.authenticateClient(credentials.clientId(), credentials.clientSecret())) {
+            return ResponseEntity.status(401).body(Map.of("error", "invalid_client", "error_description", "クライアント認証に失敗しました"));
+        }
+
+        JwtService.VerifiedToken verified;
+        try {
+            verified = jwtService.verify(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            // 無効・期限切れ・失効済みのトークンは何もせず成功を返す (RFC 7009 2.2)
+            return ResponseEntity.ok().build();
+        }
+
+        // 他のクライアントに発行されたトークンは失効させない
+        if (!credentials.clientId().equals(verified.audience())) {
+            return ResponseEntity.status(400).body(Map.of("error", "unauthorized_client", "error_description", "このクライアントに発行されたトークンではありません"));
+        }
+
+        // 参照型ハンドルは表から消すだけで以後の検証が失敗する
+        if (verified.jti() == null) {
+            referenceTokenStore.revoke(token);
+            log.info("クライアント [{}] が参照型トークンを失効させました", credentials.clientId());
+            return ResponseEntity.ok().build();
+        }
+        revocationService.revoke(verified.jti(), verified.expiresAt());
+        log.info("クライアント [{}] がトークンを失効させました: jti={}", credentials.clientId(), verified.jti());
+        return ResponseEntity.ok().build();
+    }
+}
@@ -0,0 +1,41 @@
+package com.auth.oauth_server.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * トークンエンドポイントの定型エラーレスポンス
+ * 本文は起動時に一度だけ JSON のバイト列にしておき、毎回同じ ResponseEntity を返す
+ */
+final class TokenErrors {
+
+    static final ResponseEntity<byte[]> UNSUPPORTED_GRANT_TYPE = of(400, "unsupported_grant_type", "authorization_code / refresh_token / client_credentials のみサポートされています");
+    static final ResponseEntity<byte[]> INVALID_CLIENT = of(401, "invalid_client", "クライアント認証に失敗しました");
+    static final ResponseEntity<byte[]> INVALID_CODE = of(400, "invalid_grant", "認可コードが無効または期限切れです");
+    static final ResponseEntity<byte[]> REDIRECT_URI_MISMATCH = of(400, "invalid_request", "redirect_uri が一致しません");
+    static final ResponseEntity<byte[]> PKCE_FAILED = of(400, "invalid_grant", "PKCE 検証に失敗しました");
+    static final ResponseEntity<byte[]> REFRESH_TOKEN_MISSING = of(400, "invalid_request", "refresh_token が指定されていません");
+    static final ResponseEntity<byte[]> INVALID_REFRESH_TOKEN = of(400, "invalid_grant", "リフレッシュトークンが無効または期限切れです");
+    static final ResponseEntity<byte[]> REFRESH_TOKEN_UNAVAILABLE = of(503, "temporarily_unavailable", "リフレッシュトークンを発行できません。しばらくしてから再度お試しください");
+    static final ResponseEntity<byte[]> SCOPE_NOT_IN_GRANT = of(400, "invalid_scope", "元の認可に含まれないスコープです");
+    static final ResponseEntity<byte[]> SCOPE_NOT_ALLOWED = of(400, "invalid_scope", "要求されたスコープはこのクライアントに許可されていません");
+
+    private TokenErrors() {}
+
+    private static ResponseEntity<byte[]> of(int status, String error, String description) {
+        Map<String, String> body = new LinkedHashMap<>();
+        body.put("error", error);
+        body.put("error_description", description);
+        try {
+            byte[] json = new ObjectMapper().writeValueAsBytes(body);
+            return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).contentLength(json.length).body(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.auth.oauth_server.controller;
+
+/**
+ * トークンエンドポイントの成功レスポンス (RFC 6749 5.1)
+ * JSON への書き出しは TokenResponseConverter が直接行う (token_type は常に Bearer)
+ * @param scope        null なら出力しない
+ * @param refreshToken null なら出力しない
+ */
+public record TokenResponse(String accessToken, long expiresIn, String scope, String refreshToken) {}
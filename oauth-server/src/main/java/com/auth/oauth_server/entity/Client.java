@@ -1,6 +1,8 @@
 package com.auth.oauth_server.entity;
 
+import com.auth.oauth_server.service.ClientCacheInvalidator;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
@@ -12,6 +14,7 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @NoArgsConstructor
 @Table(name = "oauth_clients")
+@EntityListeners(ClientCacheInvalidator.class) // 保存時に ClientRegistry のキャッシュを破棄
 public class Client {
     @Id
     private String clientId;      // 应用ID (如: client-app)
@@ -19,6 +22,7 @@ public class Client {
     private String redirectUri;   // 回调地址
     private String appName;       // 应用名称
     private String scopes;        // 許可されたスコープ (カンマ区切り: "read,write")
+    private String tokenFormat;   // アクセストークンの形式 ("jwt" (既定) / "reference": 参照型ハンドル)
 
     @com.fasterxml.jackson.annotation.JsonIgnore
     public String getClientSecret() {
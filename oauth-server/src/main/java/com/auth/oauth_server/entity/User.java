@@ -5,6 +5,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.Data; // Lombok 帮我们需要自动生成 getter/setter
 
@@ -12,7 +13,8 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity // 告诉 JPA 这是一个要存入数据库的类
-@Table(name = "users") // 数据库里的表名叫 users
+@Table(name = "users", // 数据库里的表名叫 users
+        indexes = @Index(name = "idx_users_username", columnList = "username", unique = true)) // ログイン・一括インポートの重複確認用
 public class User {
     
     @Id
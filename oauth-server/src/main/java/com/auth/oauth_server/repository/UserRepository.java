@@ -2,6 +2,10 @@ package com.auth.oauth_server.repository;
 
 import com.auth.oauth_server.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.Optional;
 
 // JpaRepository<实体类型, 主键类型>
@@ -10,4 +14,10 @@ public interface UserRepository extends JpaRepository<User, Long> {
     // 我们只需要定义这个方法名，Spring 会自动实现 SQL 查询：
     // SELECT * FROM users WHERE username = ?
     Optional<User> findByUsername(String username);
-}
\ No newline at end of file
+
+    // パスワードハッシュだけを更新する (失敗回数などの他の列は触らない)
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.password = :password WHERE u.username = :username")
+    int updatePassword(@Param("username") String username, @Param("password") String password);
+}
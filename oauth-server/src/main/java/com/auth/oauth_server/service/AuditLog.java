@@ -0,0 +1,431 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * 監査イベント (認可・ログイン・トークン発行などの判定結果) の非同期記録
+ *
+ * リクエストスレッドは固定長のイベントをリングバッファに書き込むだけで、文字列の整形も I/O もしない。
+ * ユーザー名・クライアント ID などの文字列は参照のままスロットに置き、書き出しスレッドがセグメントごとの
+ * SymbolTable で ID に変換する (表はセグメントを切り替えるたびに作り直すので、プロセスの寿命で増え続けない)。
+ * バッファが満杯のときは待たずに捨て、oauth.audit.dropped で数える (リクエストを遅らせない)。
+ *
+ * 専用スレッド 1 本がバッファをまとめて読み出し、メモリマップしたセグメントファイルに追記する。
+ * セグメントは segment-size-mb ごとに切り替え (閉じるときに未使用部分を切り詰める)、
+ * 各セグメントは自分の中で使う文字列の定義を含むので単独で読める (形式は AuditLogReader を参照)。
+ * 認可コードそのものは記録せず、プロセスごとの鍵で混ぜた 64 ビットの指紋だけを残す (発行と消費の突き合わせ用)。
+ */
+@Service
+public class AuditLog {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLog.class);
+
+    /**
+     * イベントの種類 (ファイルには ordinal を書くので、追加は必ず末尾に)
+     */
+    public enum Type {
+        AUTHORIZE_REQUEST,
+        UNKNOWN_CLIENT,
+        REDIRECT_URI_MISMATCH,
+        SCOPE_REJECTED,
+        RESPONSE_TYPE_REJECTED,
+        SSO_LOGIN,
+        LOGIN_SUCCESS,
+        LOGIN_FAILURE,
+        LOGIN_LOCKED,
+        ACCOUNT_LOCKED,
+        LOGIN_BUSY,
+        PASSWORD_REHASHED,
+        CODE_ISSUED,
+        CODE_REJECTED_FULL,
+        CODE_CONSUMED,
+        CODE_INVALID,
+        CODE_CLIENT_MISMATCH,
+        CLIENT_AUTH_SUCCESS,
+        CLIENT_AUTH_FAILURE,
+        PKCE_FAILURE,
+        GRANT_TYPE_REJECTED,
+        TOKEN_ISSUED,
+        REFRESH_TOKEN_ISSUED,
+        REFRESH_TOKEN_INVALID,
+        CLIENT_CREDENTIALS_ISSUED,
+        LOGOUT;
+
+        private static final Type[] VALUES = values();
+
+        static Type of(int ordinal) {
+            return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+        }
+    }
+
+    // ファイル形式 (AuditLogReader と共有)
+    static final int MAGIC = 0x4F415544; // "OAUD"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final byte KIND_END = 0;
+    static final byte KIND_EVENT = 1;
+    static final byte KIND_SYMBOL = 2;
+    static final int EVENT_BYTES = 32;
+    static final int NO_SYMBOL = 0;
+    static final int OVERFLOW_SYMBOL = -1;
+    // 1 つの文字列として記録する最大長 (超えた分は切り捨てる)
+    static final int MAX_SYMBOL_CHARS = 256;
+
+    private static final AtomicInteger SEGMENT_COUNTER = new AtomicInteger();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${oauth.audit.enabled:true}")
+    private volatile boolean enabled;
+
+    // セグメントファイルの出力先
+    @Value("${oauth.audit.dir:logs/audit}")
+    private String dir;
+
+    // リングバッファの件数 (2 のべき乗に切り上げる)
+    @Value("${oauth.audit.buffer-size:65536}")
+    private int bufferSize;
+
+    // 1 セグメントの大きさ (MB)
+    @Value("${oauth.audit.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    // 残すセグメント数 (古いものから削除する, 0 で無制限)
+    @Value("${oauth.audit.max-segments:0}")
+    private int maxSegments;
+
+    // ディスクへの書き出し (force) の最短間隔 (ミリ秒)
+    @Value("${oauth.audit.force-interval-ms:1000}")
+    private long forceIntervalMs;
+
+    // 1 セグメントに記録する文字列の種類の上限 (任意のユーザー名・クライアント ID を送りつけられても増え続けないように)
+    @Value("${oauth.audit.max-symbols:100000}")
+    private int maxSymbols;
+
+    private final long fingerprintKey = new SecureRandom().nextLong();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+
+    // リングバッファ: スロットごとのフィールド配列と、書き込み完了を示すシーケンス番号
+    private int mask;
+    private long[] times;
+    private long[] fingerprints;
+    private int[] types;
+    private String[] users;
+    private String[] clients;
+    private String[] details;
+    private AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(); // 次に確保するシーケンス番号
+    private volatile long head;                      // 書き出し済みの次のシーケンス番号 (書き出しスレッドだけが更新)
+
+    private Thread writer;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() throws IOException {
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        mask = capacity - 1;
+        times = new long[capacity];
+        fingerprints = new long[capacity];
+        types = new int[capacity];
+        users = new String[capacity];
+        clients = new String[capacity];
+        details = new String[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i - capacity); // まだ書かれていない印 (シーケンス番号と一致しない値)
+        }
+
+        FunctionCounter.builder("oauth.audit.published", published, LongAdder::sum)
+                .description("受け付けた監査イベント数")
+                .register(meterRegistry);
+        FunctionCounter.builder("oauth.audit.dropped", dropped, LongAdder::sum)
+                .description("バッファ満杯のため捨てた監査イベント数")
+                .register(meterRegistry);
+        FunctionCounter.builder("oauth.audit.written", written, AtomicLong::get)
+                .description("ファイルに書き出した監査イベント数")
+                .register(meterRegistry);
+        Gauge.builder("oauth.audit.backlog", this, AuditLog::backlog)
+                .description("書き出し待ちの監査イベント数")
+                .register(meterRegistry);
+
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(Path.of(dir));
+        running = true;
+        writer = new Thread(this::drainLoop, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            writer.join(10_000);
+        }
+    }
+
+    /**
+     * イベントを記録する (待たない。バッファ満杯なら捨てる)
+     */
+    public void record(Type type, String username, String clientId) {
+        publish(type, username, clientId, null, 0);
+    }
+
+    /**
+     * 補足情報 (スコープ・リダイレクト URI など) 付きでイベントを記録する
+     */
+    public void record(Type type, String username, String clientId, String detail) {
+        publish(type, username, clientId, detail, 0);
+    }
+
+    /**
+     * 認可コードに関するイベントを記録する (コードは指紋にして、そのものは残さない)
+     */
+    public void recordCode(Type type, String username, String clientId, String code) {
+        publish(type, username, clientId, null, fingerprint(code));
+    }
+
+    /**
+     * 認可コードの指紋 (エクスポートした監査ログとの突き合わせ用。プロセスごとに値が変わる)
+     */
+    public long fingerprint(String code) {
+        if (code == null) {
+            return 0;
+        }
+        long h = fingerprintKey;
+        for (int i = 0; i < code.length(); i++) {
+            h = (h ^ code.charAt(i)) * 0x100000001B3L;
+        }
+        // 最後に混ぜて、下位ビットだけからでも元の文字が推測しにくいようにする
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    private long backlog() {
+        return tail.get() - head;
+    }
+
+    private void publish(Type type, String username, String clientId, String detail, long fingerprint) {
+        if (!enabled) {
+            return;
+        }
+        long seq;
+        do {
+            seq = tail.get();
+            if (seq - head > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(seq, seq + 1));
+        int slot = (int) seq & mask;
+        times[slot] = System.currentTimeMillis();
+        fingerprints[slot] = fingerprint;
+        types[slot] = type.ordinal();
+        users[slot] = username;
+        clients[slot] = clientId;
+        details[slot] = detail;
+        sequences.lazySet(slot, seq); // フィールドを書き終えてから公開する
+        published.increment();
+    }
+
+    // 1 つの文字列として記録する部分 (MAX_SYMBOL_CHARS を超えた分は切り捨てる)
+    private static String truncate(String value) {
+        return value.length() > MAX_SYMBOL_CHARS ? value.substring(0, MAX_SYMBOL_CHARS) : value;
+    }
+
+    // 書き出しスレッド: 公開済みのイベントを順に読み出してセグメントに書く
+    private void drainLoop() {
+        Segment segment = null;
+        long lastForce = System.currentTimeMillis();
+        try {
+            while (true) {
+                boolean stopping = !running;
+                long seq = head;
+                int drained = 0;
+                while (sequences.get((int) seq & mask) == seq) {
+                    int slot = (int) seq & mask;
+                    if (segment == null || !segment.fits(slot)) {
+                        if (segment != null) {
+                            segment.close();
+                            pruneSegments();
+                        }
+                        segment = openSegment();
+                    }
+                    segment.write(slot);
+                    users[slot] = clients[slot] = details[slot] = null; // 書き出した文字列を持ち続けない
+                    seq++;
+                    drained++;
+                    head = seq; // スロットを生産者に返す
+                }
+                if (drained > 0) {
+                    written.addAndGet(drained);
+                }
+                long now = System.currentTimeMillis();
+                if (segment != null && (stopping || now - lastForce >= forceIntervalMs)) {
+                    segment.force();
+                    lastForce = now;
+                }
+                if (stopping) {
+                    break;
+                }
+                if (drained == 0) {
+                    LockSupport.parkNanos(1_000_000);
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.error("監査ログの書き出しに失敗しました。以降のイベントは捨てられます", e);
+            enabled = false;
+        } finally {
+            if (segment != null) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    log.warn("監査ログのセグメントを閉じられませんでした", e);
+                }
+            }
+        }
+    }
+
+    private Segment openSegment() throws IOException {
+        String name = String.format("audit-%013d-%d-%04d.bin",
+                System.currentTimeMillis(), ProcessHandle.current().pid(), SEGMENT_COUNTER.incrementAndGet() % 10_000);
+        return new Segment(Path.of(dir, name), (long) segmentSizeMb * 1024 * 1024);
+    }
+
+    private void pruneSegments() throws IOException {
+        if (maxSegments <= 0) {
+            return;
+        }
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(Path.of(dir))) {
+            segments = files.filter(AuditLogReader::isSegment).sorted().toList();
+        }
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    /**
+     * 書き込み中のセグメント 1 個 (書き出しスレッドだけが使う)
+     */
+    private final class Segment {
+
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final SymbolTable symbols = new SymbolTable(); // このセグメントで定義済みの文字列 (ID はセグメントの中でだけ有効)
+
+        Segment(Path path, long size) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+            log.info("監査ログのセグメントを開きました: {}", path);
+        }
+
+        // イベントと未定義の文字列がすべて入るか (末尾の終端マーカー 1 バイト分も残す)
+        boolean fits(int slot) {
+            int needed = EVENT_BYTES + 1;
+            needed += symbolBytes(users[slot]) + symbolBytes(clients[slot]) + symbolBytes(details[slot]);
+            return buffer.remaining() >= needed;
+        }
+
+        void write(int slot) {
+            int user = define(users[slot]);
+            int client = define(clients[slot]);
+            int detail = define(details[slot]);
+            buffer.put(KIND_EVENT)
+                    .put((byte) types[slot])
+                    .putShort((short) 0)
+                    .putInt(user)
+                    .putInt(client)
+                    .putInt(detail)
+                    .putLong(times[slot])
+                    .putLong(fingerprints[slot]);
+        }
+
+        // 文字列の ID を返し、このセグメントで初出なら定義を書く: kind(1) 予備(1) 長さ(2) ID(4) UTF-8 バイト列
+        // 上限に達したセグメントでは、未定義の文字列は OVERFLOW_SYMBOL (-1) になる
+        private int define(String value) {
+            if (value == null) {
+                return NO_SYMBOL;
+            }
+            value = truncate(value);
+            int id = symbols.find(value);
+            if (id > 0) {
+                return id;
+            }
+            if (symbols.size() >= maxSymbols) {
+                return OVERFLOW_SYMBOL;
+            }
+            id = symbols.intern(value);
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.put(KIND_SYMBOL).put((byte) 0).putShort((short) bytes.length).putInt(id).put(bytes);
+            return id;
+        }
+
+        private int symbolBytes(String value) {
+            if (value == null || symbols.size() >= maxSymbols || symbols.find(truncate(value)) > 0) {
+                return 0;
+            }
+            return 8 + MAX_SYMBOL_CHARS * 3; // UTF-8 の最大長で見積もる
+        }
+
+
+        void force() {
+            buffer.force();
+        }
+
+        // 未使用部分を切り詰めて閉じる (終端は長さで分かるので、切り詰めた後は KIND_END を書かなくてよい)
+        void close() throws IOException {
+            buffer.force();
+            long used = buffer.position();
+            channel.truncate(used);
+            channel.close();
+        }
+    }
+}
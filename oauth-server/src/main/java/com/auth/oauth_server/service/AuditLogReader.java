@@ -0,0 +1,151 @@
+package com.auth.oauth_server.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 監査ログ (AuditLog のセグメントファイル) の読み出しと NDJSON へのエクスポート
+ *
+ * セグメントの形式 (ビッグエンディアン):
+ * <pre>
+ *   ヘッダー 16 バイト: magic "OAUD" (4) | バージョン (4) | 作成時刻 (8, エポックミリ秒)
+ *   以降はレコードの並び (先頭 1 バイトが種類。0 または ファイル末尾で終わり):
+ *   イベント 32 バイト: 1 | 種類 (1) | 予備 (2) | ユーザー (4) | クライアント (4) | 補足 (4) | 時刻 (8) | コード指紋 (8)
+ *   文字列定義:         2 | 予備 (1) | 長さ (2) | ID (4) | UTF-8 バイト列
+ * </pre>
+ * 文字列 ID 0 は値なし、-1 は記録上限を超えたため省略された値。ID はセグメントの中でだけ有効。
+ *
+ * 使い方: java -cp oauth-server.jar -Dloader.main=com.auth.oauth_server.service.AuditLogReader
+ *         org.springframework.boot.loader.launch.PropertiesLauncher logs/audit > audit.ndjson
+ * (引数はセグメントファイルかディレクトリ。ディレクトリの場合は名前順 = 作成順に読む)
+ */
+public final class AuditLogReader {
+
+    private static final String OVERFLOW = "(overflow)";
+
+    private AuditLogReader() {
+    }
+
+    /**
+     * 読み出したイベント
+     * @param code 認可コードの指紋 (16 進数, コードに関するイベント以外は null)
+     */
+    public record Entry(Instant time, AuditLog.Type type, String username, String clientId, String detail, String code) {}
+
+    public static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith("audit-") && name.endsWith(".bin");
+    }
+
+    /**
+     * ファイルまたはディレクトリ内のセグメントを作成順に読む
+     */
+    public static void readAll(Path path, Consumer<Entry> consumer) throws IOException {
+        if (!Files.isDirectory(path)) {
+            read(path, consumer);
+            return;
+        }
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(path)) {
+            segments = files.filter(AuditLogReader::isSegment).sorted().toList();
+        }
+        for (Path segment : segments) {
+            read(segment, consumer);
+        }
+    }
+
+    /**
+     * セグメント 1 個を読む (書き込み中・異常終了したセグメントも、書かれたところまで読める)
+     */
+    public static void read(Path segment, Consumer<Entry> consumer) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.remaining() < AuditLog.HEADER_BYTES || buffer.getInt() != AuditLog.MAGIC) {
+            throw new IOException("監査ログのセグメントではありません: " + segment);
+        }
+        int version = buffer.getInt();
+        if (version != AuditLog.VERSION) {
+            throw new IOException("未対応のバージョンです: " + version + " (" + segment + ")");
+        }
+        buffer.getLong(); // 作成時刻
+
+        Map<Integer, String> symbols = new HashMap<>();
+        while (buffer.hasRemaining()) {
+            byte kind = buffer.get();
+            if (kind == AuditLog.KIND_SYMBOL && buffer.remaining() >= 7) {
+                buffer.get();
+                int length = buffer.getShort() & 0xFFFF;
+                int id = buffer.getInt();
+                if (buffer.remaining() < length) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                symbols.put(id, new String(bytes, StandardCharsets.UTF_8));
+            } else if (kind == AuditLog.KIND_EVENT && buffer.remaining() >= AuditLog.EVENT_BYTES - 1) {
+                AuditLog.Type type = AuditLog.Type.of(buffer.get());
+                buffer.getShort();
+                String username = symbol(symbols, buffer.getInt());
+                String clientId = symbol(symbols, buffer.getInt());
+                String detail = symbol(symbols, buffer.getInt());
+                long time = buffer.getLong();
+                long fingerprint = buffer.getLong();
+                consumer.accept(new Entry(Instant.ofEpochMilli(time), type, username, clientId, detail,
+                        fingerprint == 0 ? null : String.format("%016x", fingerprint)));
+            } else {
+                break; // KIND_END (未使用領域) か、途中で切れたレコード
+            }
+        }
+    }
+
+    private static String symbol(Map<Integer, String> symbols, int id) {
+        if (id == AuditLog.NO_SYMBOL) {
+            return null;
+        }
+        return id == AuditLog.OVERFLOW_SYMBOL ? OVERFLOW : symbols.get(id);
+    }
+
+    /**
+     * セグメントを NDJSON (1 行 1 イベント) で標準出力に書き出す
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: AuditLogReader <segment file or directory>");
+            System.exit(2);
+        }
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        readAll(Path.of(args[0]), entry -> {
+            try {
+                out.write(mapper.writeValueAsString(entry));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.flush();
+    }
+}
@@ -1,22 +1,15 @@
 package com.auth.oauth_server.service;
 
-import com.auth.oauth_server.entity.User;
-import com.auth.oauth_server.repository.ClientRepository;
 import com.auth.oauth_server.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.time.LocalDateTime;
-import java.util.Arrays;
 import java.util.Base64;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
 
 @Service
 public class AuthService {
@@ -24,91 +17,167 @@ public class AuthService {
     private static final Logger log = LoggerFactory.getLogger(AuthService.class);
 
     @Autowired
-    private ClientRepository clientRepository;
+    private ClientRegistry clientRegistry;
+
+    @Autowired
+    private ClientSecretCache clientSecretCache;
 
     @Autowired
     private UserRepository userRepository;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private LoginAttemptTracker loginAttemptTracker;
 
-    // 2. 認可コードのコンテキストを保存 (メモリ内ストレージ)
-    private final Map<String, AuthCodeData> codeStore = new ConcurrentHashMap<>();
+    @Autowired
+    private StageMetrics stageMetrics;
+
+    @Autowired
+    private ScopeRegistry scopeRegistry;
+
+    @Autowired
+    private AuditLog auditLog;
+
+    // 2. 認可コードのコンテキストを保存 (oauth.code-store.type でメモリ内 / JDBC 共有を切り替え)
+    @Autowired
+    private AuthorizationCodeStore codeStore;
 
     /**
      * 新しいメソッド：第一段階チェック
      * "Client ID" が存在するか、および "Redirect URI" が一致するか検証
      */
     public boolean validateClient(String clientId, String redirectUri) {
-        return clientRepository.findByClientId(clientId)
+        StageEvents.ClientValidation event = new StageEvents.ClientValidation();
+        event.begin();
+        return findClient(clientId)
                 .map(client -> {
                     // アプリが見つかりました。次にコールバックURLが正しいか確認します
-                    boolean isUriValid = client.getRedirectUri().equals(redirectUri);
+                    boolean isUriValid = client.allowsRedirectUri(redirectUri);
                     if (!isUriValid) {
-                        log.warn("クライアント [{}] が不正なコールバックURLを使用しようとしました: {}", clientId, redirectUri);
+                        auditLog.record(AuditLog.Type.REDIRECT_URI_MISMATCH, null, clientId, redirectUri);
                     }
+                    event.finish(clientId, isUriValid ? StageEvents.OK : "redirect_mismatch");
                     return isUriValid;
                 })
                 .orElseGet(() -> {
-                    log.warn("不明なクライアント ID: {}", clientId);
+                    auditLog.record(AuditLog.Type.UNKNOWN_CLIENT, null, clientId);
+                    event.finish(clientId, "unknown_client");
                     return false;
                 });
     }
 
     /**
      * ユーザー認証（アカウントロック機能付き）
+     * 失敗回数とロック状態は LoginAttemptTracker がメモリ上で管理し、DB へはまとめて書き出す
      */
     public boolean authenticateUser(String username, String rawPassword) {
-        return userRepository.findByUsername(username)
-                .map(user -> {
-                    // ロックチェック
-                    if (user.getLockTime() != null) {
-                        if (user.getLockTime().isAfter(LocalDateTime.now())) {
-                            log.warn("ロックされたアカウント [{}] がログインを試みました", username);
+        long start = stageMetrics.start();
+        StageEvents.UserAuthentication event = new StageEvents.UserAuthentication();
+        event.begin();
+        boolean authenticated;
+        try {
+            authenticated = userRepository.findByUsername(username)
+                    .map(user -> {
+                        // ロックチェック (期限切れのロックはここで解除される)
+                        if (loginAttemptTracker.isLocked(user)) {
+                            auditLog.record(AuditLog.Type.LOGIN_LOCKED, username, null);
+                            event.finish("locked", false);
                             return false;
-                        } else {
-                            // ロック解除
-                            user.setLockTime(null);
-                            user.setFailedAttempts(0);
-                            userRepository.save(user);
                         }
-                    }
 
-                    // パスワード検証
-                    if (passwordEncoder.matches(rawPassword, user.getPassword())) {
-                        // 成功: 失敗回数をリセット
-                        user.setFailedAttempts(0);
-                        userRepository.save(user);
-                        return true;
-                    } else {
-                        // 失敗: 回数をインクリメント
-                        user.setFailedAttempts(user.getFailedAttempts() + 1);
-                        if (user.getFailedAttempts() >= 5) {
-                            user.setLockTime(LocalDateTime.now().plusMinutes(15)); // 15分ロック
-                            log.warn("アカウント [{}] は連続失敗のためロックされました", username);
+                        // パスワード検証 (専用スレッドで実行。混雑時は PasswordHasher.BusyException)
+                        if (passwordHasher.matches(rawPassword, user.getPassword())) {
+                            // 成功: 失敗回数をリセット
+                            loginAttemptTracker.recordSuccess(user);
+                            auditLog.record(AuditLog.Type.LOGIN_SUCCESS, username, null);
+                            // 保存済みハッシュのコストが設定と異なれば裏で作り直す
+                            if (passwordHasher.needsRehash(user.getPassword())) {
+                                passwordHasher.rehashInBackground(rawPassword, encoded -> {
+                                    userRepository.updatePassword(username, encoded);
+                                    auditLog.record(AuditLog.Type.PASSWORD_REHASHED, username, null);
+                                });
+                            }
+                            event.finish(StageEvents.OK, false);
+                            return true;
+                        } else {
+                            // 失敗: 回数をインクリメント (5 回で 15 分ロック)
+                            auditLog.record(AuditLog.Type.LOGIN_FAILURE, username, null);
+                            boolean lockTriggered = loginAttemptTracker.recordFailure(user);
+                            if (lockTriggered) {
+                                auditLog.record(AuditLog.Type.ACCOUNT_LOCKED, username, null);
+                            }
+                            event.finish("bad_password", lockTriggered);
+                            return false;
                         }
-                        userRepository.save(user);
+                    })
+                    .orElseGet(() -> {
+                        auditLog.record(AuditLog.Type.LOGIN_FAILURE, username, null, "unknown_user");
+                        event.finish("unknown_user", false);
                         return false;
-                    }
-                })
-                .orElse(false);
+                    });
+        } catch (PasswordHasher.BusyException e) {
+            event.finish("busy", false);
+            throw e;
+        }
+        stageMetrics.record(StageMetrics.Stage.USER_AUTH, StageMetrics.NO_CLIENT, authenticated, start);
+        return authenticated;
+    }
+
+    /**
+     * アカウントがロック中か (SSO セッションでの Code 発行前に確認する)
+     */
+    public boolean isAccountLocked(String username) {
+        return loginAttemptTracker.isLockedInMemory(username);
     }
 
     /**
      * スコープ検証
      */
     public boolean validateScope(String clientId, String requestedScope) {
-        return clientRepository.findByClientId(clientId)
-                .map(client -> {
-                    if (client.getScopes() == null || client.getScopes().isBlank()) {
-                        return false; // スコープ未定義の場合は拒否
-                    }
-                    // リクエストされたスコープが含まれているか確認
-                    // 単純化のため、部分一致ではなく完全一致またはリストに含まれるかで判定
-                    String[] allowedScopes = client.getScopes().split(",");
-                    return Arrays.asList(allowedScopes).contains(requestedScope);
-                })
-                .orElse(false);
+        return grantScope(clientId, requestedScope) != null;
+    }
+
+    /**
+     * 要求スコープ (スペース区切りで複数指定可) がすべてクライアントに許可されていれば、正規化したスコープ文字列を返す
+     * 許可されないスコープが 1 つでもあれば null (スコープ未定義のクライアントは空集合なので拒否)
+     * 区切り文字しかない (名前が 1 つもない) 要求も null
+     */
+    public String grantScope(String clientId, String requestedScope) {
+        if (requestedScope == null) {
+            return null;
+        }
+        Optional<ClientRegistry.ClientSnapshot> client = findClient(clientId); // 先にロードしてスコープ名を登録させる
+        long requested = scopeRegistry.parse(requestedScope);
+        if (requested == 0 || client.isEmpty() || !client.get().allowsScopes(requested, requestedScope)) {
+            return null;
+        }
+        return scopeString(requested, requestedScope);
+    }
+
+    /**
+     * リフレッシュ時のスコープ: 元の認可の範囲内であれば要求スコープ (正規化済み)、範囲外または名前が 1 つもなければ null
+     */
+    public String narrowScope(String grantedScope, String requestedScope) {
+        if (grantedScope == null || requestedScope == null) {
+            return null;
+        }
+        long granted = scopeRegistry.parse(grantedScope);
+        long requested = scopeRegistry.parse(requestedScope);
+        if (requested == 0) {
+            return null;
+        }
+        if (((granted | requested) & ScopeRegistry.UNRESOLVED) == 0) {
+            return ScopeRegistry.contains(granted, requested) ? scopeRegistry.format(requested) : null;
+        }
+        // 割り当てのないスコープ名を含む場合は名前の集合で比較する
+        return ScopeRegistry.split(grantedScope).containsAll(ScopeRegistry.split(requestedScope))
+                ? scopeString(requested, requestedScope) : null;
+    }
+
+    private String scopeString(long mask, String scope) {
+        return (mask & ScopeRegistry.UNRESOLVED) == 0 ? scopeRegistry.format(mask) : String.join(" ", ScopeRegistry.split(scope));
     }
 
     /**
@@ -116,45 +185,87 @@ public class AuthService {
      * "Client ID" と "Client Secret" が一致するか検証 (Token 交換時用)
      */
     public boolean authenticateClient(String clientId, String clientSecret) {
-        return clientRepository.findByClientId(clientId)
-                .map(client -> {
-                    // BCrypt でハッシュ化されたシークレットを比較
-                    boolean isSecretValid = passwordEncoder.matches(clientSecret, client.getClientSecret());
-                    if (!isSecretValid) {
-                        log.warn("クライアント [{}] のシークレットが間違っています！", clientId);
-                    }
-                    return isSecretValid;
-                })
-                .orElse(false); // ID さえ見つからない
+        StageEvents.ClientAuthentication event = new StageEvents.ClientAuthentication();
+        event.begin();
+        try {
+            return findClient(clientId)
+                    .map(client -> {
+                        long start = stageMetrics.start();
+                        // 直近に BCrypt 照合済みのシークレットであれば HMAC の比較だけで済ませる
+                        if (clientSecretCache.matches(clientId, clientSecret, client.clientSecret())) {
+                            stageMetrics.record(StageMetrics.Stage.CLIENT_SECRET, clientId, true, start);
+                            auditLog.record(AuditLog.Type.CLIENT_AUTH_SUCCESS, null, clientId);
+                            event.finish(clientId, StageEvents.OK, true);
+                            return true;
+                        }
+                        // BCrypt でハッシュ化されたシークレットを比較 (専用スレッドで実行)
+                        boolean isSecretValid = passwordHasher.matches(clientSecret, client.clientSecret());
+                        if (isSecretValid) {
+                            clientSecretCache.remember(clientId, clientSecret, client.clientSecret());
+                        }
+                        auditLog.record(isSecretValid ? AuditLog.Type.CLIENT_AUTH_SUCCESS : AuditLog.Type.CLIENT_AUTH_FAILURE, null, clientId);
+                        stageMetrics.record(StageMetrics.Stage.CLIENT_SECRET, clientId, isSecretValid, start);
+                        event.finish(clientId, isSecretValid ? StageEvents.OK : "bad_secret", false);
+                        return isSecretValid;
+                    })
+                    .orElseGet(() -> { // ID さえ見つからない
+                        auditLog.record(AuditLog.Type.CLIENT_AUTH_FAILURE, null, clientId, "unknown_client");
+                        event.finish(clientId, "unknown_client", false);
+                        return false;
+                    });
+        } catch (PasswordHasher.BusyException e) {
+            event.finish(clientId, "busy", false);
+            throw e;
+        }
     }
 
-    // 認証コードを生成してコンテキストを記録
+    // 認証コードを生成してコンテキストを記録 (10分間有効)
+    // ストアに保存できない場合 (上限超過) は null を返す
     public String createAuthorizationCode(String username, String clientId, String scope, String codeChallenge, String codeChallengeMethod, String redirectUri) {
-        String code = UUID.randomUUID().toString();
-        long expiresAt = System.currentTimeMillis() + 10 * 60 * 1000; // 10分間有効
-        AuthCodeData data = new AuthCodeData(username, clientId, scope, codeChallenge, codeChallengeMethod, redirectUri, expiresAt);
-        codeStore.put(code, data);
-        log.info("ユーザー [{}] の認証コードを生成しました: {}", username, code);
+        long start = stageMetrics.start();
+        StageEvents.CodeCreate event = new StageEvents.CodeCreate();
+        event.begin();
+        String code = codeStore.create(username, clientId, scope, codeChallenge, codeChallengeMethod, redirectUri);
+        stageMetrics.record(StageMetrics.Stage.CODE_CREATE, clientId, code != null, start);
+        event.finish(clientId, code != null ? StageEvents.OK : "store_full", codeStore);
+        if (code == null) {
+            // 認可コードの保持数が上限に達している
+            auditLog.record(AuditLog.Type.CODE_REJECTED_FULL, username, clientId);
+            return null;
+        }
+        auditLog.recordCode(AuditLog.Type.CODE_ISSUED, username, clientId, code);
         return code;
     }
 
     // 認証コードを消費してコンテキストを返す
     public AuthCodeData consumeCode(String code) {
-        AuthCodeData data = codeStore.remove(code);
+        long start = stageMetrics.start();
+        StageEvents.CodeConsume event = new StageEvents.CodeConsume();
+        event.begin();
+        AuthCodeData data = codeStore.consume(code);
+        stageMetrics.record(StageMetrics.Stage.CODE_CONSUME, data == null ? StageMetrics.UNKNOWN_CLIENT : data.clientId(), data != null, start);
+        event.finish(data == null ? null : data.clientId(), data != null ? StageEvents.OK : "invalid", codeStore);
         if (data == null) {
-            log.warn("無効な認証コードを消費しようとしました: {}", code);
-            return null;
-        }
-        if (System.currentTimeMillis() > data.expiresAt()) {
-            log.warn("認証コード [{}] は期限切れです", code);
+            // 無効または期限切れ (使用済みを含む)
+            auditLog.recordCode(AuditLog.Type.CODE_INVALID, null, null, code);
             return null;
         }
-        log.info("認証コード [{}] が消費されました", code);
+        auditLog.recordCode(AuditLog.Type.CODE_CONSUMED, data.username(), data.clientId(), code);
         return data;
     }
 
     // PKCE 検証（提供された場合）
     public boolean verifyPkce(String codeChallenge, String method, String codeVerifier) {
+        long start = stageMetrics.start();
+        StageEvents.PkceVerification event = new StageEvents.PkceVerification();
+        event.begin();
+        boolean verified = checkPkce(codeChallenge, method, codeVerifier);
+        stageMetrics.record(StageMetrics.Stage.PKCE, StageMetrics.NO_CLIENT, verified, start);
+        event.finish(codeChallenge == null ? "none" : method == null || method.isBlank() ? "plain" : method, verified ? StageEvents.OK : "mismatch");
+        return verified;
+    }
+
+    private boolean checkPkce(String codeChallenge, String method, String codeVerifier) {
         if (codeChallenge == null) return true;
         if (codeVerifier == null || codeVerifier.isBlank()) return false;
         if (method == null || method.isBlank() || "plain".equalsIgnoreCase(method)) {
@@ -175,6 +286,14 @@ public class AuthService {
         return false;
     }
 
+    // 登録済みクライアントの参照 (キャッシュ経由)。見つからなかった場合は client=unknown で記録する
+    private Optional<ClientRegistry.ClientSnapshot> findClient(String clientId) {
+        long start = stageMetrics.start();
+        Optional<ClientRegistry.ClientSnapshot> client = clientRegistry.find(clientId);
+        stageMetrics.record(StageMetrics.Stage.CLIENT_LOOKUP, client.isPresent() ? clientId : StageMetrics.UNKNOWN_CLIENT, client.isPresent(), start);
+        return client;
+    }
+
     // 認証コードに含まれるコンテキストデータ
     public record AuthCodeData(String username, String clientId, String scope, String codeChallenge, String codeChallengeMethod, String redirectUri, long expiresAt) {}
 }
@@ -0,0 +1,35 @@
+package com.auth.oauth_server.service;
+
+/**
+ * 認可コードの保存先
+ * oauth.code-store.type で実装を切り替える (memory: 単一ノード / jdbc: 複数ノードで共有)
+ * (実装は AuthorizationCodeStoreConfig が起動時のプロパティで選ぶ)
+ */
+public interface AuthorizationCodeStore {
+
+    /**
+     * 認可コードを発行して保存する
+     * @return 発行したコード。保存できない場合 (上限超過など) は null
+     */
+    String create(String username, String clientId, String scope, String codeChallenge, String codeChallengeMethod, String redirectUri);
+
+    /**
+     * 認可コードを取り出して削除する
+     * 同じコードを同時に消費しようとしても、成功するのは常に 1 回だけ
+     * @return 有効なコードのコンテキスト。存在しない・消費済み・期限切れの場合は null
+     */
+    AuthService.AuthCodeData consume(String code);
+
+    /**
+     * 保持中の認可コード数 (監視用)
+     */
+    int size();
+
+    /**
+     * 保持中の認可コード数のうち、すぐに分かるもの (リクエストごとの計測イベント用)
+     * 数えるのにクエリなどが必要な実装は -1 を返す
+     */
+    default int sizeHint() {
+        return -1;
+    }
+}
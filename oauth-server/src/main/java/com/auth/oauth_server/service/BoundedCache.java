@@ -0,0 +1,86 @@
+package com.auth.oauth_server.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 件数上限付きのキャッシュ (2 世代方式)
+ *
+ * 追加は現世代に対して行い、現世代が上限の半分に達したら旧世代を丸ごと捨てて世代を入れ替える。
+ * 追い出しは参照の付け替えだけなので、上限に達していても追加は O(1) (全件の走査をしない)。
+ * 参照は現世代・旧世代の順に引く。保持数はおよそ上限以下に収まる。
+ * 有効期限は値の側に持たせ、呼び出し側で判定する (期限切れのエントリも世代の入れ替えで消える)。
+ * 削除 (invalidate) と世代の入れ替えは排他にして、入れ替え中の削除漏れを防ぐ。
+ */
+final class BoundedCache<K, V> {
+
+    private final int generationSize;
+    private volatile Map<K, V> current = new ConcurrentHashMap<>();
+    private volatile Map<K, V> previous = new ConcurrentHashMap<>();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize 保持する最大件数 (1 以上)
+     */
+    BoundedCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize は 1 以上にしてください: " + maxSize);
+        }
+        this.generationSize = Math.max(1, maxSize / 2);
+    }
+
+    V get(K key) {
+        V value = current.get(key);
+        return value != null ? value : previous.get(key);
+    }
+
+    void put(K key, V value) {
+        Map<K, V> generation = current;
+        generation.put(key, value);
+        if (generation.size() >= generationSize) {
+            rotate(generation);
+        }
+    }
+
+    synchronized void remove(K key) {
+        previous.remove(key);
+        current.remove(key);
+    }
+
+    // 値が変わっていなければ削除する (期限切れを見つけたときなど)
+    synchronized void remove(K key, V value) {
+        previous.remove(key, value);
+        current.remove(key, value);
+    }
+
+    synchronized void removeKeys(Predicate<? super K> predicate) {
+        previous.keySet().removeIf(predicate);
+        current.keySet().removeIf(predicate);
+    }
+
+    synchronized void clear() {
+        previous = new ConcurrentHashMap<>();
+        current = new ConcurrentHashMap<>();
+    }
+
+    int size() {
+        return current.size() + previous.size();
+    }
+
+    // 世代の入れ替えで捨てたエントリ数
+    long evictions() {
+        return evictions.sum();
+    }
+
+    // 他のスレッドが先に入れ替えていれば何もしない
+    private synchronized void rotate(Map<K, V> full) {
+        if (current != full) {
+            return;
+        }
+        evictions.add(previous.size());
+        previous = full;
+        current = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,417 @@
+package com.auth.oauth_server.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 旧システムからのユーザー・クライアントの一括インポート
+ *
+ * ファイル (CSV はヘッダー行必須、.ndjson / .jsonl は 1 行 1 JSON) を batch-size 行ずつ読み、
+ * パスワード (シークレット) の BCrypt を専用の ForkJoinPool で並列に計算して、JDBC のバッチ INSERT で書き込む。
+ * 次のバッチのハッシュ計算は前のバッチの書き込みと並行して進むので、取り込み速度は CPU (BCrypt) で決まる。
+ * ファイル全体をメモリに載せることはない。
+ *
+ * 進捗 (処理済みの行番号) は import_checkpoints テーブルに、各バッチの INSERT と同じトランザクションで記録する。
+ * 途中で止まっても、同じファイルを再実行すれば続きから再開する (書き込み済みの行を二重に取り込まない)。
+ * 既に存在するユーザー名・クライアント ID の行は上書きせず skipped として数える。
+ */
+@Service
+public class BulkImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkImportService.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Pattern BCRYPT = Pattern.compile("\\$2[aby]?\\$\\d{2}\\$[./A-Za-z0-9]{53}");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    // 1 バッチ (1 トランザクション) の行数
+    @Value("${oauth.import.batch-size:1000}")
+    private int batchSize;
+
+    // ハッシュ計算の並列数 (0 なら CPU 数)
+    @Value("${oauth.import.parallelism:0}")
+    private int parallelism;
+
+    // 進捗をログに出す間隔 (秒)
+    @Value("${oauth.import.progress-interval-seconds:10}")
+    private long progressIntervalSeconds;
+
+    @PostConstruct
+    void init() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS import_checkpoints (
+                    source VARCHAR(1024) PRIMARY KEY,
+                    line_no BIGINT NOT NULL,
+                    imported BIGINT NOT NULL,
+                    skipped BIGINT NOT NULL,
+                    failed BIGINT NOT NULL,
+                    completed BOOLEAN NOT NULL
+                )""");
+    }
+
+    /**
+     * ユーザーを取り込む (列: username, password。password が BCrypt ハッシュならそのまま保存)
+     */
+    public Result importUsers(Path file) throws IOException {
+        return importFile(Kind.USERS, file);
+    }
+
+    /**
+     * クライアントを取り込む (列: client_id, client_secret, redirect_uri, app_name, scopes, token_format (任意))
+     * redirect_uri は 1 つ (認可時に完全一致で照合)、scopes はカンマ区切り (NDJSON では配列も可)
+     */
+    public Result importClients(Path file) throws IOException {
+        return importFile(Kind.CLIENTS, file);
+    }
+
+    private Result importFile(Kind kind, Path file) throws IOException {
+        String source = kind.label + ":" + file.toAbsolutePath().normalize();
+        Progress progress = loadCheckpoint(source);
+        if (progress.completed) {
+            log.info("{} は取り込み済みです (やり直す場合は import_checkpoints の行を削除してください)", source);
+            return progress.result(source, 0);
+        }
+        if (progress.lineNo > 0) {
+            log.info("{} を {} 行目の次から再開します", source, progress.lineNo);
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            RowReader rows = new RowReader(reader, isNdjson(file), progress.lineNo);
+            ForkJoinTask<Batch> pending = null;
+            while (true) {
+                Chunk chunk = rows.next(kind, batchSize);
+                // 次のバッチのハッシュ計算を始めてから、前のバッチを書き込む
+                ForkJoinTask<Batch> next = chunk.lines() == 0 ? null : pool.submit(() -> prepare(kind, chunk));
+                if (pending != null) {
+                    write(kind, source, pending.join(), progress, start);
+                }
+                if (next == null) {
+                    break;
+                }
+                pending = next;
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        progress.completed = true;
+        saveCheckpoint(source, progress);
+        Result result = progress.result(source, (System.nanoTime() - start) / 1_000_000);
+        log.info("{} の取り込みが完了しました: 取り込み {} / 既存 {} / 不正 {} ({} 行/秒)",
+                source, result.imported(), result.skipped(), result.failed(), Math.round(result.rowsPerSecond()));
+        return result;
+    }
+
+    // ForkJoinPool 内で並列に各行の INSERT パラメータを作る (BCrypt はここで計算する)
+    private Batch prepare(Kind kind, Chunk chunk) {
+        List<Object[]> params = chunk.rows().parallelStream()
+                .map(fields -> {
+                    try {
+                        return kind.params(fields, passwordEncoder);
+                    } catch (IllegalArgumentException e) {
+                        log.warn("{} 行目を読み飛ばしました: {}", fields.get(LINE), e.getMessage());
+                        return null;
+                    }
+                })
+                .collect(Collectors.toList());
+        int invalid = 0;
+        for (Iterator<Object[]> it = params.iterator(); it.hasNext(); ) {
+            if (it.next() == null) {
+                it.remove();
+                invalid++;
+            }
+        }
+        return new Batch(params, chunk.lastLine(), chunk.failed() + invalid, chunk.duplicates());
+    }
+
+    // バッチ INSERT とチェックポイントの更新を 1 トランザクションで行う
+    private void write(Kind kind, String source, Batch batch, Progress progress, long start) {
+        transactionTemplate.executeWithoutResult(status -> {
+            long imported = 0;
+            if (!batch.params().isEmpty()) {
+                for (int count : jdbcTemplate.batchUpdate(kind.insertSql, batch.params())) {
+                    imported += count == 0 ? 0 : 1; // 0: 既存 (NOT EXISTS で除外), SUCCESS_NO_INFO (-2) は取り込み扱い
+                }
+            }
+            progress.lineNo = batch.lastLine();
+            progress.imported += imported;
+            progress.skipped += batch.params().size() - imported + batch.duplicates();
+            progress.failed += batch.failed();
+            saveCheckpoint(source, progress);
+        });
+        long now = System.nanoTime();
+        if (now - progress.loggedAt >= progressIntervalSeconds * 1_000_000_000L) {
+            progress.loggedAt = now;
+            log.info("{} を取り込み中: {} 行目まで完了 (取り込み {} / 既存 {} / 不正 {}, {} 行/秒)",
+                    source, progress.lineNo, progress.imported, progress.skipped, progress.failed,
+                    Math.round((progress.imported - progress.importedAtStart) * 1e9 / (now - start)));
+        }
+    }
+
+    private Progress loadCheckpoint(String source) {
+        List<Progress> found = jdbcTemplate.query(
+                "SELECT line_no, imported, skipped, failed, completed FROM import_checkpoints WHERE source = ?",
+                (rs, rowNum) -> new Progress(rs.getLong("line_no"), rs.getLong("imported"), rs.getLong("skipped"),
+                        rs.getLong("failed"), rs.getBoolean("completed")),
+                source);
+        return found.isEmpty() ? new Progress(0, 0, 0, 0, false) : found.get(0);
+    }
+
+    private void saveCheckpoint(String source, Progress progress) {
+        int updated = jdbcTemplate.update(
+                "UPDATE import_checkpoints SET line_no = ?, imported = ?, skipped = ?, failed = ?, completed = ? WHERE source = ?",
+                progress.lineNo, progress.imported, progress.skipped, progress.failed, progress.completed, source);
+        if (updated == 0) {
+            jdbcTemplate.update(
+                    "INSERT INTO import_checkpoints (source, line_no, imported, skipped, failed, completed) VALUES (?, ?, ?, ?, ?, ?)",
+                    source, progress.lineNo, progress.imported, progress.skipped, progress.failed, progress.completed);
+        }
+    }
+
+    private static boolean isNdjson(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl");
+    }
+
+    // 行の項目に入れておく行番号 (ログ用)
+    private static final String LINE = "#line";
+
+    private enum Kind {
+
+        USERS("users", "username", """
+                INSERT INTO users (username, password, failed_attempts)
+                SELECT ?, ?, 0 WHERE NOT EXISTS (SELECT 1 FROM users WHERE username = ?)""") {
+            @Override
+            Object[] params(Map<String, String> fields, PasswordEncoder encoder) {
+                String username = required(fields, "username");
+                return new Object[]{username, hash(required(fields, "password"), encoder), username};
+            }
+        },
+
+        CLIENTS("clients", "client_id", """
+                INSERT INTO oauth_clients (client_id, client_secret, redirect_uri, app_name, scopes, token_format)
+                SELECT ?, ?, ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM oauth_clients WHERE client_id = ?)""") {
+            @Override
+            Object[] params(Map<String, String> fields, PasswordEncoder encoder) {
+                String clientId = required(fields, "client_id");
+                return new Object[]{clientId, hash(required(fields, "client_secret"), encoder), required(fields, "redirect_uri"),
+                        fields.get("app_name"), fields.get("scopes"), fields.get("token_format"), clientId};
+            }
+        };
+
+        final String label;
+        final String key;
+        final String insertSql;
+
+        Kind(String label, String key, String insertSql) {
+            this.label = label;
+            this.key = key;
+            this.insertSql = insertSql;
+        }
+
+        abstract Object[] params(Map<String, String> fields, PasswordEncoder encoder);
+
+        private static String required(Map<String, String> fields, String name) {
+            String value = fields.get(name);
+            if (value == null || value.isBlank()) {
+                throw new IllegalArgumentException(name + " がありません");
+            }
+            return value.trim();
+        }
+
+        // 旧システムで BCrypt 済みのものはそのまま使い、平文なら現在のコストでハッシュ化する
+        private static String hash(String password, PasswordEncoder encoder) {
+            return BCRYPT.matcher(password).matches() ? password : encoder.encode(password);
+        }
+    }
+
+    /**
+     * ファイルを 1 行ずつ読み、列名 → 値の Map にする (再開時は処理済みの行を読み飛ばす)
+     */
+    private static final class RowReader {
+
+        private final BufferedReader reader;
+        private final boolean ndjson;
+        private final long skipUntil;
+        private List<String> header;
+        private long lineNo;
+
+        RowReader(BufferedReader reader, boolean ndjson, long skipUntil) {
+            this.reader = reader;
+            this.ndjson = ndjson;
+            this.skipUntil = skipUntil;
+        }
+
+        // 最大 size 行を読む。同じバッチ内でキーが重複する行は後の方を duplicates として数える
+        Chunk next(Kind kind, int size) throws IOException {
+            Map<String, Map<String, String>> rows = new LinkedHashMap<>();
+            int lines = 0;
+            int failed = 0;
+            int duplicates = 0;
+            String line;
+            while (rows.size() + failed + duplicates < size && (line = reader.readLine()) != null) {
+                lineNo++;
+                if (!ndjson && header == null) {
+                    header = parseCsv(line).stream().map(h -> h.trim().toLowerCase()).toList();
+                    continue;
+                }
+                if (lineNo <= skipUntil || line.isBlank()) {
+                    continue;
+                }
+                lines++;
+                Map<String, String> fields;
+                try {
+                    fields = ndjson ? parseJson(line) : zip(header, parseCsv(line));
+                } catch (IOException | IllegalArgumentException e) {
+                    log.warn("{} 行目を解析できません: {}", lineNo, e.getMessage());
+                    failed++;
+                    continue;
+                }
+                fields.put(LINE, Long.toString(lineNo));
+                String key = fields.get(kind.key);
+                if (rows.putIfAbsent(Objects.requireNonNullElse(key, LINE + lineNo), fields) != null) {
+                    duplicates++;
+                }
+            }
+            return new Chunk(new ArrayList<>(rows.values()), lines, lineNo, failed, duplicates);
+        }
+
+        private static Map<String, String> zip(List<String> header, List<String> values) {
+            if (values.size() != header.size()) {
+                throw new IllegalArgumentException("列数が " + values.size() + " です (ヘッダーは " + header.size() + " 列)");
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                fields.put(header.get(i), values.get(i));
+            }
+            return fields;
+        }
+
+        private static Map<String, String> parseJson(String line) throws IOException {
+            Map<String, String> fields = new HashMap<>();
+            JsonNode node = JSON.readTree(line);
+            if (node == null || !node.isObject()) {
+                throw new IllegalArgumentException("JSON オブジェクトではありません");
+            }
+            for (Map.Entry<String, JsonNode> e : node.properties()) {
+                JsonNode value = e.getValue();
+                if (value.isArray()) {
+                    List<String> items = new ArrayList<>();
+                    value.forEach(item -> items.add(item.asText()));
+                    fields.put(e.getKey().toLowerCase(), String.join(",", items));
+                } else if (!value.isNull()) {
+                    fields.put(e.getKey().toLowerCase(), value.asText());
+                }
+            }
+            return fields;
+        }
+
+        // 1 行の CSV (RFC 4180 のダブルクォート・"" エスケープに対応、フィールド内の改行は不可)
+        private static List<String> parseCsv(String line) {
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        value.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else {
+                    value.append(c);
+                }
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("ダブルクォートが閉じていません");
+            }
+            values.add(value.toString());
+            return values;
+        }
+    }
+
+    // 読み込んだ行 (lines: 消費した行数、lastLine: 最後に読んだ行番号)
+    private record Chunk(List<Map<String, String>> rows, int lines, long lastLine, int failed, int duplicates) {}
+
+    // 書き込み待ちの INSERT パラメータ
+    private record Batch(List<Object[]> params, long lastLine, int failed, int duplicates) {}
+
+    // チェックポイントの内容 (書き込みスレッドだけが更新する)
+    private static final class Progress {
+
+        long lineNo;
+        long imported;
+        long skipped;
+        long failed;
+        boolean completed;
+        final long importedAtStart;
+        long loggedAt = System.nanoTime();
+
+        Progress(long lineNo, long imported, long skipped, long failed, boolean completed) {
+            this.lineNo = lineNo;
+            this.imported = imported;
+            this.skipped = skipped;
+            this.failed = failed;
+            this.completed = completed;
+            this.importedAtStart = imported;
+        }
+
+        Result result(String source, long elapsedMillis) {
+            return new Result(source, imported, skipped, failed, elapsedMillis, imported - importedAtStart);
+        }
+    }
+
+    /**
+     * インポート結果 (件数は再開前の分も含む累計、rowsPerSecond は今回の実行分)
+     */
+    public record Result(String source, long imported, long skipped, long failed, long elapsedMillis, long importedThisRun) {
+
+        public double rowsPerSecond() {
+            return elapsedMillis == 0 ? 0 : importedThisRun * 1000.0 / elapsedMillis;
+        }
+    }
+}
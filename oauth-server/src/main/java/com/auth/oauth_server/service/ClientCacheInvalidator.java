@@ -0,0 +1,54 @@
+package com.auth.oauth_server.service;
+
+import com.auth.oauth_server.entity.Client;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Client エンティティの JPA リスナー
+ * 保存・削除のたびに ClientRegistry / ClientSecretCache / ClientCredentialsTokenCache の該当エントリを破棄する
+ *
+ * Hibernate が createBean で生成するインスタンスには、AOT 処理済み (spring.aot.enabled=true) で起動すると
+ * @Autowired のフィールド注入が行われないため、キャッシュは使うときに BeanFactory から取り出す
+ * (BeanFactoryAware はどちらの起動方法でも呼ばれる。循環参照を避ける意味もある)
+ */
+@Component
+public class ClientCacheInvalidator implements BeanFactoryAware {
+
+    private BeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Client client) {
+        String clientId = client.getClientId();
+        ClientRegistry clientRegistry = beanFactory.getBean(ClientRegistry.class);
+        ClientSecretCache clientSecretCache = beanFactory.getBean(ClientSecretCache.class);
+        ClientCredentialsTokenCache clientCredentialsTokenCache = beanFactory.getBean(ClientCredentialsTokenCache.class);
+        clientRegistry.invalidate(clientId);
+        clientSecretCache.invalidate(clientId);
+        clientCredentialsTokenCache.invalidate(clientId);
+        // コミット前に別スレッドが古い行を再読込する可能性があるため、コミット後にもう一度破棄する
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    clientRegistry.invalidate(clientId);
+                    clientSecretCache.invalidate(clientId);
+                    clientCredentialsTokenCache.invalidate(clientId);
+                }
+            });
+        }
+    }
+}
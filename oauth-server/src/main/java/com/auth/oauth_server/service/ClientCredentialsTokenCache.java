@@ -0,0 +1,163 @@
+package com.auth.oauth_server.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * client_credentials グラント用のトークン再利用キャッシュ
+ *
+ * 同じ (clientId, scope) の要求には、有効期限が近づくまで同じトークンを返す。
+ * 残り時間が refresh-ahead-seconds を切ったら、呼び出し元には現在のトークンを返しつつバックグラウンドで更新する。
+ * キャッシュにない (または期限間近の) 要求が同時に来た場合も、発行処理は 1 回だけ行い結果を共有する。
+ * 保持数が上限に達したら古い世代ごと捨てる (BoundedCache)。
+ */
+@Service
+public class ClientCredentialsTokenCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientCredentialsTokenCache.class);
+
+    // 返すトークンに最低限残っているべき有効時間 (これを切ったものは同期的に再発行する)
+    private static final long MIN_REMAINING_MILLIS = 30_000;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private TokenRevocationService revocationService;
+
+    @Autowired
+    private ReferenceTokenStore referenceTokenStore;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor executor;
+
+    // 残り時間がこれを切ったらバックグラウンドで更新する (秒)
+    @Value("${oauth.client-credentials.refresh-ahead-seconds:300}")
+    private long refreshAheadSeconds;
+
+    @Value("${oauth.client-credentials.cache-max-size:10000}")
+    private int maxSize;
+
+    private BoundedCache<Key, CachedToken> cache;
+    private final Map<Key, CompletableFuture<CachedToken>> inflight = new ConcurrentHashMap<>();
+    // クライアントごとの invalidate 回数。発行中に破棄があった場合、古い設定で発行したトークンを残さない
+    private final Map<String, Long> invalidations = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        cache = new BoundedCache<>(maxSize);
+    }
+
+    /**
+     * (clientId, scope) に対するアクセストークンを返す
+     */
+    public CachedToken getToken(String clientId, String scope) {
+        Key key = new Key(clientId, scope);
+        CachedToken cached = cache.get(key);
+        long now = System.currentTimeMillis();
+        if (cached != null && isUsable(cached, now)) {
+            if (now >= cached.expiresAt() - refreshAheadSeconds * 1000) {
+                mintShared(key, true); // 結果は待たずに現在のトークンを返す
+            }
+            return cached;
+        }
+        try {
+            return mintShared(key, false).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    /**
+     * クライアントの設定が変わったときに、そのクライアントのトークンを捨てる
+     */
+    public void invalidate(String clientId) {
+        invalidations.merge(clientId, 1L, Long::sum);
+        cache.removeKeys(key -> key.clientId().equals(clientId));
+    }
+
+    // 参照型 (jti なし) は表に残っているか、JWT は失効リストで確認する
+    private boolean isUsable(CachedToken cached, long now) {
+        if (now >= cached.expiresAt() - MIN_REMAINING_MILLIS) {
+            return false;
+        }
+        return cached.jti() == null
+                ? referenceTokenStore.resolve(cached.accessToken()) != null
+                : !revocationService.isRevoked(cached.jti(), cached.expiresAt());
+    }
+
+    // 同じキーの発行処理が進行中ならそれに相乗りする
+    // 自分が発行担当になった場合、background なら executor で、そうでなければ呼び出しスレッドで発行する
+    private CompletableFuture<CachedToken> mintShared(Key key, boolean background) {
+        CompletableFuture<CachedToken> created = new CompletableFuture<>();
+        CompletableFuture<CachedToken> existing = inflight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        Runnable task = () -> {
+            try {
+                long stamp = invalidations.getOrDefault(key.clientId(), 0L);
+                CachedToken minted = mint(key);
+                cache.put(key, minted);
+                // 発行から put までの間に破棄されていたら取り消す (put の後に破棄された場合は invalidate 側が消す)
+                if (invalidations.getOrDefault(key.clientId(), 0L) != stamp) {
+                    cache.remove(key, minted);
+                }
+                created.complete(minted);
+            } catch (RuntimeException e) {
+                log.warn("client_credentials トークンの発行に失敗しました: {}", key.clientId(), e);
+                created.completeExceptionally(e);
+            } finally {
+                inflight.remove(key, created);
+            }
+        };
+        if (background) {
+            try {
+                executor.execute(task);
+            } catch (TaskRejectedException e) {
+                // executor が満杯なら呼び出しスレッドで発行する (相乗りしている要求に例外を渡さない)
+                task.run();
+            }
+        } else {
+            task.run();
+        }
+        return created;
+    }
+
+    private CachedToken mint(Key key) {
+        String token = jwtService.issueAccessToken(key.clientId(), key.scope(), key.clientId());
+        JwtService.VerifiedToken verified = jwtService.verify(token); // jti と exp を取り出す (JWT は検証済みキャッシュにも載る)
+        return new CachedToken(token, verified.jti(), verified.expiresAt());
+    }
+
+    /**
+     * キャッシュ済みトークン
+     * @param expiresAt 有効期限 (エポックミリ秒)
+     */
+    public record CachedToken(String accessToken, String jti, long expiresAt) {
+
+        public long expiresInSeconds() {
+            return Math.max(0, (expiresAt - System.currentTimeMillis()) / 1000);
+        }
+    }
+
+    private record Key(String clientId, String scope) {
+        Key {
+            Objects.requireNonNull(clientId);
+        }
+    }
+}
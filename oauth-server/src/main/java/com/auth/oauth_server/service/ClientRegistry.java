@@ -0,0 +1,173 @@
+package com.auth.oauth_server.service;
+
+import com.auth.oauth_server.entity.Client;
+import com.auth.oauth_server.repository.ClientRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * ClientRepository の前段に置くリードスルー型のクライアントキャッシュ
+ * 1 回の認可フローで何度も呼ばれる findByClientId を、DB 往復からハッシュ参照に置き換える
+ */
+@Service
+public class ClientRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientRegistry.class);
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Autowired
+    private ScopeRegistry scopeRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // キャッシュに保持するクライアント数の上限
+    @Value("${oauth.client-cache.max-size:1000}")
+    private int maxSize;
+
+    private final Map<String, ClientSnapshot> cache = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // invalidate のたびに進める。読み込み中に破棄があった場合、読み込んだ (古いかもしれない) スナップショットを残さない
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("oauth.client_cache.size", cache, Map::size)
+                .description("キャッシュ中のクライアント数")
+                .register(meterRegistry);
+        FunctionCounter.builder("oauth.client_cache.hits", hits, LongAdder::sum)
+                .description("キャッシュから返したクライアント参照数")
+                .register(meterRegistry);
+        FunctionCounter.builder("oauth.client_cache.misses", misses, LongAdder::sum)
+                .description("DB から読み込んだクライアント参照数")
+                .register(meterRegistry);
+        FunctionCounter.builder("oauth.client_cache.evictions", evictions, LongAdder::sum)
+                .description("上限到達により追い出したクライアント数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * クライアントを取得する (キャッシュになければ DB から読み込んでスナップショット化)
+     */
+    public Optional<ClientSnapshot> find(String clientId) {
+        if (clientId == null) {
+            return Optional.empty();
+        }
+        ClientSnapshot snapshot = cache.get(clientId);
+        if (snapshot != null) {
+            hits.increment();
+            return Optional.of(snapshot);
+        }
+        misses.increment();
+        long stamp = invalidations.get();
+        Optional<ClientSnapshot> loaded = clientRepository.findByClientId(clientId).map(client -> ClientSnapshot.of(client, scopeRegistry));
+        loaded.ifPresent(s -> {
+            evictIfFull();
+            cache.put(clientId, s);
+            // DB 読み込みから put までの間に破棄されていたら取り消す (put の後に破棄された場合は invalidate 側が消す)
+            if (invalidations.get() != stamp) {
+                cache.remove(clientId, s);
+            }
+        });
+        return loaded;
+    }
+
+    /**
+     * 指定クライアントのキャッシュを破棄する (Client 保存・削除時に呼ばれる)
+     */
+    public void invalidate(String clientId) {
+        if (clientId == null) {
+            return;
+        }
+        invalidations.incrementAndGet();
+        if (cache.remove(clientId) != null) {
+            log.debug("クライアントキャッシュを破棄しました: {}", clientId);
+        }
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.clear();
+    }
+
+    // 上限に達した場合は任意のエントリを 1 件追い出す (クライアント数は少ないため厳密な LRU は不要)
+    private void evictIfFull() {
+        while (cache.size() >= maxSize) {
+            Iterator<String> it = cache.keySet().iterator();
+            if (!it.hasNext()) {
+                return;
+            }
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * クライアントの不変スナップショット
+     * スコープはロード時に一度だけ解析する (ScopeRegistry のマスクにもする)。リダイレクト URI は登録値との完全一致
+     * referenceTokens はアクセストークンを参照型ハンドルで発行するか (token_format = reference)
+     */
+    public record ClientSnapshot(String clientId, String clientSecret, String appName, String redirectUri, Set<String> scopes, long scopeMask,
+                                 boolean referenceTokens) {
+
+        static ClientSnapshot of(Client client, ScopeRegistry scopeRegistry) {
+            Set<String> scopes = split(client.getScopes());
+            return new ClientSnapshot(
+                    client.getClientId(),
+                    client.getClientSecret(),
+                    client.getAppName(),
+                    client.getRedirectUri(),
+                    scopes,
+                    scopeRegistry.register(scopes),
+                    "reference".equalsIgnoreCase(client.getTokenFormat()));
+        }
+
+        public boolean allowsRedirectUri(String redirectUri) {
+            return redirectUri != null && redirectUri.equals(this.redirectUri);
+        }
+
+        /**
+         * 要求マスク (ScopeRegistry.parse の結果) がすべて許可されているか
+         * 割り当てのない名前を含む場合は、名前ごとに許可スコープの集合と照合する
+         */
+        public boolean allowsScopes(long requested, String scope) {
+            if ((requested & ScopeRegistry.UNRESOLVED) == 0) {
+                return ScopeRegistry.contains(scopeMask, requested);
+            }
+            return scopes.containsAll(ScopeRegistry.split(scope));
+        }
+
+        // カンマ区切りの値を不変 Set に変換
+        private static Set<String> split(String value) {
+            if (value == null || value.isBlank()) {
+                return Set.of();
+            }
+            return Arrays.stream(value.split(","))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .collect(Collectors.toUnmodifiableSet());
+        }
+    }
+}
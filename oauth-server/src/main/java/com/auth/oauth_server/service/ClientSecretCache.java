@@ -0,0 +1,96 @@
+package com.auth.oauth_server.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 検証済みクライアントシークレットのキャッシュ
+ * BCrypt 照合に成功したシークレットを、プロセスごとの乱数鍵による HMAC として TTL 付きで保持する。
+ * 同じシークレットでの 2 回目以降の照合は BCrypt を使わず定数時間比較で済む
+ */
+@Service
+public class ClientSecretCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    // 検証結果の有効期間 (秒)。0 以下でキャッシュ無効
+    @Value("${oauth.client-secret-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    // プロセス起動ごとに生成する鍵 (ダイジェストが漏れてもシークレットを総当たりできないようにする)
+    private final SecretKeySpec hmacKey;
+    private final ThreadLocal<Mac> macs;
+    private final Map<String, Entry> verified = new ConcurrentHashMap<>();
+
+    public ClientSecretCache() {
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        this.hmacKey = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * キャッシュ済みの検証結果と一致するか確認する
+     * storedHash は現在 DB に保存されているハッシュで、これが変わっていればキャッシュは使わない
+     */
+    public boolean matches(String clientId, String rawSecret, String storedHash) {
+        if (ttlSeconds <= 0 || clientId == null || rawSecret == null) {
+            return false;
+        }
+        Entry entry = verified.get(clientId);
+        if (entry == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() > entry.expiresAt() || !entry.storedHash().equals(storedHash)) {
+            verified.remove(clientId, entry);
+            return false;
+        }
+        return MessageDigest.isEqual(entry.digest(), digest(clientId, rawSecret));
+    }
+
+    /**
+     * BCrypt 照合に成功したシークレットを記録する
+     */
+    public void remember(String clientId, String rawSecret, String storedHash) {
+        if (ttlSeconds <= 0 || clientId == null || rawSecret == null || storedHash == null) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + ttlSeconds * 1000;
+        verified.put(clientId, new Entry(digest(clientId, rawSecret), storedHash, expiresAt));
+    }
+
+    public void invalidate(String clientId) {
+        if (clientId != null) {
+            verified.remove(clientId);
+        }
+    }
+
+    // HMAC(key, clientId || 0x00 || secret)
+    private byte[] digest(String clientId, String rawSecret) {
+        Mac mac = macs.get();
+        mac.update(clientId.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(rawSecret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(hmacKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC の初期化に失敗しました", e);
+        }
+    }
+
+    private record Entry(byte[] digest, String storedHash, long expiresAt) {}
+}
@@ -0,0 +1,217 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 有効期限と上限件数を持つ認可コードストア (メモリ内, デフォルト)
+ * 単一ノード構成向け。複数ノードで共有する場合は JdbcAuthorizationCodeStore を使う
+ *
+ * 期限切れの掃除は時間バケット方式 (ハッシュドタイミングホイール) で行う。
+ * 各コードは有効期限が属するスロットに 1 度だけ登録され、スイーパーは経過したスロットだけを処理するため、
+ * 発行・消費・失効のいずれも O(1) で済む。
+ * 上限件数に達した場合は新しいコードの発行を拒否する (既存のコードは追い出さない)。
+ * 消費済みのコードもホイール上には有効期限のスロットまで残る (消費時にキューを探さないため)。
+ * capacity が抑えるのは有効なコード数で、ホイールのキューは「発行レート × 有効期間」件 (キューのノードと UUID で 1 件およそ 56 バイト) になる
+ * (例: 毎秒 1000 件・600 秒なら約 60 万件、約 34 MB)。
+ */
+public class InMemoryAuthorizationCodeStore implements AuthorizationCodeStore {
+
+    // ホイールのスロット数と 1 スロットの幅。スロット数 × 幅が有効期限より長ければ各コードは 1 周で失効する
+    private static final int WHEEL_SLOTS = 128;
+    private static final long TICK_MILLIS = 5_000;
+
+    // PKCE メソッドは 2 ビットに詰めて有効期限と同じ long に格納する
+    private static final int METHOD_NONE = 0;
+    private static final int METHOD_PLAIN = 1;
+    private static final int METHOD_S256 = 2;
+    private static final int METHOD_UNKNOWN = 3;
+
+    private final MeterRegistry meterRegistry;
+
+    // 同時に保持できる認可コードの上限 (oauth.code-store.capacity)
+    private final int capacity;
+
+    // 認可コードの有効期間 (秒, oauth.code-store.ttl-seconds)
+    private final long ttlSeconds;
+
+    // キーは UUID (2 つの long) として保持し、文字列より小さく抑える
+    private final Map<UUID, CodeEntry> codes = new ConcurrentHashMap<>();
+    private final List<Queue<UUID>> wheel = new ArrayList<>(WHEEL_SLOTS);
+    private final AtomicInteger live = new AtomicInteger();
+    private final LongAdder swept = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongSupplier clock;
+    private volatile long lastSweptTick;
+
+    // AuthorizationCodeStoreConfig が生成する (AOT 処理後も実行時のプロパティで実装を選べるよう、@Component にしない)
+    public InMemoryAuthorizationCodeStore(MeterRegistry meterRegistry, int capacity, long ttlSeconds) {
+        this(meterRegistry, capacity, ttlSeconds, System::currentTimeMillis);
+    }
+
+    // clock はエポックミリ秒 (テストでは手で進める)
+    InMemoryAuthorizationCodeStore(MeterRegistry meterRegistry, int capacity, long ttlSeconds, LongSupplier clock) {
+        this.clock = clock;
+        this.lastSweptTick = clock.getAsLong() / TICK_MILLIS;
+        this.meterRegistry = meterRegistry;
+        this.capacity = capacity;
+        this.ttlSeconds = ttlSeconds;
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    // 生成後に AuthorizationCodeStoreConfig から呼ぶ
+    public void registerMetrics() {
+        Gauge.builder("oauth.codes.live", live, AtomicInteger::get)
+                .description("保持中の認可コード数")
+                .register(meterRegistry);
+        FunctionCounter.builder("oauth.codes.swept", swept, LongAdder::sum)
+                .description("未使用のまま失効し掃除された認可コード数")
+                .register(meterRegistry);
+        FunctionCounter.builder("oauth.codes.rejected", rejected, LongAdder::sum)
+                .description("上限超過により発行を拒否した認可コード数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String create(String username, String clientId, String scope, String codeChallenge, String codeChallengeMethod, String redirectUri) {
+        if (live.incrementAndGet() > capacity) {
+            live.decrementAndGet();
+            rejected.increment();
+            return null;
+        }
+        UUID code = UUID.randomUUID();
+        long expiresAt = clock.getAsLong() + ttlSeconds * 1000;
+        codes.put(code, new CodeEntry(username, clientId, scope, codeChallenge, redirectUri, pack(expiresAt, codeChallengeMethod)));
+        wheel.get(slotOf(expiresAt)).add(code);
+        return code.toString();
+    }
+
+    @Override
+    public AuthService.AuthCodeData consume(String code) {
+        UUID key = parse(code);
+        if (key == null) {
+            return null;
+        }
+        CodeEntry entry = codes.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        live.decrementAndGet();
+        long expiresAt = entry.expiresAt();
+        if (clock.getAsLong() > expiresAt) {
+            return null;
+        }
+        return new AuthService.AuthCodeData(entry.username(), entry.clientId(), entry.scope(),
+                entry.codeChallenge(), entry.codeChallengeMethod(), entry.redirectUri(), expiresAt);
+    }
+
+    @Override
+    public int size() {
+        return live.get();
+    }
+
+    @Override
+    public int sizeHint() {
+        return live.get();
+    }
+
+    /**
+     * 経過したスロットを順に処理し、期限切れのコードを削除する
+     * 消費済みのコードはマップから既に消えているので読み飛ばすだけ
+     */
+    @Scheduled(fixedDelayString = "${oauth.code-store.sweep-interval-ms:5000}")
+    public void sweep() {
+        long now = clock.getAsLong();
+        long currentTick = now / TICK_MILLIS;
+        // 長時間停止していた場合でもホイール 1 周分だけ処理すれば全スロットを網羅できる
+        long fromTick = Math.max(lastSweptTick, currentTick - WHEEL_SLOTS);
+        for (long tick = fromTick; tick < currentTick; tick++) {
+            Queue<UUID> slot = wheel.get((int) (tick % WHEEL_SLOTS));
+            int pending = slot.size();
+            // 処理中に追加されたコードは次の周回で扱う
+            for (int i = 0; i < pending; i++) {
+                UUID key = slot.poll();
+                if (key == null) {
+                    break;
+                }
+                CodeEntry entry = codes.get(key);
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.expiresAt() <= now) {
+                    if (codes.remove(key, entry)) {
+                        live.decrementAndGet();
+                        swept.increment();
+                    }
+                } else {
+                    slot.add(key); // ホイール 1 周より後に失効するコードは次の周回で再確認する
+                }
+            }
+        }
+        lastSweptTick = currentTick;
+    }
+
+    private static int slotOf(long expiresAt) {
+        return (int) ((expiresAt / TICK_MILLIS) % WHEEL_SLOTS);
+    }
+
+    private static UUID parse(String code) {
+        if (code == null || code.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(code);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long pack(long expiresAt, String method) {
+        int bits;
+        if (method == null || method.isBlank()) {
+            bits = METHOD_NONE;
+        } else if ("plain".equalsIgnoreCase(method)) {
+            bits = METHOD_PLAIN;
+        } else if ("S256".equalsIgnoreCase(method)) {
+            bits = METHOD_S256;
+        } else {
+            bits = METHOD_UNKNOWN;
+        }
+        return (expiresAt << 2) | bits;
+    }
+
+    /**
+     * ストア内部のコンパクトなエントリ
+     * 有効期限と PKCE メソッドは 1 つの long にまとめる
+     */
+    private record CodeEntry(String username, String clientId, String scope, String codeChallenge, String redirectUri, long expiryAndMethod) {
+
+        long expiresAt() {
+            return expiryAndMethod >>> 2;
+        }
+
+        String codeChallengeMethod() {
+            return switch ((int) (expiryAndMethod & 3)) {
+                case METHOD_PLAIN -> "plain";
+                case METHOD_S256 -> "S256";
+                case METHOD_UNKNOWN -> "unknown";
+                default -> null;
+            };
+        }
+    }
+}
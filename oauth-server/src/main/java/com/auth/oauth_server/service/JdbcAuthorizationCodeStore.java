@@ -0,0 +1,144 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 既存のデータソース (H2/JPA と同じ DB) を共有する認可コードストア
+ * 複数ノードをロードバランサ配下に置いても、どのノードでもコードを交換できる
+ *
+ * コードそのものは保存せず SHA-256 のみを主キーとして保存する。
+ * 消費は「SELECT → 主キー指定の DELETE」で行い、DELETE の更新件数が 1 だったノードだけが勝つため、
+ * ノードをまたいだ二重交換は起こらない。
+ */
+public class JdbcAuthorizationCodeStore implements AuthorizationCodeStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    // 認可コードの有効期間 (秒, oauth.code-store.ttl-seconds)
+    private final long ttlSeconds;
+
+    // 期限切れ行を 1 回の DELETE で削除する最大件数 (ロック時間を短く保つ, oauth.code-store.purge-batch-size)
+    private final int purgeBatchSize;
+
+    private final LongAdder purged = new LongAdder();
+
+    // AuthorizationCodeStoreConfig が生成する (AOT 処理後も実行時のプロパティで実装を選べるよう、@Component にしない)
+    public JdbcAuthorizationCodeStore(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry, long ttlSeconds, int purgeBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.ttlSeconds = ttlSeconds;
+        this.purgeBatchSize = purgeBatchSize;
+    }
+
+    // 表を作り、メトリクスを登録する (生成後に AuthorizationCodeStoreConfig から呼ぶ)
+    public void init() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS oauth_authorization_codes (
+                    code_hash VARCHAR(43) PRIMARY KEY,
+                    username VARCHAR(255) NOT NULL,
+                    client_id VARCHAR(255) NOT NULL,
+                    scope VARCHAR(1024),
+                    code_challenge VARCHAR(255),
+                    code_challenge_method VARCHAR(16),
+                    redirect_uri VARCHAR(2048),
+                    expires_at BIGINT NOT NULL
+                )""");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_oauth_codes_expires_at ON oauth_authorization_codes (expires_at)");
+
+        Gauge.builder("oauth.codes.live", this, AuthorizationCodeStore::size)
+                .description("保持中の認可コード数")
+                .register(meterRegistry);
+        FunctionCounter.builder("oauth.codes.swept", purged, LongAdder::sum)
+                .description("未使用のまま失効し削除された認可コード数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String create(String username, String clientId, String scope, String codeChallenge, String codeChallengeMethod, String redirectUri) {
+        String code = UUID.randomUUID().toString();
+        long expiresAt = System.currentTimeMillis() + ttlSeconds * 1000;
+        jdbcTemplate.update("""
+                INSERT INTO oauth_authorization_codes
+                    (code_hash, username, client_id, scope, code_challenge, code_challenge_method, redirect_uri, expires_at)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?)""",
+                hash(code), username, clientId, scope, codeChallenge, codeChallengeMethod, redirectUri, expiresAt);
+        return code;
+    }
+
+    @Override
+    public AuthService.AuthCodeData consume(String code) {
+        if (code == null || code.isBlank()) {
+            return null;
+        }
+        String codeHash = hash(code);
+        List<AuthService.AuthCodeData> rows = jdbcTemplate.query("""
+                SELECT username, client_id, scope, code_challenge, code_challenge_method, redirect_uri, expires_at
+                FROM oauth_authorization_codes WHERE code_hash = ?""",
+                (rs, i) -> new AuthService.AuthCodeData(
+                        rs.getString("username"),
+                        rs.getString("client_id"),
+                        rs.getString("scope"),
+                        rs.getString("code_challenge"),
+                        rs.getString("code_challenge_method"),
+                        rs.getString("redirect_uri"),
+                        rs.getLong("expires_at")),
+                codeHash);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        // 削除できたノードだけがコードを使える (同時に読んだ他ノードの DELETE は 0 件になる)
+        if (jdbcTemplate.update("DELETE FROM oauth_authorization_codes WHERE code_hash = ?", codeHash) != 1) {
+            return null;
+        }
+        AuthService.AuthCodeData data = rows.get(0);
+        if (System.currentTimeMillis() > data.expiresAt()) {
+            return null;
+        }
+        return data;
+    }
+
+    @Override
+    public int size() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM oauth_authorization_codes", Integer.class);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 期限切れの行をバッチ単位で削除する
+     */
+    @Scheduled(fixedDelayString = "${oauth.code-store.sweep-interval-ms:5000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(
+                    "DELETE FROM oauth_authorization_codes WHERE expires_at < ? FETCH FIRST ? ROWS ONLY",
+                    now, purgeBatchSize);
+            purged.add(deleted);
+        } while (deleted == purgeBatchSize);
+    }
+
+    // 保存用のコードハッシュ (Base64URL, 43 文字)
+    private static String hash(String code) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(code.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,75 +1,255 @@
 package com.auth.oauth_server.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.UUID;
 
 @Service
 public class JwtService {
 
-    // 1. プロパティから秘密鍵を読み込む
-    @Value("${jwt.secret}")
-    private String secretKeyString;
+    // 1. 署名鍵は SigningKeyManager が管理する (RS256/ES256 は kid 付きでローテーション, HS256 は jwt.secret)
+    @Autowired
+    private SigningKeyManager signingKeyManager;
 
-    // 秘密鍵オブジェクトを生成
-    private Key getSigningKey() {
-        byte[] keyBytes = secretKeyString.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    @Autowired
+    private TokenRevocationService revocationService;
+
+    @Autowired
+    private StageMetrics stageMetrics;
+
+    @Autowired
+    private ReferenceTokenStore referenceTokenStore;
+
+    @Autowired
+    private ClientRegistry clientRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 検証済みトークンキャッシュの最大件数 (0 で無効)
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private int verifiedCacheMaxSize;
+
+    // 署名検証済みトークン (キーはトークンの SHA-256)。上限に達したら古い世代ごと捨てる
+    private BoundedCache<ByteBuffer, VerifiedToken> verifiedCache;
+
+    @PostConstruct
+    void init() {
+        if (verifiedCacheMaxSize > 0) {
+            verifiedCache = new BoundedCache<>(verifiedCacheMaxSize);
+        }
     }
 
-    // 2. トークン有効期限：1時間
-    private static final long EXPIRATION_TIME = 1000 * 60 * 60; 
+    // 2. トークン有効期限：1時間 (旧署名鍵の保持期間にも使う)
+    static final long EXPIRATION_TIME = 1000 * 60 * 60;
 
     // JWT トークンを生成 (標準クレームを含む)
     public String generateToken(String username, String scope) {
-        return Jwts.builder()
+        long start = stageMetrics.start();
+        StageEvents.TokenSign event = new StageEvents.TokenSign();
+        event.begin();
+        SigningKeyManager.SigningKey key = signingKeyManager.current();
+        String token = Jwts.builder()
+                .setHeaderParam("kid", key.kid()) // どの鍵で署名したか
+                .setId(UUID.randomUUID().toString()) // 失効 (revoke) 用の一意な ID
                 .setSubject(username) // 誰のためのトークンか？
                 .setIssuer("oauth-server")
                 .setIssuedAt(new Date()) // いつ発行されたか？
                 .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME)) // いつ期限切れになるか？
                 .claim("scope", scope)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256) // 偽造防止印を押す
+                .signWith(key.signingKey(), key.algorithm()) // 偽造防止印を押す
                 .compact();
+        stageMetrics.record(StageMetrics.Stage.TOKEN_SIGN, StageMetrics.NO_CLIENT, true, start);
+        event.finish(null, key.algorithm().getValue(), key.kid());
+        return token;
     }
     // JWT トークンを生成 (オーディエンスを含む)
     public String generateToken(String username, String scope, String audience) {
-        return Jwts.builder()
+        long start = stageMetrics.start();
+        StageEvents.TokenSign event = new StageEvents.TokenSign();
+        event.begin();
+        SigningKeyManager.SigningKey key = signingKeyManager.current();
+        String token = Jwts.builder()
+                .setHeaderParam("kid", key.kid())
+                .setId(UUID.randomUUID().toString())
                 .setSubject(username)
                 .setIssuer("oauth-server")
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
                 .claim("scope", scope)
                 .claim("aud", audience)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(key.signingKey(), key.algorithm())
                 .compact();
+        stageMetrics.record(StageMetrics.Stage.TOKEN_SIGN, audience, true, start);
+        event.finish(audience, key.algorithm().getValue(), key.kid());
+        return token;
     }
+
+    /**
+     * クライアントの token_format に従ってアクセストークンを発行する
+     * reference なら参照型ハンドル (クレームはサーバー側の表に持つ)、それ以外は JWT。
+     * 参照型の表が上限に達している場合は JWT で発行する (どちらも verify で検証できる)
+     */
+    public String issueAccessToken(String username, String scope, String clientId) {
+        if (clientRegistry.find(clientId).map(ClientRegistry.ClientSnapshot::referenceTokens).orElse(false)) {
+            String handle = referenceTokenStore.issue(username, scope, clientId, System.currentTimeMillis() + EXPIRATION_TIME);
+            if (handle != null) {
+                return handle;
+            }
+        }
+        return generateToken(username, scope, clientId);
+    }
+
+    /**
+     * トークンを一度だけ解析・検証し、必要なクレームをまとめて返す
+     * トークンが改ざんされていたり期限切れの場合は JwtException が発生します
+     * 直近に検証済みのトークンは、期限内であれば署名検証を省略してキャッシュから返す
+     * 失効済み (revoke) のトークンはキャッシュの有無に関わらず TokenRevokedException になる
+     * 参照型ハンドルは表の参照だけで検証する (署名検証もキャッシュもなし。失効は表からの削除なので jti は null)
+     */
+    public VerifiedToken verify(String token) {
+        StageEvents.TokenParse event = new StageEvents.TokenParse();
+        event.begin();
+        if (ReferenceTokenStore.isHandle(token)) {
+            VerifiedToken resolved = referenceTokenStore.resolve(token);
+            if (resolved == null) {
+                event.finish(null, "invalid");
+                throw new UnknownReferenceTokenException();
+            }
+            event.finish(resolved.audience(), "reference");
+            return resolved;
+        }
+        ByteBuffer key = verifiedCacheMaxSize > 0 ? ByteBuffer.wrap(sha256(token)) : null;
+        VerifiedToken verified = key == null ? null : cachedVerification(key);
+        String outcome = "cached";
+        if (verified == null) {
+            try {
+                verified = parse(token); // 期限切れならここで例外
+            } catch (JwtException | IllegalArgumentException e) {
+                event.finish(null, "invalid");
+                throw e;
+            }
+            outcome = StageEvents.OK;
+            if (key != null) {
+                verifiedCache.put(key, verified);
+            }
+        }
+        if (revocationService.isRevoked(verified.jti(), verified.expiresAt())) {
+            event.finish(verified.audience(), "revoked");
+            throw new TokenRevokedException(verified.jti());
+        }
+        event.finish(verified.audience(), outcome);
+        return verified;
+    }
+
+    // 署名検証済みキャッシュから取り出す (期限切れなら捨てて null)
+    private VerifiedToken cachedVerification(ByteBuffer key) {
+        VerifiedToken cached = verifiedCache.get(key);
+        if (cached != null) {
+            if (cached.expiresAt() > System.currentTimeMillis()) {
+                return cached;
+            }
+            verifiedCache.remove(key, cached);
+        }
+        return null;
+    }
+
     /**
      * トークンを解析し、中のユーザー名を取り出す
-     * トークンが改ざんされていたり期限切れの場合は、ここで直接エラーになります
      */
     public String extractUsername(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token) // 署名を解析して検証
-                .getBody()
-                .getSubject(); // ユーザー名 (sub) を取得
+        return verify(token).subject();
     }
 
     // scope を抽出
     public String extractScope(String token) {
-        return (String) Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .get("scope");
+        return verify(token).scope();
+    }
+
+    private VerifiedToken parse(String token) {
+        // 検証鍵はヘッダーの kid で選ぶ (パーサーは SigningKeyManager が鍵ごとに用意している)
+        String kid = keyIdOf(token);
+        JwtParser parser = signingKeyManager.parser(kid);
+        if (parser == null) {
+            throw new UnsupportedJwtException("不明な署名鍵です: kid=" + kid);
+        }
+        Claims claims = parser.parseClaimsJws(token) // 署名を解析して検証
+                .getBody();
+        Date expiration = claims.getExpiration();
+        return new VerifiedToken(
+                claims.getSubject(),
+                claims.get("scope", String.class),
+                claims.getAudience(),
+                expiration == null ? Long.MAX_VALUE : expiration.getTime(),
+                claims.getId());
+    }
+
+    // ヘッダー (1 つ目のセグメント) の kid。署名の検証はこの後のパーサーで行う
+    private String keyIdOf(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            throw new MalformedJwtException("JWT の形式が不正です");
+        }
+        try {
+            JsonNode kid = objectMapper.readTree(Base64.getUrlDecoder().decode(token.substring(0, dot))).get("kid");
+            return kid != null && kid.isTextual() ? kid.asText() : null;
+        } catch (IOException e) {
+            throw new MalformedJwtException("JWT ヘッダーを解析できません", e);
+        }
+    }
+
+    private static byte[] sha256(String token) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 検証済みトークンのクレーム
+     * @param expiresAt 有効期限 (エポックミリ秒)
+     * @param jti トークン ID (失効に使う)
+     */
+    public record VerifiedToken(String subject, String scope, String audience, long expiresAt, String jti) {}
+
+    /**
+     * 参照型ハンドルが表にない (未発行・期限切れ・失効済み)
+     */
+    public static class UnknownReferenceTokenException extends JwtException {
+        private static final long serialVersionUID = 1L;
+
+        public UnknownReferenceTokenException() {
+            super("参照型トークンが無効または期限切れです");
+        }
+    }
+
+    /**
+     * 失効済みトークンを検証しようとした
+     */
+    public static class TokenRevokedException extends JwtException {
+        private static final long serialVersionUID = 1L;
+
+        public TokenRevokedException(String jti) {
+            super("トークンは失効しています: jti=" + jti);
+        }
     }
 }
@@ -0,0 +1,223 @@
+package com.auth.oauth_server.service;
+
+import com.auth.oauth_server.entity.User;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * ログイン失敗回数とアカウントロックのメモリ内管理 (DB へは遅延書き込み)
+ *
+ * ユーザーごとの状態は 1 個の long (上位 8 ビット: 連続失敗回数, 下位 56 ビット: ロック解除時刻のエポックミリ秒) に詰め、
+ * CAS で更新する。状態が変わったユーザー名は dirty 集合に入れ、定期的に users テーブルへまとめて UPDATE する。
+ * ロックがかかったときだけは即座に書き出す。
+ *
+ * 失敗履歴のないユーザーのログイン成功では、エントリも作らず DB にも書き込まない。
+ */
+@Component
+public class LoginAttemptTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(LoginAttemptTracker.class);
+
+    // 5 回連続で失敗したら 15 分ロック
+    static final int MAX_FAILED_ATTEMPTS = 5;
+    static final long LOCK_MILLIS = 15 * 60 * 1000;
+
+    private static final int FAILURE_SHIFT = 56;
+    private static final long LOCK_MASK = (1L << FAILURE_SHIFT) - 1;
+    // 書き出し後に破棄したエントリの印 (これを見た更新は新しいエントリを作り直す)
+    private static final long EVICTED = -1L;
+
+    private static final String UPDATE_SQL = "UPDATE users SET failed_attempts = ?, lock_time = ? WHERE username = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, AtomicLong> states = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("oauth.login_attempts.pending", dirty, Set::size)
+                .description("DB への書き出し待ちのログイン状態数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * ロック中か確認する。ロック期限を過ぎていれば失敗回数ごとリセットする
+     */
+    public boolean isLocked(User user) {
+        long now = System.currentTimeMillis();
+        long lockUntil = lockUntil(current(user));
+        if (lockUntil == 0) {
+            return false;
+        }
+        if (lockUntil > now) {
+            return true;
+        }
+        update(user, state -> lockUntil(state) != 0 && lockUntil(state) <= now ? 0 : state);
+        return false;
+    }
+
+    /**
+     * メモリ上の状態だけでロック中か確認する (DB は読まない)
+     * ロックはかかった時点でメモリに載り、解除されるまで追い出されないため、この判定で足りる
+     */
+    public boolean isLockedInMemory(String username) {
+        AtomicLong state = states.get(username);
+        long value = state == null ? EVICTED : state.get();
+        return value != EVICTED && lockUntil(value) > System.currentTimeMillis();
+    }
+
+    /**
+     * ログイン成功: 失敗回数をリセットする (もともと 0 なら何もしない)
+     */
+    public void recordSuccess(User user) {
+        if (current(user) == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        update(user, state -> lockUntil(state) > now ? state : 0);
+    }
+
+    /**
+     * ログイン失敗: 失敗回数を増やし、上限に達したらロックする
+     * @return この呼び出しでロックがかかった場合 true
+     */
+    public boolean recordFailure(User user) {
+        long now = System.currentTimeMillis();
+        LongUnaryOperator fail = state -> {
+            if (lockUntil(state) > now) {
+                return state; // 並行してロック済み
+            }
+            int failures = lockUntil(state) == 0 ? failures(state) + 1 : 1; // 期限切れのロックはリセット扱い
+            return pack(failures, failures >= MAX_FAILED_ATTEMPTS ? now + LOCK_MILLIS : 0);
+        };
+        long previous = update(user, fail);
+        boolean locked = lockUntil(previous) <= now && lockUntil(fail.applyAsLong(previous)) > now;
+        if (locked) {
+            flush();
+        }
+        return locked;
+    }
+
+    /**
+     * 変更のあった状態を users テーブルへまとめて書き出す
+     */
+    @Scheduled(fixedDelayString = "${oauth.login-attempts.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            List<String> usernames = new ArrayList<>();
+            List<Object[]> rows = new ArrayList<>();
+            for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+                String username = it.next();
+                // 先に dirty から外してから状態を読む (読んだ後の更新は dirty に入り直すので取りこぼさない)
+                it.remove();
+                AtomicLong state = states.get(username);
+                long value = state == null ? EVICTED : state.get();
+                if (value == EVICTED) {
+                    continue;
+                }
+                long lockUntil = lockUntil(value);
+                usernames.add(username);
+                rows.add(new Object[]{failures(value), lockUntil == 0 ? null : new Timestamp(lockUntil), username});
+            }
+            try {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, rows);
+            } catch (DataAccessException e) {
+                log.warn("ログイン状態の書き出しに失敗しました ({} 件)。次回再試行します", rows.size(), e);
+                dirty.addAll(usernames);
+                return;
+            }
+            // 失敗回数 0・ロックなしに戻ったエントリは DB と一致しているので捨てる
+            for (String username : usernames) {
+                AtomicLong state = states.get(username);
+                if (state != null && state.compareAndSet(0, EVICTED)) {
+                    states.remove(username, state);
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    // メモリ上の状態 (エントリがなければ DB から読んだエンティティの値)
+    private long current(User user) {
+        AtomicLong state = states.get(user.getUsername());
+        long value = state == null ? EVICTED : state.get();
+        return value == EVICTED ? initial(user) : value;
+    }
+
+    // CAS で状態を更新し、更新前の値を返す
+    private long update(User user, LongUnaryOperator operator) {
+        String username = user.getUsername();
+        while (true) {
+            AtomicLong state = states.computeIfAbsent(username, key -> new AtomicLong(initial(user)));
+            long previous = state.get();
+            if (previous == EVICTED) {
+                states.remove(username, state);
+                continue;
+            }
+            long next = operator.applyAsLong(previous);
+            if (next == previous) {
+                return previous;
+            }
+            if (state.compareAndSet(previous, next)) {
+                dirty.add(username);
+                return previous;
+            }
+        }
+    }
+
+    private static long initial(User user) {
+        LocalDateTime lockTime = user.getLockTime();
+        long lockUntil = lockTime == null ? 0 : lockTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return pack(user.getFailedAttempts(), lockUntil);
+    }
+
+    private static long pack(int failures, long lockUntil) {
+        return ((long) Math.min(failures, MAX_FAILED_ATTEMPTS) << FAILURE_SHIFT) | (lockUntil & LOCK_MASK);
+    }
+
+    private static int failures(long state) {
+        return (int) (state >>> FAILURE_SHIFT);
+    }
+
+    private static long lockUntil(long state) {
+        return state & LOCK_MASK;
+    }
+}
@@ -0,0 +1,176 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * パスワード (ユーザーパスワード・クライアントシークレット) の BCrypt 処理専用の実行器
+ *
+ * BCrypt は 1 回数十ミリ秒 CPU を占有するため、リクエストスレッドでは実行せず CPU 数に合わせた専用スレッドで処理する。
+ * 待ち行列は上限付きで、満杯のときは待たせずに BusyException で即座に断る (呼び出し元で 503 にする)。
+ * これによりクレデンシャルスタッフィングのような大量ログインでも、他の API のリクエストスレッドは枯渇しない。
+ */
+@Service
+public class PasswordHasher {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHasher.class);
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // ハッシュ処理スレッド数 (0 なら CPU 数)
+    @Value("${oauth.password-hashing.threads:0}")
+    private int threads;
+
+    // 待ち行列の上限 (超えた分は即座に拒否)
+    @Value("${oauth.password-hashing.queue-capacity:100}")
+    private int queueCapacity;
+
+    // 目標の BCrypt コスト。保存済みハッシュのコストが異なれば、次回ログイン成功時に作り直す
+    @Value("${oauth.password.bcrypt-strength:10}")
+    private int strength;
+
+    private ThreadPoolExecutor executor;
+    private Timer hashTimer;
+    private Counter rejected;
+
+    @PostConstruct
+    void init() {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger sequence = new AtomicInteger();
+        executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("oauth.password.hash.queue", executor, e -> e.getQueue().size())
+                .description("ハッシュ処理の待ち行列の長さ")
+                .register(meterRegistry);
+        hashTimer = Timer.builder("oauth.password.hash.duration")
+                .description("BCrypt 処理 1 回あたりの所要時間 (待ち時間を除く)")
+                .register(meterRegistry);
+        rejected = Counter.builder("oauth.password.hash.rejected")
+                .description("待ち行列が満杯で拒否したハッシュ処理の数")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 平文とハッシュを照合する (専用スレッドで実行し、結果を待つ)
+     * @throws BusyException 待ち行列が満杯の場合
+     */
+    public boolean matches(String raw, String encoded) {
+        if (raw == null || encoded == null) {
+            return false;
+        }
+        return await(() -> passwordEncoder.matches(raw, encoded));
+    }
+
+    /**
+     * 保存済みハッシュのコストが目標値と異なるか (上げる場合も下げる場合も作り直す)
+     */
+    public boolean needsRehash(String encoded) {
+        int cost = costOf(encoded);
+        return cost > 0 && cost != strength;
+    }
+
+    /**
+     * 目標コストで作り直したハッシュを、結果を待たずに callback へ渡す
+     * 待ち行列が満杯なら何もしない (次回のログインで再試行される)
+     */
+    public void rehashInBackground(String raw, Consumer<String> callback) {
+        try {
+            executor.execute(() -> {
+                try {
+                    callback.accept(timed(() -> passwordEncoder.encode(raw)));
+                } catch (Exception e) {
+                    log.warn("パスワードハッシュの更新に失敗しました", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("混雑のためパスワードハッシュの更新を見送りました");
+        }
+    }
+
+    private <T> T await(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> timed(task));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new BusyException();
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BusyException();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        }
+    }
+
+    private <T> T timed(Callable<T> task) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return task.call();
+        } finally {
+            hashTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // "$2a$10$..." 形式からコストを取り出す (BCrypt 以外は 0)
+    private static int costOf(String encoded) {
+        if (encoded == null || encoded.length() < 7 || encoded.charAt(0) != '$' || encoded.charAt(3) != '$' || encoded.charAt(6) != '$') {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(encoded, 4, 6, 10);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * ハッシュ処理の待ち行列が満杯 (HTTP 503 temporarily_unavailable に対応)
+     */
+    public static class BusyException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public BusyException() {
+            super("パスワード検証が混雑しています");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * BCrypt や DB アクセスを伴うエンドポイントの前段で行うレート制限
+ * 送信元 IP・client_id・ユーザー名のそれぞれにトークンバケットを持ち、どれか 1 つでも尽きていれば拒否する
+ * (アカウントロックは既知のユーザー名しか守れないため、IP とクライアント単位でも制限する)
+ * client_id は誰でも任意の値を送れるので、バケットを作るのは登録済みのクライアントだけ。
+ * 未登録の client_id は IP 単位の制限だけを受ける (表を埋めて正規のクライアントを共有バケットに追い出させない)
+ */
+@Service
+public class RateLimitService {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ClientRegistry clientRegistry;
+
+    @Value("${oauth.rate-limit.ip.per-second:20}")
+    private double ipPerSecond;
+    @Value("${oauth.rate-limit.ip.burst:40}")
+    private int ipBurst;
+
+    @Value("${oauth.rate-limit.client.per-second:200}")
+    private double clientPerSecond;
+    @Value("${oauth.rate-limit.client.burst:400}")
+    private int clientBurst;
+
+    @Value("${oauth.rate-limit.username.per-second:0.2}")
+    private double usernamePerSecond;
+    @Value("${oauth.rate-limit.username.burst:10}")
+    private int usernameBurst;
+
+    // 1 種類あたりに保持するバケット数の上限 (IP・登録済みクライアントは超えた分を共有バケットにまとめ、ユーザー名は制限しない)
+    @Value("${oauth.rate-limit.max-buckets:100000}")
+    private int maxBuckets;
+
+    private TokenBucketTable byIp;
+    private TokenBucketTable byClient;
+    private TokenBucketTable byUsername;
+    private Counter rejectedByIp;
+    private Counter rejectedByClient;
+    private Counter rejectedByUsername;
+
+    @PostConstruct
+    void init() {
+        byIp = new TokenBucketTable(ipPerSecond, ipBurst, maxBuckets, false);
+        byClient = new TokenBucketTable(clientPerSecond, clientBurst, maxBuckets, false);
+        // ユーザー名は誰でも任意の値を送れるので、表を埋められても他のユーザーを巻き込まない
+        // (その間も IP・クライアント単位の制限とアカウントロックは効く)
+        byUsername = new TokenBucketTable(usernamePerSecond, usernameBurst, maxBuckets, true);
+
+        rejectedByIp = rejectedCounter("ip");
+        rejectedByClient = rejectedCounter("client");
+        rejectedByUsername = rejectedCounter("username");
+        Gauge.builder("oauth.rate_limit.buckets", this, RateLimitService::size)
+                .description("保持中のレート制限バケット数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 1 リクエスト分のトークンを取得する (null のキーは制限しない)
+     * @return 許可なら 0、拒否なら再試行までの待ち時間 (ミリ秒)
+     */
+    public long tryAcquire(String ip, String clientId, String username) {
+        long wait;
+        if (ip != null && (wait = byIp.tryAcquire(ip)) > 0) {
+            rejectedByIp.increment();
+            return wait;
+        }
+        // IP の判定を先に済ませてから引く (未登録の client_id で DB を引かせる回数も IP 単位で抑える)
+        if (clientId != null && clientRegistry.find(clientId).isPresent() && (wait = byClient.tryAcquire(clientId)) > 0) {
+            rejectedByClient.increment();
+            return wait;
+        }
+        if (username != null && (wait = byUsername.tryAcquire(username)) > 0) {
+            rejectedByUsername.increment();
+            return wait;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return byIp.size() + byClient.size() + byUsername.size();
+    }
+
+    /**
+     * しばらく使われていない (満杯まで補充された) バケットを捨てる
+     */
+    @Scheduled(fixedDelayString = "${oauth.rate-limit.evict-interval-ms:30000}")
+    public void evictIdle() {
+        byIp.evictIdle();
+        byClient.evictIdle();
+        byUsername.evictIdle();
+    }
+
+    private Counter rejectedCounter(String key) {
+        return Counter.builder("oauth.rate_limit.rejected")
+                .description("レート制限で拒否したリクエスト数")
+                .tag("key", key)
+                .register(meterRegistry);
+    }
+}
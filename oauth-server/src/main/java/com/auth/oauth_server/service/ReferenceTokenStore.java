@@ -0,0 +1,339 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 参照型 (opaque) アクセストークンのストア (メモリ内)
+ *
+ * トークンは 128 ビット乱数のハンドル (Base64URL 22 文字) で、クレームはサーバー側の表にだけ持つ。
+ * 表はハンドル上位ビットで 16 個のシャードに分け、各シャードはハンドルの 2 つの long をキーにした
+ * オープンアドレス法 (線形探索) のプリミティブ配列:
+ * <pre>
+ *   hi, lo   ハンドル (128 ビット)
+ *   expires  有効期限 (エポックミリ秒, 0 = 空き)
+ *   subject / scope / audience  SymbolTable の ID
+ * </pre>
+ * 1 件 36 バイトで、オブジェクトは作らない。検証はシャードの楽観的読み取り (ロックなし) + 探索 1 回で、署名検証もない。
+ * 期限切れのスロットは発行時に再利用し、定期的な掃除で詰め直す (後方シフト削除なので墓標は残らない)。
+ * 失効 (revoke) は表から消すだけで即時に効く。
+ */
+@Component
+public class ReferenceTokenStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ReferenceTokenStore.class);
+
+    public static final int HANDLE_LENGTH = 22;
+    private static final int SHARD_BITS = 4;
+    private static final int SHARDS = 1 << SHARD_BITS;
+    private static final int INITIAL_SLOTS = 1024;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 同時に保持できるトークン数の上限 (超えたら null を返し、呼び出し元は JWT で発行する)
+    @Value("${oauth.reference-token.capacity:1000000}")
+    private int capacity;
+
+    private final SecureRandom random = new SecureRandom();
+    private final SymbolTable symbols = new SymbolTable();
+    private final Shard[] shards = new Shard[SHARDS];
+    private final AtomicInteger live = new AtomicInteger();
+
+    public ReferenceTokenStore() {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("oauth.reference_tokens.live", live, AtomicInteger::get)
+                .description("保持中の参照型アクセストークン数 (掃除前の期限切れを含む)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * トークンを発行し、ハンドルを返す (上限に達している場合は null)
+     */
+    public String issue(String subject, String scope, String audience, long expiresAt) {
+        if (live.get() >= capacity) {
+            return null;
+        }
+        byte[] handle = new byte[16];
+        random.nextBytes(handle);
+        long hi = toLong(handle, 0);
+        long lo = toLong(handle, 8);
+        shard(hi).put(hi, lo, expiresAt, symbols.intern(subject), symbols.intern(scope), symbols.intern(audience), live);
+        return ENCODER.encodeToString(handle);
+    }
+
+    /**
+     * ハンドルのクレームを返す (存在しない・期限切れなら null)
+     */
+    public JwtService.VerifiedToken resolve(String token) {
+        byte[] handle = decode(token);
+        if (handle == null) {
+            return null;
+        }
+        long hi = toLong(handle, 0);
+        long lo = toLong(handle, 8);
+        long[] claims = new long[2];
+        long expiresAt = shard(hi).get(hi, lo, claims);
+        if (expiresAt <= System.currentTimeMillis()) {
+            return null;
+        }
+        return new JwtService.VerifiedToken(symbols.lookup((int) claims[0]), symbols.lookup((int) (claims[1] >>> 32)),
+                symbols.lookup((int) claims[1]), expiresAt, null);
+    }
+
+    /**
+     * ハンドルを失効させる (表から消す)
+     */
+    public boolean revoke(String token) {
+        byte[] handle = decode(token);
+        if (handle == null) {
+            return false;
+        }
+        long hi = toLong(handle, 0);
+        return shard(hi).remove(hi, toLong(handle, 8), live);
+    }
+
+    /**
+     * ハンドル形式か (JWT は必ず '.' を含むので区別できる)
+     */
+    public static boolean isHandle(String token) {
+        return token != null && token.length() == HANDLE_LENGTH && token.indexOf('.') < 0;
+    }
+
+    public int size() {
+        return live.get();
+    }
+
+    // 期限切れのトークンを表から消す (シャードごとに書き込みロックを取る)
+    @Scheduled(fixedDelayString = "${oauth.reference-token.sweep-interval-ms:30000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Shard shard : shards) {
+            removed += shard.sweep(now, live);
+        }
+        if (removed > 0) {
+            log.debug("期限切れの参照型トークンを {} 件削除しました", removed);
+        }
+    }
+
+    private Shard shard(long hi) {
+        return shards[(int) (hi >>> (64 - SHARD_BITS))];
+    }
+
+    private static byte[] decode(String token) {
+        if (!isHandle(token)) {
+            return null;
+        }
+        try {
+            return DECODER.decode(token);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * シャード 1 個分の表 (読み取りは楽観的、書き込みは排他)
+     */
+    private static final class Shard {
+
+        final StampedLock lock = new StampedLock();
+        Table table = new Table(INITIAL_SLOTS);
+        int size; // 使用中のスロット数 (期限切れを含む)
+
+        // 見つかれば有効期限を返し、claims に [subject, scope << 32 | audience] を入れる (なければ 0)
+        long get(long hi, long lo, long[] claims) {
+            long stamp = lock.tryOptimisticRead();
+            long expiresAt = table.get(hi, lo, claims);
+            if (lock.validate(stamp)) {
+                return expiresAt;
+            }
+            stamp = lock.readLock();
+            try {
+                return table.get(hi, lo, claims);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void put(long hi, long lo, long expiresAt, int subject, int scope, int audience, AtomicInteger live) {
+            long stamp = lock.writeLock();
+            try {
+                if ((size + 1) * 2 > table.hi.length) {
+                    table = table.resized(table.hi.length * 2);
+                }
+                if (table.put(hi, lo, expiresAt, subject, scope, audience, System.currentTimeMillis())) {
+                    size++;
+                    live.incrementAndGet();
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean remove(long hi, long lo, AtomicInteger live) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = table.find(hi, lo);
+                if (slot < 0) {
+                    return false;
+                }
+                table.delete(slot);
+                size--;
+                live.decrementAndGet();
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int sweep(long now, AtomicInteger live) {
+            long stamp = lock.writeLock();
+            try {
+                int removed = 0;
+                Table t = table;
+                for (int i = 0; i < t.hi.length; i++) {
+                    // 削除で後ろの要素が i に詰められるので、同じ位置をもう一度調べる
+                    while (t.expires[i] != 0 && t.expires[i] <= now) {
+                        t.delete(i);
+                        removed++;
+                    }
+                }
+                size -= removed;
+                live.addAndGet(-removed);
+                return removed;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    // オープンアドレス法の表本体 (排他はシャード側で行う)
+    static final class Table {
+
+        final long[] hi;
+        final long[] lo;
+        final long[] expires;
+        final int[] subject;
+        final long[] scopeAudience;
+        final int mask;
+
+        Table(int slots) {
+            hi = new long[slots];
+            lo = new long[slots];
+            expires = new long[slots];
+            subject = new int[slots];
+            scopeAudience = new long[slots];
+            mask = slots - 1;
+        }
+
+        // 楽観的読み取り中に書き換えられても無限ループしないよう、探索は表の長さで打ち切る
+        long get(long h, long l, long[] claims) {
+            int slot = (int) h & mask;
+            for (int probe = 0; probe <= mask; probe++) {
+                long expiresAt = expires[slot];
+                if (expiresAt == 0) {
+                    return 0;
+                }
+                if (hi[slot] == h && lo[slot] == l) {
+                    claims[0] = subject[slot];
+                    claims[1] = scopeAudience[slot];
+                    return expiresAt;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return 0;
+        }
+
+        int find(long h, long l) {
+            int slot = (int) h & mask;
+            for (int probe = 0; probe <= mask; probe++) {
+                if (expires[slot] == 0) {
+                    return -1;
+                }
+                if (hi[slot] == h && lo[slot] == l) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        // 空き、または期限切れのスロットに入れる (期限切れを上書きした場合は false: 使用数は変わらない)
+        boolean put(long h, long l, long expiresAt, int subjectId, int scopeId, int audienceId, long now) {
+            int slot = (int) h & mask;
+            while (expires[slot] != 0 && expires[slot] > now) {
+                slot = (slot + 1) & mask;
+            }
+            boolean fresh = expires[slot] == 0;
+            hi[slot] = h;
+            lo[slot] = l;
+            subject[slot] = subjectId;
+            scopeAudience[slot] = ((long) scopeId << 32) | (audienceId & 0xFFFFFFFFL);
+            expires[slot] = expiresAt;
+            return fresh;
+        }
+
+        // 後方シフト削除: 後ろに続く要素のうち、本来の位置より手前に空きができたものを詰める
+        void delete(int slot) {
+            int hole = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                if (expires[next] == 0) {
+                    break;
+                }
+                int home = (int) hi[next] & mask;
+                boolean between = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+                if (between) {
+                    continue;
+                }
+                hi[hole] = hi[next];
+                lo[hole] = lo[next];
+                subject[hole] = subject[next];
+                scopeAudience[hole] = scopeAudience[next];
+                expires[hole] = expires[next];
+                hole = next;
+            }
+            expires[hole] = 0;
+        }
+
+        Table resized(int slots) {
+            Table bigger = new Table(slots);
+            for (int i = 0; i < hi.length; i++) {
+                if (expires[i] != 0) {
+                    bigger.put(hi[i], lo[i], expires[i], subject[i], (int) (scopeAudience[i] >>> 32), (int) scopeAudience[i], Long.MIN_VALUE);
+                }
+            }
+            return bigger;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ローテーション式のリフレッシュトークンストア (メモリ内)
+ *
+ * トークン本体は保存せず SHA-256 のみを保持する。1 トークン = 8 個の long からなる固定長レコードで、
+ * JPA エンティティは作らない:
+ * <pre>
+ *   [0..3] トークンの SHA-256 (32 バイト)
+ *   [4]    ファミリー ID (同じ認可から続くローテーション系列)
+ *   [5]    有効期限 (エポックミリ秒)
+ *   [6]    ユーザー名 ID (上位 32 ビット) | クライアント ID (下位 32 ビット)
+ *   [7]    スコープ ID (上位 32 ビット) | 版数 (30 ビット) | 状態 (下位 2 ビット: 0=空き, 1=有効, 2=使用済み)
+ * </pre>
+ * 文字列は SymbolTable で int ID に変換して格納する。
+ * レコードは 4096 件単位のチャンクに確保し、索引はハッシュ先頭 16 バイトからスロット番号への表で引く。
+ * 版数はスロットを解放するたびに増やし、解放・再利用をまたいだ CAS (ABA) が成功しないようにする。
+ *
+ * 使用済みのトークンが再提示された場合 (漏えいの疑い) はファミリー全体を失効させる。
+ * 使用済みレコードは再利用検知のためだけに残すので、有効期限を短い検知期間に縮めて早めに解放する
+ * (ローテーションのたびにスロットを 1 つ使うため、14 日間残すとすぐに上限に達する)。
+ * 検知期間を過ぎてから再提示されたトークンは、単に無効なトークンとして扱う。
+ */
+@Component
+public class RefreshTokenStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenStore.class);
+
+    private static final int RECORD_LONGS = 8;
+    private static final int CHUNK_RECORDS = 4096;
+    private static final int F_FAMILY = 4;
+    private static final int F_EXPIRES = 5;
+    private static final int F_SUBJECT = 6;
+    private static final int F_STATE = 7;
+    private static final long STATE_FREE = 0;
+    private static final long STATE_ACTIVE = 1;
+    private static final long STATE_USED = 2;
+    private static final long STATE_MASK = 3;
+    private static final long VERSION_UNIT = 4;
+    private static final long VERSION_MASK = 0xFFFFFFFCL;
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 保持できるリフレッシュトークンの上限 (使用済みで再利用検知のために残しているものを含む)
+    @Value("${oauth.refresh-token.capacity:1000000}")
+    private int capacity;
+
+    // リフレッシュトークンの有効期間 (秒)
+    @Value("${oauth.refresh-token.ttl-seconds:1209600}")
+    private long ttlSeconds;
+
+    // 使用済みトークンを再利用検知のために残す期間 (秒)
+    @Value("${oauth.refresh-token.reuse-detection-seconds:3600}")
+    private long reuseDetectionSeconds;
+
+    private final SecureRandom random = new SecureRandom();
+    private final SymbolTable symbols = new SymbolTable();
+    private final Map<TokenId, Integer> index = new ConcurrentHashMap<>();
+    private final Map<Long, Long> revokedFamilies = new ConcurrentHashMap<>();
+    private final Queue<Integer> freeSlots = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextFresh = new AtomicInteger();
+    private AtomicReferenceArray<long[]> chunks;
+
+    @PostConstruct
+    void init() {
+        chunks = new AtomicReferenceArray<>((capacity + CHUNK_RECORDS - 1) / CHUNK_RECORDS);
+        Gauge.builder("oauth.refresh_tokens.live", index, Map::size)
+                .description("保持中のリフレッシュトークン数 (使用済みを含む)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 新しいファミリーのリフレッシュトークンを発行する (認可コード交換時)
+     * @return トークン。上限に達している場合は null
+     */
+    public String issue(String username, String clientId, String scope) {
+        Integer slot = allocate();
+        if (slot == null) {
+            log.warn("リフレッシュトークンの保持数が上限に達しました");
+            return null;
+        }
+        return write(slot, random.nextLong(), symbols.intern(username), symbols.intern(clientId), symbols.intern(scope));
+    }
+
+    /**
+     * リフレッシュトークンを使用済みにし、同じファミリーの新しいトークンを発行する
+     * 新しいトークンのスロットを先に確保するので、上限に達していても元のトークンは使用済みにならない
+     * @return 結果。トークンが無効・期限切れ・他クライアントのもの・再利用された場合は null
+     * @throws CapacityExceededException 保持数が上限に達していて新しいトークンを発行できない場合 (元のトークンは有効なまま)
+     */
+    public Rotation rotate(String refreshToken, String clientId) {
+        byte[] hash = hash(refreshToken);
+        if (hash == null) {
+            return null;
+        }
+        Integer slot = index.get(TokenId.of(hash));
+        if (slot == null) {
+            return null;
+        }
+        long[] chunk = chunks.get(slot / CHUNK_RECORDS);
+        int base = (slot % CHUNK_RECORDS) * RECORD_LONGS;
+        // 状態 → 各フィールド → ハッシュ → 状態の順に読み、途中で解放・再利用されていないことを確かめる
+        long stateWord = (long) LONGS.getVolatile(chunk, base + F_STATE);
+        if ((stateWord & STATE_MASK) == STATE_FREE) {
+            return null;
+        }
+        long family = chunk[base + F_FAMILY];
+        long expiresAt = chunk[base + F_EXPIRES];
+        long subject = chunk[base + F_SUBJECT];
+        if (!hashEquals(chunk, base, hash) || (long) LONGS.getVolatile(chunk, base + F_STATE) != stateWord) {
+            return null; // スロットが別のトークンに再利用された
+        }
+        int clientSym = (int) subject;
+        if (!clientId.equals(symbols.lookup(clientSym))) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if ((stateWord & STATE_MASK) == STATE_USED) {
+            // 使用済みトークンの再提示: 盗用の可能性があるため系列全体を失効させる
+            revokeFamily(family, now);
+            log.warn("使用済みのリフレッシュトークンが再提示されました。クライアント [{}] のトークン系列を失効させます", clientId);
+            return null;
+        }
+        if (now > expiresAt || revokedFamilies.containsKey(family)) {
+            return null;
+        }
+        Integer nextSlot = allocate();
+        if (nextSlot == null) {
+            log.warn("リフレッシュトークンの保持数が上限に達しました");
+            throw new CapacityExceededException();
+        }
+        // 有効 → 使用済みへの遷移に成功したリクエストだけが新しいトークンを受け取れる
+        long used = (stateWord & ~STATE_MASK) | STATE_USED;
+        if (!LONGS.compareAndSet(chunk, base + F_STATE, stateWord, used)) {
+            freeSlots.add(nextSlot);
+            long current = (long) LONGS.getVolatile(chunk, base + F_STATE);
+            if ((current & ~STATE_MASK) == (stateWord & ~STATE_MASK) && (current & STATE_MASK) == STATE_USED) {
+                revokeFamily(family, now);
+                log.warn("リフレッシュトークンが同時に使用されました。クライアント [{}] のトークン系列を失効させます", clientId);
+            }
+            return null; // それ以外は期限切れで解放された
+        }
+        // 使用済みレコードは再利用検知の期間だけ残す (解放・再利用されていれば有効期限が変わっているので CAS は失敗する)
+        LONGS.compareAndSet(chunk, base + F_EXPIRES, expiresAt, Math.min(expiresAt, now + reuseDetectionSeconds * 1000));
+        int userSym = (int) (subject >>> 32);
+        int scopeSym = (int) (stateWord >>> 32);
+        String next = write(nextSlot, family, userSym, clientSym, scopeSym);
+        return new Rotation(symbols.lookup(userSym), symbols.lookup(scopeSym), next);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 期限切れのレコードを解放し、期限を過ぎた失効ファミリーを忘れる
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        int used = Math.min(nextFresh.get(), capacity);
+        for (int slot = 0; slot < used; slot++) {
+            long[] chunk = chunks.get(slot / CHUNK_RECORDS);
+            if (chunk == null) {
+                continue;
+            }
+            int base = (slot % CHUNK_RECORDS) * RECORD_LONGS;
+            long stateWord = (long) LONGS.getVolatile(chunk, base + F_STATE);
+            if ((stateWord & STATE_MASK) == STATE_FREE || (long) LONGS.getVolatile(chunk, base + F_EXPIRES) > now) {
+                continue;
+            }
+            // 版数を進めて解放する (スコープ ID は消す)
+            long free = ((stateWord & VERSION_MASK) + VERSION_UNIT) & VERSION_MASK;
+            if (LONGS.compareAndSet(chunk, base + F_STATE, stateWord, free)) {
+                index.remove(TokenId.of(chunk, base), slot);
+                freeSlots.add(slot);
+            }
+        }
+        revokedFamilies.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+
+    // ファミリーのどのトークンも期限切れになるまで失効を覚えておく
+    private void revokeFamily(long family, long now) {
+        revokedFamilies.merge(family, now + ttlSeconds * 1000, Math::max);
+    }
+
+    // 確保済みのスロットに新しいトークンを書き込む (状態の書き込みで公開する)
+    private String write(int slot, long family, int userSym, int clientSym, int scopeSym) {
+        byte[] raw = new byte[32];
+        random.nextBytes(raw);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+        byte[] hash = hash(token);
+
+        long[] chunk = chunkFor(slot);
+        int base = (slot % CHUNK_RECORDS) * RECORD_LONGS;
+        ByteBuffer buffer = ByteBuffer.wrap(hash);
+        for (int i = 0; i < 4; i++) {
+            chunk[base + i] = buffer.getLong();
+        }
+        chunk[base + F_FAMILY] = family;
+        LONGS.setVolatile(chunk, base + F_EXPIRES, System.currentTimeMillis() + ttlSeconds * 1000);
+        chunk[base + F_SUBJECT] = ((long) userSym << 32) | (clientSym & 0xFFFFFFFFL);
+        long version = (long) LONGS.getVolatile(chunk, base + F_STATE) & VERSION_MASK;
+        LONGS.setVolatile(chunk, base + F_STATE, ((long) scopeSym << 32) | version | STATE_ACTIVE);
+        index.put(TokenId.of(hash), slot);
+        return token;
+    }
+
+    private Integer allocate() {
+        Integer slot = freeSlots.poll();
+        if (slot != null) {
+            return slot;
+        }
+        int fresh = nextFresh.getAndIncrement();
+        if (fresh >= capacity) {
+            nextFresh.decrementAndGet();
+            return null;
+        }
+        return fresh;
+    }
+
+    private long[] chunkFor(int slot) {
+        int i = slot / CHUNK_RECORDS;
+        long[] chunk = chunks.get(i);
+        if (chunk == null) {
+            chunks.compareAndSet(i, null, new long[CHUNK_RECORDS * RECORD_LONGS]);
+            chunk = chunks.get(i);
+        }
+        return chunk;
+    }
+
+    private static boolean hashEquals(long[] chunk, int base, byte[] hash) {
+        ByteBuffer buffer = ByteBuffer.wrap(hash);
+        long diff = 0;
+        for (int i = 0; i < 4; i++) {
+            diff |= chunk[base + i] ^ buffer.getLong();
+        }
+        return diff == 0;
+    }
+
+    private static byte[] hash(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * ローテーション結果
+     * @param refreshToken 新しいリフレッシュトークン
+     */
+    public record Rotation(String username, String scope, String refreshToken) {}
+
+    /**
+     * 保持数が上限に達していて新しいトークンを発行できない (HTTP 503 temporarily_unavailable に対応)
+     */
+    public static class CapacityExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CapacityExceededException() {
+            super("リフレッシュトークンの保持数が上限に達しています");
+        }
+    }
+
+    // 索引のキー (SHA-256 の先頭 16 バイト)
+    private record TokenId(long hi, long lo) {
+
+        static TokenId of(byte[] hash) {
+            ByteBuffer buffer = ByteBuffer.wrap(hash);
+            return new TokenId(buffer.getLong(), buffer.getLong());
+        }
+
+        static TokenId of(long[] chunk, int base) {
+            return new TokenId(chunk[base], chunk[base + 1]);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.auth.oauth_server.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * スコープ名をビット位置に割り当て、スコープの集合を long のビットマスクで扱う
+ *
+ * クライアントの許可スコープはロード時に一度だけマスクにし (register)、要求スコープ (スペース区切り) も
+ * parse でマスクにするので、検証は AND 1 回で済む。よく使われる要求文字列とマスクはそれぞれキャッシュする。
+ * ビットを割り当てるのはクライアントに登録されたスコープ名だけ (要求側の未知の名前でビットを消費させない)。
+ * 割り当てられるのは 63 個までで、それを超えた名前は UNRESOLVED として呼び出し元で文字列比較に切り替える。
+ */
+@Component
+public class ScopeRegistry {
+
+    // 割り当てのないスコープ名が含まれていることを示すビット
+    public static final long UNRESOLVED = Long.MIN_VALUE;
+    private static final int MAX_BITS = 63;
+    // 要求文字列・マスクのキャッシュの上限 (任意の文字列を送りつけられても増え続けないように)
+    private static final int MAX_CACHED = 1024;
+
+    private final Map<String, Integer> bits = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> names = new AtomicReferenceArray<>(MAX_BITS);
+    private final ReentrantLock registerLock = new ReentrantLock();
+    private int assigned; // registerLock で保護
+    private final Map<String, Long> parsed = new ConcurrentHashMap<>();
+    private final Map<Long, String> formatted = new ConcurrentHashMap<>();
+
+    /**
+     * スコープ名にビットを割り当て、その集合のマスクを返す (クライアントのロード時に呼ぶ)
+     * 割り当ての上限を超えた名前があれば UNRESOLVED が立つ
+     */
+    public long register(Collection<String> scopes) {
+        long mask = 0;
+        for (String scope : scopes) {
+            Integer bit = bits.get(scope);
+            if (bit == null) {
+                bit = assign(scope);
+            }
+            mask |= bit < 0 ? UNRESOLVED : 1L << bit;
+        }
+        return mask;
+    }
+
+    /**
+     * スペース区切りの要求スコープをマスクにする (空なら 0)
+     * 割り当てのない名前 (未登録・上限超過) が含まれていれば UNRESOLVED が立つ
+     */
+    public long parse(String scope) {
+        if (scope == null) {
+            return 0;
+        }
+        Long cached = parsed.get(scope);
+        if (cached != null) {
+            return cached;
+        }
+        long mask = 0;
+        for (String name : split(scope)) {
+            Integer bit = bits.get(name);
+            mask |= bit == null || bit < 0 ? UNRESOLVED : 1L << bit;
+        }
+        // 未解決の名前を含む結果は、後で登録される可能性があるのでキャッシュしない
+        if ((mask & UNRESOLVED) == 0 && parsed.size() < MAX_CACHED) {
+            parsed.put(scope, mask);
+        }
+        return mask;
+    }
+
+    /**
+     * requested のスコープがすべて allowed に含まれるか (どちらも UNRESOLVED を含まないこと)
+     */
+    public static boolean contains(long allowed, long requested) {
+        return (requested & ~allowed) == 0;
+    }
+
+    /**
+     * マスクを正規化したスコープ文字列 (ビット順・スペース区切り) にする (UNRESOLVED は含めないこと)
+     */
+    public String format(long mask) {
+        String cached = formatted.get(mask);
+        if (cached != null) {
+            return cached;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (long rest = mask; rest != 0; rest &= rest - 1) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(names.get(Long.numberOfTrailingZeros(rest)));
+        }
+        String scope = sb.toString();
+        if (formatted.size() < MAX_CACHED) {
+            formatted.put(mask, scope);
+        }
+        return scope;
+    }
+
+    /**
+     * スペース区切り (互換のためカンマも可) のスコープ文字列を、重複を除いた名前の集合にする
+     */
+    public static Set<String> split(String scope) {
+        Set<String> names = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= scope.length(); i++) {
+            boolean separator = i == scope.length() || scope.charAt(i) == ' ' || scope.charAt(i) == ',';
+            if (!separator && start < 0) {
+                start = i;
+            } else if (separator && start >= 0) {
+                names.add(scope.substring(start, i));
+                start = -1;
+            }
+        }
+        return names;
+    }
+
+    // 次のビットを割り当てる (上限を超えたら -1 を記録する)
+    private int assign(String scope) {
+        registerLock.lock();
+        try {
+            Integer bit = bits.get(scope);
+            if (bit != null) {
+                return bit;
+            }
+            bit = assigned < MAX_BITS ? assigned++ : -1;
+            if (bit >= 0) {
+                names.set(bit, scope);
+            }
+            bits.put(scope, bit);
+            return bit;
+        } finally {
+            registerLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.auth.oauth_server.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * JWT 署名鍵の管理 (鍵ローテーションと JWKS の生成)
+ *
+ * RS256 / ES256 では「署名中の鍵 (current)」と「次に使う鍵 (next)」を常に保持する。
+ * next はローテーションより前にバックグラウンドで生成して JWKS に公開しておくため、
+ * 下流のキャッシュは切り替え前に新しい公開鍵を取得でき、署名処理の中で鍵生成が走ることもない。
+ * 切り替え後の旧鍵は、その鍵で署名したトークンがすべて期限切れになるまで検証用に残す。
+ *
+ * HS256 (既定) では jwt.secret から作った鍵 1 本だけを使い、JWKS には何も公開しない。
+ *
+ * RS256 / ES256 の鍵はプロセス内で生成してメモリにだけ持つ (永続化しない)。
+ * 再起動すると発行済みトークンは検証できなくなり、複数ノードでは互いのトークンを検証できないため、単一ノード構成に限って使う。
+ */
+@Service
+public class SigningKeyManager {
+
+    private static final Logger log = LoggerFactory.getLogger(SigningKeyManager.class);
+
+    // 旧鍵を残す猶予 (時計のずれ分)
+    private static final long RETIRE_SKEW_MILLIS = 5 * 60 * 1000;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 署名アルゴリズム (RS256 / ES256 / HS256)
+    @Value("${jwt.signing-algorithm:HS256}")
+    private String algorithmName;
+
+    // 認可コードストアの種類 (jdbc は複数ノード構成の目印として使う)
+    @Value("${oauth.code-store.type:memory}")
+    private String codeStoreType;
+
+    // HS256 のときだけ使う共有鍵
+    @Value("${jwt.secret}")
+    private String secretKeyString;
+
+    // 鍵ローテーションの間隔 (秒)
+    @Value("${jwt.key-rotation.interval-seconds:86400}")
+    private long rotationIntervalSeconds;
+
+    private final SecureRandom random = new SecureRandom();
+    // 現在時刻 (エポックミリ秒, テストでは手で進める)
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private SignatureAlgorithm algorithm;
+    private volatile KeyRing ring;
+    // ローテーションの排他 (鍵生成は時間がかかるため、仮想スレッドを固定する synchronized は使わない)
+    private final ReentrantLock rotationLock = new ReentrantLock();
+
+    @PostConstruct
+    void init() {
+        algorithm = SignatureAlgorithm.forName(algorithmName);
+        if (algorithm.isHmac()) {
+            Key key = Keys.hmacShaKeyFor(secretKeyString.getBytes(StandardCharsets.UTF_8));
+            SigningKey hmac = new SigningKey("hs256", algorithm, key, key, clock.getAsLong());
+            ring = buildRing(hmac, null, List.of());
+            return;
+        }
+        if (!algorithm.isRsa() && !algorithm.isEllipticCurve()) {
+            throw new IllegalStateException("サポートされていない署名アルゴリズムです: " + algorithmName);
+        }
+        ring = buildRing(generate(), generate(), List.of());
+        log.info("署名鍵を初期化しました: alg={}, kid={}", algorithm.getValue(), ring.current().kid());
+        if ("jdbc".equalsIgnoreCase(codeStoreType)) {
+            log.warn("{} の署名鍵はこのプロセスのメモリにしかありません。複数ノード構成では他のノードが発行したトークンを検証できないため、"
+                    + "jwt.signing-algorithm=HS256 を使ってください", algorithm.getValue());
+        }
+    }
+
+    /**
+     * 現在の署名鍵
+     */
+    public SigningKey current() {
+        return ring.current();
+    }
+
+    /**
+     * kid に対応する検証鍵 (現在・次・旧鍵のいずれか) を設定済みのパーサー
+     * kid のないトークンは HS256 の場合に限り共有鍵で検証する。該当する鍵がなければ null
+     */
+    public JwtParser parser(String kid) {
+        KeyRing r = ring;
+        if (kid == null) {
+            return algorithm.isHmac() ? r.parsers().get(r.current().kid()) : null;
+        }
+        return r.parsers().get(kid);
+    }
+
+    /**
+     * 事前生成済みの JWKS (JSON のバイト列) と ETag
+     */
+    public JwksDocument jwks() {
+        KeyRing r = ring;
+        return new JwksDocument(r.jwks(), r.etag());
+    }
+
+    /**
+     * ローテーション時刻を過ぎていれば next を current に昇格し、新しい next を生成する
+     * 期限を過ぎた旧鍵もここで破棄する
+     */
+    @Scheduled(fixedDelayString = "${jwt.key-rotation.check-interval-ms:60000}")
+    public void rotateIfDue() {
+        rotationLock.lock();
+        try {
+            if (algorithm.isHmac()) {
+                return;
+            }
+            KeyRing r = ring;
+            long now = clock.getAsLong();
+            List<RetiredKey> previous = new ArrayList<>();
+            for (RetiredKey retired : r.previous()) {
+                if (retired.retireAt() > now) {
+                    previous.add(retired);
+                }
+            }
+            if (now - r.current().activatedAt() < rotationIntervalSeconds * 1000) {
+                if (previous.size() != r.previous().size()) {
+                    ring = buildRing(r.current(), r.next(), previous);
+                }
+                return;
+            }
+            rotate(r, previous, now);
+        } finally {
+            rotationLock.unlock();
+        }
+    }
+
+    private void rotate(KeyRing r, List<RetiredKey> previous, long now) {
+        // 旧鍵で署名されたトークンは最長で有効期限いっぱいまで使われる
+        List<RetiredKey> retained = new ArrayList<>(previous);
+        retained.add(new RetiredKey(r.current(), now + JwtService.EXPIRATION_TIME + RETIRE_SKEW_MILLIS));
+        SigningKey promoted = r.next().activatedAt(now);
+        SigningKey next = generate();
+        ring = buildRing(promoted, next, retained);
+        log.info("署名鍵をローテーションしました: current={}, next={}, retained={}", promoted.kid(), next.kid(), retained.size());
+    }
+
+    private SigningKey generate() {
+        KeyPair pair = Keys.keyPairFor(algorithm);
+        byte[] id = new byte[9];
+        random.nextBytes(id);
+        String kid = Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+        return new SigningKey(kid, algorithm, pair.getPrivate(), pair.getPublic(), clock.getAsLong());
+    }
+
+    private KeyRing buildRing(SigningKey current, SigningKey next, List<RetiredKey> previous) {
+        // パーサーは鍵ごとに一度だけ生成する (スレッドセーフ)。前の鍵束のものは使い回す
+        KeyRing old = ring;
+        Map<String, JwtParser> parsers = new HashMap<>();
+        List<Map<String, Object>> jwks = new ArrayList<>();
+        parsers.put(current.kid(), parserOf(current, old));
+        if (!algorithm.isHmac()) {
+            jwks.add(toJwk(current));
+            if (next != null) {
+                parsers.put(next.kid(), parserOf(next, old));
+                jwks.add(toJwk(next));
+            }
+            for (RetiredKey retired : previous) {
+                parsers.put(retired.key().kid(), parserOf(retired.key(), old));
+                jwks.add(toJwk(retired.key()));
+            }
+        }
+        try {
+            byte[] payload = objectMapper.writeValueAsBytes(Map.of("keys", jwks));
+            return new KeyRing(current, next, List.copyOf(previous), Map.copyOf(parsers), payload, etagOf(payload));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("JWKS の生成に失敗しました", e);
+        }
+    }
+
+    private static JwtParser parserOf(SigningKey key, KeyRing old) {
+        JwtParser existing = old == null ? null : old.parsers().get(key.kid());
+        return existing != null ? existing : Jwts.parserBuilder().setSigningKey(key.verificationKey()).build();
+    }
+
+    // 公開鍵を JWK (RFC 7517) 形式に変換
+    private static Map<String, Object> toJwk(SigningKey key) {
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        if (key.verificationKey() instanceof RSAPublicKey rsa) {
+            jwk.put("kty", "RSA");
+            jwk.put("kid", key.kid());
+            jwk.put("use", "sig");
+            jwk.put("alg", key.algorithm().getValue());
+            jwk.put("n", base64Url(unsigned(rsa.getModulus(), 0)));
+            jwk.put("e", base64Url(unsigned(rsa.getPublicExponent(), 0)));
+        } else if (key.verificationKey() instanceof ECPublicKey ec) {
+            int size = (ec.getParams().getCurve().getField().getFieldSize() + 7) / 8;
+            jwk.put("kty", "EC");
+            jwk.put("kid", key.kid());
+            jwk.put("use", "sig");
+            jwk.put("alg", key.algorithm().getValue());
+            jwk.put("crv", "P-" + ec.getParams().getCurve().getField().getFieldSize());
+            jwk.put("x", base64Url(unsigned(ec.getW().getAffineX(), size)));
+            jwk.put("y", base64Url(unsigned(ec.getW().getAffineY(), size)));
+        }
+        return jwk;
+    }
+
+    // 符号ビットを除いたビッグエンディアン表現 (length > 0 の場合は左側をゼロ埋め)
+    private static byte[] unsigned(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        int offset = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        int len = bytes.length - offset;
+        byte[] out = new byte[Math.max(len, length)];
+        System.arraycopy(bytes, offset, out, out.length - len, len);
+        return out;
+    }
+
+    private static String base64Url(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String etagOf(byte[] payload) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(payload);
+            return "\"" + base64Url(digest).substring(0, 22) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 署名鍵
+     * @param activatedAt 署名に使い始めた時刻 (next の場合は生成時刻)
+     */
+    public record SigningKey(String kid, SignatureAlgorithm algorithm, Key signingKey, Key verificationKey, long activatedAt) {
+
+        SigningKey activatedAt(long time) {
+            return new SigningKey(kid, algorithm, signingKey, verificationKey, time);
+        }
+    }
+
+    public record JwksDocument(byte[] payload, String etag) {}
+
+    private record RetiredKey(SigningKey key, long retireAt) {}
+
+    private record KeyRing(SigningKey current, SigningKey next, List<RetiredKey> previous,
+                           Map<String, JwtParser> parsers, byte[] jwks, String etag) {}
+}
@@ -0,0 +1,196 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSO セッション (ログイン済みのブラウザは、別のクライアントの /oauth/authorize でもパスワード入力を省略できる)
+ *
+ * Cookie の値は「セッション ID (128 ビット乱数) . HMAC(ID) の先頭 128 ビット」を Base64URL にしたもの。
+ * 検証は HMAC の定数時間比較とメモリ上のセッション表の参照だけで、DB にも BCrypt にも触れない。
+ * 改ざん・偽造された Cookie は表を引く前に HMAC で弾く。
+ * セッションは使われるたびに無操作期限を延ばし (スライディング)、ログインからの最長期限を過ぎたら無効にする。
+ * HMAC 鍵とセッション表はプロセスごとなので、再起動するとすべてのセッションが無効になる (再ログインで作り直される)。
+ */
+@Service
+public class SsoSessionService {
+
+    private static final Logger log = LoggerFactory.getLogger(SsoSessionService.class);
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int ID_BYTES = 16;
+    private static final int MAC_BYTES = 16;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final int ID_LENGTH = 22; // Base64URL (パディングなし) の 16 バイト
+    private static final int COOKIE_LENGTH = ID_LENGTH + 1 + 22;
+
+    public static final String COOKIE_NAME = "OAUTH_SSO";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 無操作でセッションが切れるまでの時間 (秒)。使われるたびに延長される
+    @Value("${oauth.sso.idle-timeout-seconds:1800}")
+    private long idleTimeoutSeconds;
+
+    // ログインからの最長有効期間 (秒)。延長してもこれを超えない
+    @Value("${oauth.sso.max-age-seconds:28800}")
+    private long maxAgeSeconds;
+
+    // 同時に保持するセッション数の上限 (超えたら新しいセッションは作らず、毎回ログインしてもらう)
+    @Value("${oauth.sso.max-sessions:100000}")
+    private int maxSessions;
+
+    private final SecretKeySpec hmacKey;
+    private final ThreadLocal<Mac> macs;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    public SsoSessionService() {
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        this.hmacKey = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("oauth.sso.sessions", sessions, Map::size)
+                .description("保持中の SSO セッション数")
+                .register(meterRegistry);
+        FunctionCounter.builder("oauth.sso.rejected", rejected, LongAdder::sum)
+                .description("上限超過により作成しなかった SSO セッション数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * ログイン成功時にセッションを作り、Cookie の値を返す (上限に達している場合は null)
+     */
+    public String create(String username) {
+        if (sessions.size() >= maxSessions) {
+            rejected.increment();
+            return null;
+        }
+        byte[] idBytes = new byte[ID_BYTES];
+        random.nextBytes(idBytes);
+        String id = ENCODER.encodeToString(idBytes);
+        long now = System.currentTimeMillis();
+        sessions.put(id, new Session(username, now + maxAgeSeconds * 1000, now + idleTimeoutSeconds * 1000));
+        return id + "." + ENCODER.encodeToString(sign(id));
+    }
+
+    /**
+     * Cookie の値からログイン中のユーザー名を返す (無効・期限切れなら null)
+     * 有効な場合は無操作期限を延長する
+     */
+    public String resolve(String cookie) {
+        if (cookie == null || cookie.length() != COOKIE_LENGTH || cookie.charAt(ID_LENGTH) != '.') {
+            return null;
+        }
+        String id = cookie.substring(0, ID_LENGTH);
+        byte[] mac;
+        try {
+            mac = DECODER.decode(cookie.substring(ID_LENGTH + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(mac, sign(id))) {
+            return null;
+        }
+        Session session = sessions.get(id);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (session.expired(now)) {
+            sessions.remove(id, session);
+            return null;
+        }
+        session.idleExpiresAt = Math.min(now + idleTimeoutSeconds * 1000, session.expiresAt);
+        return session.username;
+    }
+
+    /**
+     * セッションを破棄する (ログアウト)
+     * @return 破棄したセッションのユーザー名 (セッションがなければ null)
+     */
+    public String invalidate(String cookie) {
+        if (cookie != null && cookie.length() == COOKIE_LENGTH) {
+            Session removed = sessions.remove(cookie.substring(0, ID_LENGTH));
+            return removed == null ? null : removed.username;
+        }
+        return null;
+    }
+
+    /**
+     * Cookie の Max-Age (秒)
+     */
+    public long maxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    // 期限切れのセッションを捨てる
+    @Scheduled(fixedDelayString = "${oauth.sso.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        int before = sessions.size();
+        sessions.values().removeIf(session -> session.expired(now));
+        int removed = before - sessions.size();
+        if (removed > 0) {
+            log.debug("期限切れの SSO セッションを {} 件削除しました", removed);
+        }
+    }
+
+    // HMAC(key, id) の先頭 MAC_BYTES バイト
+    private byte[] sign(String id) {
+        return Arrays.copyOf(macs.get().doFinal(id.getBytes(StandardCharsets.US_ASCII)), MAC_BYTES);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(hmacKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC の初期化に失敗しました", e);
+        }
+    }
+
+    private static final class Session {
+
+        final String username;
+        final long expiresAt;
+        volatile long idleExpiresAt;
+
+        Session(String username, long expiresAt, long idleExpiresAt) {
+            this.username = username;
+            this.expiresAt = expiresAt;
+            this.idleExpiresAt = idleExpiresAt;
+        }
+
+        boolean expired(long now) {
+            return now >= idleExpiresAt || now >= expiresAt;
+        }
+    }
+}
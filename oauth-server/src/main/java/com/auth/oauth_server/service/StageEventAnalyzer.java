@@ -0,0 +1,136 @@
+package com.auth.oauth_server.service;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JFR の記録 (.jfr) から StageEvents を読み、段階ごとの所要時間の内訳を表にする
+ *
+ * 段階 (と outcome / client_id) ごとに件数・平均・p50 / p90 / p99・最大と、全段階の合計時間に占める割合を出す。
+ * 使い方: java -cp oauth-server.jar -Dloader.main=com.auth.oauth_server.service.StageEventAnalyzer
+ *         org.springframework.boot.loader.launch.PropertiesLauncher oauth.jfr [--by=outcome|client|stage]
+ */
+public final class StageEventAnalyzer {
+
+    private static final String PREFIX = "oauth.";
+
+    private StageEventAnalyzer() {}
+
+    public enum GroupBy { STAGE, OUTCOME, CLIENT }
+
+    /**
+     * 1 グループ分の集計 (時間はナノ秒)
+     */
+    public record Row(String stage, String group, int count, long totalNanos, long p50, long p90, long p99, long max) {
+
+        public double meanMicros() {
+            return count == 0 ? 0 : totalNanos / 1000.0 / count;
+        }
+    }
+
+    /**
+     * 記録を読み、段階名 → グループ の順に並べた集計を返す
+     */
+    public static List<Row> analyze(Path recording, GroupBy groupBy) throws IOException {
+        Map<String, Map<String, LongList>> durations = new TreeMap<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                String name = event.getEventType().getName();
+                if (!name.startsWith(PREFIX)) {
+                    continue;
+                }
+                String group = switch (groupBy) {
+                    case STAGE -> "";
+                    case OUTCOME -> field(event, "outcome");
+                    case CLIENT -> field(event, "clientId");
+                };
+                durations.computeIfAbsent(name.substring(PREFIX.length()), k -> new TreeMap<>())
+                        .computeIfAbsent(group, k -> new LongList())
+                        .add(event.getDuration().toNanos());
+            }
+        }
+        List<Row> rows = new ArrayList<>();
+        durations.forEach((stage, groups) -> groups.forEach((group, values) -> rows.add(values.summarize(stage, group))));
+        return rows;
+    }
+
+    public static void print(List<Row> rows, PrintStream out) {
+        long total = rows.stream().mapToLong(Row::totalNanos).sum();
+        out.printf("%-22s %-18s %9s %10s %10s %10s %10s %10s %7s%n",
+                "stage", "group", "count", "mean(us)", "p50(us)", "p90(us)", "p99(us)", "max(us)", "time%");
+        for (Row row : rows) {
+            out.printf("%-22s %-18s %9d %10.1f %10.1f %10.1f %10.1f %10.1f %6.1f%%%n",
+                    row.stage(), row.group(), row.count(), row.meanMicros(),
+                    row.p50() / 1000.0, row.p90() / 1000.0, row.p99() / 1000.0, row.max() / 1000.0,
+                    total == 0 ? 0 : row.totalNanos() * 100.0 / total);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: StageEventAnalyzer <recording.jfr> [--by=outcome|client|stage]");
+            System.exit(2);
+        }
+        GroupBy groupBy = GroupBy.OUTCOME;
+        if (args.length == 2) {
+            if (!args[1].startsWith("--by=")) {
+                System.err.println("不明なオプションです: " + args[1]);
+                System.exit(2);
+            }
+            groupBy = GroupBy.valueOf(args[1].substring("--by=".length()).toUpperCase());
+        }
+        List<Row> rows = analyze(Path.of(args[0]), groupBy);
+        if (rows.isEmpty()) {
+            System.err.println("oauth.* のイベントがありません (settings に jfr/oauth.jfc を指定して記録してください)");
+            System.exit(1);
+        }
+        print(rows, System.out);
+    }
+
+    private static String field(RecordedEvent event, String name) {
+        if (!event.hasField(name)) {
+            return "-";
+        }
+        String value = event.getString(name);
+        return value == null ? "-" : value;
+    }
+
+    // プリミティブの伸長配列 (イベント数が多くてもボクシングしない)
+    private static final class LongList {
+
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        Row summarize(String stage, String group) {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long value : sorted) {
+                total += value;
+            }
+            return new Row(stage, group, size, total,
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), sorted[size - 1]);
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+        }
+    }
+}
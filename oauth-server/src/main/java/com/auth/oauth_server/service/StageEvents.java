@@ -0,0 +1,205 @@
+package com.auth.oauth_server.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 認可・トークン発行の各段階の JFR イベント (Java Flight Recorder で常時記録する前提)
+ *
+ * StageMetrics が集計値を出すのに対し、こちらは 1 リクエスト単位で記録され、
+ * 遅いリクエストがどの段階で時間を使ったかを JFR の他のイベント (GC, ロック待ち, I/O) と並べて見られる。
+ * 使い方: new → begin() → 処理 → finish(...)。フィールドは記録する場合 (shouldCommit) だけ設定するので、
+ * JFR が止まっている・イベントが無効なときは JIT によりほぼ何も残らない。
+ * 設定は resources/jfr/oauth.jfc、集計は StageEventAnalyzer を参照。
+ * 名前 (oauth.*) と出力値は StageEventAnalyzer が参照する (ずれは StageEventAnalyzerTests で検出される)。
+ */
+public final class StageEvents {
+
+    public static final String OK = "ok";
+
+    private StageEvents() {}
+
+    @Name("oauth.ClientValidation")
+    @Label("Client Validation")
+    @Description("client_id と redirect_uri の検証 (/oauth/authorize, /login-action)")
+    @Category({"OAuth", "Stages"})
+    @StackTrace(false)
+    public static class ClientValidation extends Event {
+        @Label("Client ID")
+        String clientId;
+        @Label("Outcome")
+        String outcome;
+
+        public void finish(String clientId, String outcome) {
+            end();
+            if (shouldCommit()) {
+                this.clientId = clientId;
+                this.outcome = outcome;
+                commit();
+            }
+        }
+    }
+
+    @Name("oauth.ClientAuthentication")
+    @Label("Client Authentication")
+    @Description("client_secret の照合 (cached = BCrypt を省略できた)")
+    @Category({"OAuth", "Stages"})
+    @StackTrace(false)
+    public static class ClientAuthentication extends Event {
+        @Label("Client ID")
+        String clientId;
+        @Label("Outcome")
+        String outcome;
+        @Label("Cached")
+        boolean cached;
+
+        public void finish(String clientId, String outcome, boolean cached) {
+            end();
+            if (shouldCommit()) {
+                this.clientId = clientId;
+                this.outcome = outcome;
+                this.cached = cached;
+                commit();
+            }
+        }
+    }
+
+    @Name("oauth.UserAuthentication")
+    @Label("User Authentication")
+    @Description("ユーザーのパスワード検証 (ロック判定を含む。ユーザー名は記録しない)")
+    @Category({"OAuth", "Stages"})
+    @StackTrace(false)
+    public static class UserAuthentication extends Event {
+        @Label("Outcome")
+        String outcome;
+        @Label("Lock Triggered")
+        @Description("この失敗でアカウントがロックされた")
+        boolean lockTriggered;
+
+        public void finish(String outcome, boolean lockTriggered) {
+            end();
+            if (shouldCommit()) {
+                this.outcome = outcome;
+                this.lockTriggered = lockTriggered;
+                commit();
+            }
+        }
+    }
+
+    @Name("oauth.CodeCreate")
+    @Label("Authorization Code Create")
+    @Category({"OAuth", "Stages"})
+    @StackTrace(false)
+    public static class CodeCreate extends Event {
+        @Label("Client ID")
+        String clientId;
+        @Label("Outcome")
+        String outcome;
+        @Label("Code Store Size")
+        @Description("保持中の認可コード数 (数えるのにクエリが必要なストアでは -1)")
+        int codeStoreSize;
+
+        public void finish(String clientId, String outcome, AuthorizationCodeStore store) {
+            end();
+            if (shouldCommit()) {
+                this.clientId = clientId;
+                this.outcome = outcome;
+                this.codeStoreSize = store.sizeHint();
+                commit();
+            }
+        }
+    }
+
+    @Name("oauth.CodeConsume")
+    @Label("Authorization Code Consume")
+    @Category({"OAuth", "Stages"})
+    @StackTrace(false)
+    public static class CodeConsume extends Event {
+        @Label("Client ID")
+        String clientId;
+        @Label("Outcome")
+        String outcome;
+        @Label("Code Store Size")
+        @Description("保持中の認可コード数 (数えるのにクエリが必要なストアでは -1)")
+        int codeStoreSize;
+
+        public void finish(String clientId, String outcome, AuthorizationCodeStore store) {
+            end();
+            if (shouldCommit()) {
+                this.clientId = clientId;
+                this.outcome = outcome;
+                this.codeStoreSize = store.sizeHint();
+                commit();
+            }
+        }
+    }
+
+    @Name("oauth.PkceVerification")
+    @Label("PKCE Verification")
+    @Category({"OAuth", "Stages"})
+    @StackTrace(false)
+    public static class PkceVerification extends Event {
+        @Label("Method")
+        String method;
+        @Label("Outcome")
+        String outcome;
+
+        public void finish(String method, String outcome) {
+            end();
+            if (shouldCommit()) {
+                this.method = method;
+                this.outcome = outcome;
+                commit();
+            }
+        }
+    }
+
+    @Name("oauth.TokenSign")
+    @Label("Token Sign")
+    @Description("アクセストークン (JWT) の生成と署名")
+    @Category({"OAuth", "Stages"})
+    @StackTrace(false)
+    public static class TokenSign extends Event {
+        @Label("Client ID")
+        String clientId;
+        @Label("Algorithm")
+        String algorithm;
+        @Label("Key ID")
+        String kid;
+
+        public void finish(String clientId, String algorithm, String kid) {
+            end();
+            if (shouldCommit()) {
+                this.clientId = clientId;
+                this.algorithm = algorithm;
+                this.kid = kid;
+                commit();
+            }
+        }
+    }
+
+    @Name("oauth.TokenParse")
+    @Label("Token Parse")
+    @Description("アクセストークンの検証 (outcome: ok = 署名検証, cached = 検証済みキャッシュ, reference = 参照型の表)")
+    @Category({"OAuth", "Stages"})
+    @StackTrace(false)
+    public static class TokenParse extends Event {
+        @Label("Client ID")
+        String clientId;
+        @Label("Outcome")
+        String outcome;
+
+        public void finish(String clientId, String outcome) {
+            end();
+            if (shouldCommit()) {
+                this.clientId = clientId;
+                this.outcome = outcome;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 認可・トークン発行の各段階の所要時間 (タイマー oauth.stage, タグ: stage / outcome / client)
+ *
+ * タイマーはクライアントごとに「段階 × 結果」の配列に保持し、記録時はクライアント ID で配列を引いて
+ * 添字でタイマーを選ぶだけにする (タグ配列やメーター ID を毎回生成しない)。
+ * 各タイマーは初めて使われたときに登録するので、発生しない組み合わせの時系列は出力されない。
+ * 未登録のクライアント ID は "unknown"、上限を超えた分は "other" にまとめ、タグの種類が際限なく増えないようにする。
+ */
+@Component
+public class StageMetrics {
+
+    public enum Stage {
+        CLIENT_LOOKUP("client_lookup"),
+        CLIENT_SECRET("client_secret"),
+        USER_AUTH("user_auth"),
+        CODE_CREATE("code_create"),
+        CODE_CONSUME("code_consume"),
+        PKCE("pkce"),
+        TOKEN_SIGN("token_sign");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    // クライアントに紐づかない段階 (ユーザー認証など) のタグ値
+    public static final String NO_CLIENT = "none";
+    public static final String UNKNOWN_CLIENT = "unknown";
+    private static final String OTHER_CLIENT = "other";
+    private static final Stage[] STAGES = Stage.values();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // client タグに使うクライアント ID の種類の上限
+    @Value("${oauth.metrics.max-client-tags:200}")
+    private int maxClientTags;
+
+    private final Map<String, ClientTimers> timersByClient = new ConcurrentHashMap<>();
+
+    /**
+     * 計測開始時刻 (record に渡す)
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * start() からの経過時間を記録する
+     * @param clientId タグにするクライアント ID (null なら "none")
+     */
+    public void record(Stage stage, String clientId, boolean success, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        ClientTimers client = timers(clientId == null ? NO_CLIENT : clientId);
+        int index = stage.ordinal() * 2 + (success ? 0 : 1);
+        Timer timer = client.timers.get(index);
+        if (timer == null) {
+            timer = timer(stage, success ? "success" : "failure", client.tag);
+            client.timers.compareAndSet(index, null, timer); // 同じ ID で登録されるので競合しても同じメーターになる
+        }
+        timer.record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    private ClientTimers timers(String client) {
+        ClientTimers timers = timersByClient.get(client);
+        if (timers != null) {
+            return timers;
+        }
+        String tag = timersByClient.size() >= maxClientTags ? OTHER_CLIENT : client;
+        return timersByClient.computeIfAbsent(tag, ClientTimers::new);
+    }
+
+    private Timer timer(Stage stage, String outcome, String client) {
+        return Timer.builder("oauth.stage")
+                .description("認可・トークン発行の各段階の所要時間")
+                .tag("stage", stage.tag)
+                .tag("outcome", outcome)
+                .tag("client", client)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(50_000))
+                .maximumExpectedValue(Duration.ofSeconds(5))
+                .register(meterRegistry);
+    }
+
+    // client タグの値と、その「段階 × 結果」ごとのタイマー (未使用の組み合わせは null)
+    private static final class ClientTimers {
+
+        final String tag;
+        final AtomicReferenceArray<Timer> timers = new AtomicReferenceArray<>(STAGES.length * 2);
+
+        ClientTimers(String tag) {
+            this.tag = tag;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.auth.oauth_server.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文字列と int ID の相互変換表 (ユーザー名・クライアント ID・スコープなどの繰り返し出現する値用)
+ * 固定長レコードに文字列を直接持たせず、4 バイトの ID だけを格納するために使う。
+ * ID 0 は null を表す。登録した値は削除しない (値の種類はユーザー数・クライアント数で頭打ちになる)
+ */
+public class SymbolTable {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[64];
+    private int next = 1;
+
+    public int intern(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer id = ids.get(value);
+        return id != null ? id : register(value);
+    }
+
+    /**
+     * 登録済みの値の ID を返す (未登録なら -1。登録はしない)
+     */
+    public int find(String value) {
+        Integer id = value == null ? Integer.valueOf(0) : ids.get(value);
+        return id != null ? id : -1;
+    }
+
+    public String lookup(int id) {
+        String[] snapshot = values;
+        return id > 0 && id < snapshot.length ? snapshot[id] : null;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    private synchronized int register(String value) {
+        Integer existing = ids.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int id = next++;
+        String[] current = values;
+        if (id >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = value;
+        values = current; // 逆引き配列を公開してから ID を公開する
+        ids.put(value, id);
+        return id;
+    }
+}
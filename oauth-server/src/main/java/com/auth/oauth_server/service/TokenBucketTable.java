@@ -0,0 +1,137 @@
+package com.auth.oauth_server.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * キーごとのトークンバケット (レート制限用)
+ *
+ * バケットの状態は 1 個の long (上位 44 ビット: 最終補充時刻 (ミリ秒), 下位 20 ビット: 残りトークン × 1000) に詰め、
+ * CAS だけで更新する (ロックなし)。トークンは取得時に経過時間分だけ補充する。
+ * バケット数が上限に達したら、新しいキーは failOpenWhenFull に応じて制限なしで通すか、共有の overflow バケットを使う
+ * (どちらでもメモリは上限を超えない)。キーを攻撃側が自由に作れる場合 (ユーザー名など) は、共有バケットにすると
+ * 表を埋められただけで全員が制限されるため、制限なしで通す方を選ぶ。
+ * 満杯まで補充された (= しばらく使われていない) バケットは evictIdle で捨てる。
+ */
+public class TokenBucketTable {
+
+    private static final int TOKEN_BITS = 20;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long ONE = 1000; // トークン 1 個 (内部では 1/1000 単位で持つ)
+    private static final int MAX_BURST = 1000; // 容量 × ONE が TOKEN_BITS に収まる範囲
+    private static final long EVICTED = -1L;
+
+    private final double perSecond; // 1 秒あたりの補充数 = 1 ミリ秒あたりの補充量 (1/1000 単位)
+    private final long capacity;
+    private final int maxBuckets;
+    private final LongSupplier clock;
+    private final long epoch;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    // 上限到達時に新しいキーが共有するバケット (failOpenWhenFull なら null)
+    private final AtomicLong overflow;
+
+    /**
+     * @param perSecond        1 秒あたりに補充するトークン数
+     * @param burst            バケットの容量 (連続で許可する最大数, 1〜1000)
+     * @param maxBuckets       保持するバケット数の上限
+     * @param failOpenWhenFull 上限到達時に新しいキーを制限なしで通す (false なら共有の overflow バケットを使う)
+     */
+    public TokenBucketTable(double perSecond, int burst, int maxBuckets, boolean failOpenWhenFull) {
+        this(perSecond, burst, maxBuckets, failOpenWhenFull, () -> System.nanoTime() / 1_000_000);
+    }
+
+    // clock はミリ秒単位の単調増加する時刻 (テストでは手で進める)
+    TokenBucketTable(double perSecond, int burst, int maxBuckets, boolean failOpenWhenFull, LongSupplier clock) {
+        if (perSecond <= 0 || burst < 1 || burst > MAX_BURST) {
+            throw new IllegalArgumentException("レート制限の設定が不正です: perSecond=" + perSecond + ", burst=" + burst);
+        }
+        this.perSecond = perSecond;
+        this.capacity = burst * ONE;
+        this.maxBuckets = maxBuckets;
+        this.clock = clock;
+        this.epoch = clock.getAsLong();
+        this.overflow = failOpenWhenFull ? null : new AtomicLong(full(now()));
+    }
+
+    /**
+     * トークンを 1 個取得する
+     * @return 許可なら 0、拒否ならトークンが補充されるまでの待ち時間 (ミリ秒, 1 以上)
+     */
+    public long tryAcquire(String key) {
+        long now = now();
+        while (true) {
+            AtomicLong bucket = bucket(key, now);
+            if (bucket == null) {
+                return 0; // 上限に達しているので制限しない
+            }
+            long state = bucket.get();
+            if (state == EVICTED) {
+                buckets.remove(key, bucket);
+                continue;
+            }
+            long last = state >>> TOKEN_BITS;
+            long tokens = state & TOKEN_MASK;
+            long elapsed = Math.max(0, now - last);
+            long added = (long) (elapsed * perSecond);
+            long refilled;
+            long refilledAt;
+            if (tokens + added >= capacity) {
+                refilled = capacity;
+                refilledAt = now;
+            } else {
+                refilled = tokens + added;
+                // 端数を切り捨てた分の時間は次回に持ち越す (低レートでも補充が止まらないように)
+                refilledAt = last + (long) (added / perSecond);
+            }
+            if (refilled < ONE) {
+                // refilledAt の時点で refilled まで溜まっているので、そこから 1 個分に達する時刻までの残り
+                return Math.max(1, (long) Math.ceil(refilledAt + (ONE - refilled) / perSecond - now));
+            }
+            if (bucket.compareAndSet(state, (refilledAt << TOKEN_BITS) | (refilled - ONE))) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 満杯まで補充されているバケットを捨てる (次に使われたときに満杯の状態で作り直されるので挙動は変わらない)
+     */
+    public void evictIdle() {
+        long now = now();
+        buckets.forEach((key, bucket) -> {
+            long state = bucket.get();
+            if (state == EVICTED) {
+                return;
+            }
+            long tokens = (state & TOKEN_MASK) + (long) (Math.max(0, now - (state >>> TOKEN_BITS)) * perSecond);
+            if (tokens >= capacity && bucket.compareAndSet(state, EVICTED)) {
+                buckets.remove(key, bucket);
+            }
+        });
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxBuckets) {
+            return overflow;
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(full(now)));
+    }
+
+    private long full(long now) {
+        return (now << TOKEN_BITS) | capacity;
+    }
+
+    private long now() {
+        return clock.getAsLong() - epoch;
+    }
+}
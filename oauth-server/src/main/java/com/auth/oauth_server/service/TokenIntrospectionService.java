@@ -0,0 +1,97 @@
+package com.auth.oauth_server.service;
+
+import io.jsonwebtoken.JwtException;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * トークンイントロスペクション (RFC 7662)
+ * 有効なトークンは JwtService の検証済みキャッシュにより exp まで再検証しない。
+ * 無効・偽造・期限切れのトークンは短い TTL のネガティブキャッシュに入れ、
+ * 同じゴミトークンが繰り返し送られてきてもハッシュ参照 1 回で済ませる。
+ * 参照型ハンドルは表の参照自体がハッシュより安いので、ネガティブキャッシュを通さない
+ */
+@Service
+public class TokenIntrospectionService {
+
+    @Autowired
+    private JwtService jwtService;
+
+    // ネガティブキャッシュの有効期間 (秒)
+    @Value("${oauth.introspection.negative-cache-ttl-seconds:30}")
+    private long negativeTtlSeconds;
+
+    // ネガティブキャッシュの最大件数
+    @Value("${oauth.introspection.negative-cache-max-size:100000}")
+    private int negativeMaxSize;
+
+    // キーはトークンの SHA-256、値はキャッシュの有効期限。上限に達したら古い世代ごと捨てる
+    private BoundedCache<ByteBuffer, Long> negativeCache;
+    private final LongAdder negativeHits = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        negativeCache = new BoundedCache<>(negativeMaxSize);
+    }
+
+    /**
+     * トークンを検証する
+     * @return 有効なトークンのクレーム。無効な場合は null
+     */
+    public JwtService.VerifiedToken introspect(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        if (ReferenceTokenStore.isHandle(token)) {
+            try {
+                return jwtService.verify(token);
+            } catch (JwtException e) {
+                return null;
+            }
+        }
+        ByteBuffer key = ByteBuffer.wrap(sha256(token));
+        Long rejectedUntil = negativeCache.get(key);
+        if (rejectedUntil != null) {
+            if (rejectedUntil > System.currentTimeMillis()) {
+                negativeHits.increment();
+                return null;
+            }
+            negativeCache.remove(key, rejectedUntil);
+        }
+        try {
+            return jwtService.verify(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            rememberInvalid(key);
+            return null;
+        }
+    }
+
+    public long negativeCacheHits() {
+        return negativeHits.sum();
+    }
+
+    // ネガティブキャッシュの現在の件数
+    int negativeCacheSize() {
+        return negativeCache.size();
+    }
+
+    private void rememberInvalid(ByteBuffer key) {
+        negativeCache.put(key, System.currentTimeMillis() + negativeTtlSeconds * 1000);
+    }
+
+    private static byte[] sha256(String token) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * アクセストークンの失効管理 (jti 単位)
+ *
+ * 失効した jti は、トークンの有効期限 (exp) ごとに区切った「世代」に振り分けて保持する。
+ * 各世代は Bloom フィルタと正確な集合のペアで、世代の期間が過ぎればそのトークンはもう期限切れなので
+ * 世代ごと丸ごと捨てる (Bloom フィルタから要素を削除する必要がない)。
+ *
+ * 検証時はトークンの exp から該当する世代を 1 つだけ特定し、Bloom フィルタを引く。
+ * 失効していない大多数のトークンはここで「含まれない」と判定され、マップ参照もオブジェクト生成も発生しない。
+ *
+ * メモリ目安 (誤検知率 1%, k=7): 1 件あたり約 9.6 ビット。100 万件の失効でフィルタ合計は約 1.2MB
+ * (正確な集合側は 1 件あたり約 70 バイト: UUID 32 + ハッシュ表ノード 32 + 表のスロット 4〜8、圧縮 OOP 時)。
+ */
+@Service
+public class TokenRevocationService {
+
+    // 世代の幅。トークン有効期限 (1 時間) をこの幅で分割する
+    static final long WINDOW_MILLIS = 15 * 60 * 1000;
+    // 同時に存在しうる世代数 (有効期限 / 幅 + 境界分の余裕)
+    static final int SLOTS = (int) (JwtService.EXPIRATION_TIME / WINDOW_MILLIS) + 2;
+    // 誤検知率 1% のときの最適なハッシュ関数の数
+    private static final int HASHES = 7;
+    private static final double BITS_PER_ENTRY = 9.6;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 1 世代 (15 分) あたりに想定する失効件数。超えても正確性は保たれ、誤検知率が上がるだけ
+    @Value("${oauth.revocation.expected-per-window:250000}")
+    private int expectedPerWindow;
+
+    private final AtomicReferenceArray<Generation> generations = new AtomicReferenceArray<>(SLOTS);
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("oauth.revocations.live", this, TokenRevocationService::size)
+                .description("保持中の失効済みトークン数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * jti を失効させる (exp を過ぎれば自動的に忘れる)
+     */
+    public void revoke(String jti, long expiresAt) {
+        UUID id = parse(jti);
+        if (id == null || expiresAt <= System.currentTimeMillis()) {
+            return;
+        }
+        Generation generation = generationFor(expiresAt / WINDOW_MILLIS);
+        generation.exact.add(id);
+        generation.put(hash(jti));
+    }
+
+    /**
+     * 失効済みか確認する (トークン検証のたびに呼ばれる)
+     */
+    public boolean isRevoked(String jti, long expiresAt) {
+        if (jti == null) {
+            return false;
+        }
+        long index = expiresAt / WINDOW_MILLIS;
+        Generation generation = generations.get((int) (index % SLOTS));
+        if (generation == null || generation.index != index || !generation.mightContain(hash(jti))) {
+            return false;
+        }
+        // Bloom フィルタが「含まれるかもしれない」と答えた場合だけ正確な集合を確認する
+        UUID id = parse(jti);
+        return id != null && generation.exact.contains(id);
+    }
+
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            Generation generation = generations.get(i);
+            if (generation != null) {
+                size += generation.exact.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 期間を過ぎた世代を破棄する (その世代のトークンはすべて期限切れ)
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void dropExpiredGenerations() {
+        long currentIndex = System.currentTimeMillis() / WINDOW_MILLIS;
+        for (int i = 0; i < SLOTS; i++) {
+            Generation generation = generations.get(i);
+            if (generation != null && generation.index < currentIndex) {
+                generations.compareAndSet(i, generation, null);
+            }
+        }
+    }
+
+    private Generation generationFor(long index) {
+        int slot = (int) (index % SLOTS);
+        while (true) {
+            Generation existing = generations.get(slot);
+            if (existing != null && existing.index == index) {
+                return existing;
+            }
+            // スロットに残っているのは SLOTS 世代以上前 (期限切れ) のものなので置き換えてよい
+            Generation created = new Generation(index, expectedPerWindow);
+            if (generations.compareAndSet(slot, existing, created)) {
+                return created;
+            }
+        }
+    }
+
+    private static UUID parse(String jti) {
+        if (jti == null || jti.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(jti);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // 文字列から直接計算する 64 ビットハッシュ (FNV-1a + murmur3 の最終ミックス)。byte[] を生成しない
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 1 世代分の Bloom フィルタ (CAS でビットを立てるロックフリー実装) と正確な集合
+     */
+    private static final class Generation {
+
+        final long index;
+        final AtomicLongArray bits;
+        final long bitCount;
+        final Set<UUID> exact = ConcurrentHashMap.newKeySet();
+
+        Generation(long index, int expectedEntries) {
+            this.index = index;
+            long words = Math.max(1, (long) Math.ceil(expectedEntries * BITS_PER_ENTRY / 64));
+            this.bits = new AtomicLongArray((int) words);
+            this.bitCount = words * 64;
+        }
+
+        void put(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= HASHES; i++) {
+                long bit = position(h1 + i * h2);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                do {
+                    current = bits.get(word);
+                } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+            }
+        }
+
+        boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= HASHES; i++) {
+                long bit = position(h1 + i * h2);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long position(int combined) {
+            return (combined < 0 ? ~combined : combined) % bitCount;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.auth.oauth_server.benchmark;
+
+import com.auth.oauth_server.OauthServerApplication;
+import com.auth.oauth_server.entity.User;
+import com.auth.oauth_server.repository.UserRepository;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * OAuth フロー全体 (authorize → login-action → token (PKCE) → profile) の負荷試験
+ *
+ * アプリを組み込み H2 のままランダムポートで起動し、多数の仮想ユーザーでフローを流して
+ * 段階ごとのレイテンシ分布 (HdrHistogram) と全体のスループットを出力する。ネットワーク接続は不要。
+ *
+ * モード:
+ * <ul>
+ *   <li>closed (load.rate=0): load.users 本のスレッドが前のフローの完了を待って次を開始する</li>
+ *   <li>open (load.rate&gt;0): 毎秒 load.rate 件の一定到着率でフローを開始する。
+ *       フロー全体のレイテンシは「本来開始すべきだった時刻」から測るため、サーバーが詰まっても
+ *       計測側が送信を控えてしまう問題 (coordinated omission) で結果が良く見えることはない</li>
+ * </ul>
+ * load.bad-password-percent で一定割合のログインを誤ったパスワードにし、アカウントロックの経路も通す。
+ * 失敗したフロー (タイムアウト等) は failed 行に分けて記録し、「混雑中」画面は busy として数える。
+ *
+ * 実行方法:
+ * <pre>
+ *   mvn -B -Pload-test verify -DskipTests -Dload.rate=200 -Dload.seconds=60 -Dload.bad-password-percent=5
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final String CLIENT_ID = "client-app";
+    private static final String CLIENT_SECRET = "123456";
+    private static final String REDIRECT_URI = "http://localhost:8080/callback";
+    private static final String PASSWORD = "password";
+    private static final Pattern CODE = Pattern.compile("[?&]code=([^&]+)");
+    private static final Pattern ACCESS_TOKEN = Pattern.compile("\"access_token\"\\s*:\\s*\"([^\"]+)\"");
+    private static final String BUSY_MESSAGE = "現在混雑しています";
+    private static final long HIGHEST_TRACKABLE = TimeUnit.MINUTES.toNanos(5);
+
+    // FLOW: 完了したフロー全体, FAILED: 例外・タイムアウト等で失敗したフローの開始から失敗までの時間
+    enum Stage { AUTHORIZE, LOGIN, TOKEN, PROFILE, FLOW, FAILED }
+
+    // フローの結果 (REJECTED: 誤ったパスワードで想定どおり拒否, LOCKED: ロック中のユーザーで拒否,
+    // BUSY: パスワード検証の待ち行列や認可コードの保持数が満杯で「混雑中」画面が返った)
+    enum Outcome { OK, REJECTED, LOCKED, BUSY, ERROR }
+
+    private final int userCount;
+    private final int badPasswordPercent;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<Stage, Histogram> histograms = new EnumMap<>(Stage.class);
+    private final Map<Outcome, LongAdder> outcomes = new EnumMap<>(Outcome.class);
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private String baseUrl;
+
+    LoadGenerator(int userCount, int badPasswordPercent) {
+        this.userCount = userCount;
+        this.badPasswordPercent = badPasswordPercent;
+        reset();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.getInteger("load.users", 200);
+        int accounts = Integer.getInteger("load.accounts", 1000);
+        double rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+        int seconds = Integer.getInteger("load.seconds", 30);
+        int warmupSeconds = Integer.getInteger("load.warmup-seconds", 10);
+        int badPasswordPercent = Integer.getInteger("load.bad-password-percent", 0);
+
+        LoadGenerator generator = new LoadGenerator(accounts, badPasswordPercent);
+        try (ConfigurableApplicationContext context = start(accounts)) {
+            generator.baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            String mode = rate > 0 ? String.format("open (%.0f フロー/秒)", rate) : "closed (" + users + " ユーザー)";
+            System.out.printf("モード=%s, 計測=%d 秒, ウォームアップ=%d 秒, アカウント数=%d, 誤パスワード=%d%%%n",
+                    mode, seconds, warmupSeconds, accounts, badPasswordPercent);
+
+            generator.run(users, rate, warmupSeconds);
+            generator.reset();
+            long elapsed = generator.run(users, rate, seconds);
+            generator.report(elapsed);
+        }
+    }
+
+    // 負荷試験用のアカウントを作成した状態でアプリを起動する (BCrypt コストは最小)
+    private static ConfigurableApplicationContext start(int accounts) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(OauthServerApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:load-test;DB_CLOSE_DELAY=-1",
+                "--oauth.password.bcrypt-strength=4",
+                "--oauth.password-hashing.queue-capacity=10000",
+                "--oauth.rate-limit.enabled=false", // 送信元がすべて 127.0.0.1 になるため
+                "--logging.level.root=WARN");
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        String encoded = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+        List<User> users = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            users.add(new User(username(i), encoded));
+        }
+        userRepository.saveAll(users);
+        return context;
+    }
+
+    private void reset() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new ConcurrentHistogram(HIGHEST_TRACKABLE, 3));
+        }
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, new LongAdder());
+        }
+    }
+
+    // seconds 秒間負荷をかけ、実際にかかった時間 (ナノ秒) を返す
+    private long run(int users, double rate, int seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        if (rate > 0) {
+            // 到着間隔ごとにフローを開始する。処理が追いつかなくても開始予定時刻は遅らせない
+            ExecutorService workers = Executors.newCachedThreadPool();
+            long interval = (long) (1e9 / rate);
+            for (long intended = start; intended < deadline; intended += interval) {
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                long scheduled = intended;
+                workers.execute(() -> execute(scheduled));
+            }
+            workers.shutdown();
+            workers.awaitTermination(5, TimeUnit.MINUTES);
+        } else {
+            ExecutorService workers = Executors.newFixedThreadPool(users);
+            for (int i = 0; i < users; i++) {
+                workers.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        execute(System.nanoTime());
+                    }
+                });
+            }
+            workers.shutdown();
+            workers.awaitTermination(seconds + 300, TimeUnit.SECONDS);
+        }
+        return System.nanoTime() - start;
+    }
+
+    // 1 フロー分。intendedStart はフロー全体のレイテンシの起点
+    private void execute(long intendedStart) {
+        Outcome outcome;
+        try {
+            outcome = flow();
+        } catch (Exception e) {
+            outcome = Outcome.ERROR;
+        }
+        outcomes.get(outcome).increment();
+        // 失敗したフローも捨てずに別の分布へ記録し、停止中のタイムアウトがレイテンシから消えないようにする
+        record(outcome == Outcome.ERROR ? Stage.FAILED : Stage.FLOW, intendedStart);
+    }
+
+    private Outcome flow() throws Exception {
+        String username = username(ThreadLocalRandom.current().nextInt(userCount));
+        boolean badPassword = ThreadLocalRandom.current().nextInt(100) < badPasswordPercent;
+        String verifier = verifier();
+        String challenge = challenge(verifier);
+
+        long t = System.nanoTime();
+        expect(200, send(HttpRequest.newBuilder(URI.create(baseUrl + "/oauth/authorize?client_id=" + CLIENT_ID
+                + "&redirect_uri=" + encode(REDIRECT_URI) + "&response_type=code&scope=read&state=load"
+                + "&code_challenge=" + challenge + "&code_challenge_method=S256")).GET()));
+        record(Stage.AUTHORIZE, t);
+
+        t = System.nanoTime();
+        HttpResponse<String> login = send(form("/login-action", "username=" + username
+                + "&password=" + (badPassword ? "wrong-" + PASSWORD : PASSWORD)
+                + "&client_id=" + CLIENT_ID + "&redirect_uri=" + encode(REDIRECT_URI) + "&scope=read&state=load"
+                + "&code_challenge=" + challenge + "&code_challenge_method=S256"));
+        record(Stage.LOGIN, t);
+        if ((login.statusCode() == 200 || login.statusCode() == 503) && login.body().contains(BUSY_MESSAGE)) {
+            // 混雑中の画面はロックや誤パスワードと区別する (過負荷をロックとして数えないため)
+            return Outcome.BUSY;
+        }
+        if (login.statusCode() == 200) {
+            // ログイン画面が再表示された = 拒否
+            return badPassword ? Outcome.REJECTED : Outcome.LOCKED;
+        }
+        expect(302, login);
+        // リダイレクト先 (クライアントのコールバック) の URL から認可コードを取り出す
+        String code = extract(CODE, login.headers().firstValue("Location").orElse(""));
+
+        t = System.nanoTime();
+        HttpResponse<String> token = send(form("/oauth/token", "grant_type=authorization_code&code=" + code
+                + "&redirect_uri=" + encode(REDIRECT_URI) + "&code_verifier=" + verifier
+                + "&client_id=" + CLIENT_ID + "&client_secret=" + CLIENT_SECRET));
+        expect(200, token);
+        record(Stage.TOKEN, t);
+        String accessToken = extract(ACCESS_TOKEN, token.body());
+
+        t = System.nanoTime();
+        expect(200, send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/profile"))
+                .header("Authorization", "Bearer " + accessToken).GET()));
+        record(Stage.PROFILE, t);
+        return Outcome.OK;
+    }
+
+    private void record(Stage stage, long start) {
+        histograms.get(stage).recordValue(Math.min(System.nanoTime() - start, HIGHEST_TRACKABLE));
+    }
+
+    private void report(long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / 1e9;
+        long completed = histograms.get(Stage.FLOW).getTotalCount();
+        System.out.printf("%n%-10s %9s %10s %10s %10s %10s %10s%n", "stage", "count", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)");
+        for (Stage stage : Stage.values()) {
+            Histogram h = histograms.get(stage);
+            System.out.printf("%-10s %9d %10.2f %10.2f %10.2f %10.2f %10.2f%n", stage.name().toLowerCase(), h.getTotalCount(),
+                    millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(90)), millis(h.getValueAtPercentile(99)),
+                    millis(h.getValueAtPercentile(99.9)), millis(h.getMaxValue()));
+        }
+        System.out.printf("%nスループット: %.1f フロー/秒 (%d フロー / %.1f 秒)%n", completed / elapsedSeconds, completed, elapsedSeconds);
+        for (Outcome outcome : Outcome.values()) {
+            System.out.printf("  %-9s %d%n", outcome.name().toLowerCase(), outcomes.get(outcome).sum());
+        }
+    }
+
+    private HttpRequest.Builder form(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return http.send(request.timeout(Duration.ofSeconds(60)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String verifier() {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String challenge(String verifier) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(verifier.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    private static void expect(int status, HttpResponse<String> response) {
+        if (response.statusCode() != status) {
+            throw new IllegalStateException(response.uri().getPath() + " が " + response.statusCode() + " を返しました");
+        }
+    }
+
+    private static String extract(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        if (!matcher.find()) {
+            throw new IllegalStateException("応答から値を取り出せません");
+        }
+        return matcher.group(1);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String username(int index) {
+        return "load-user-" + index;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
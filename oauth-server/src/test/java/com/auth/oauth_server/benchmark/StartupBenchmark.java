@@ -0,0 +1,195 @@
+package com.auth.oauth_server.benchmark;
+
+import java.io.File;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 起動から最初のトークン発行までの時間 (time-to-first-token) を起動方法ごとに比較する
+ *
+ * アプリを別プロセスで起動し、プロセス生成の直後から authorize → login-action → token を繰り返し試み、
+ * 最初に 200 でアクセストークンが返るまでの時間を計る (JVM 起動・コンテキスト初期化・最初のリクエストの処理をすべて含む)。
+ * <ul>
+ *   <li>jar: 従来どおり java -jar (入れ子の jar)</li>
+ *   <li>aot: 展開した app.jar を Spring AOT の初期化コードで起動</li>
+ *   <li>aot-cds: aot に加えて学習実行で作った CDS アーカイブ (application.jsa) を使う</li>
+ * </ul>
+ * 実行方法 (-Pfaststart の成果物を使う):
+ * <pre>
+ *   mvn -B -Pfaststart verify -DskipTests -Dstartup.runs=5 -Dstartup.max-ratio=0.7
+ * </pre>
+ * startup.max-ratio を指定すると、最後のモードの中央値が最初のモードの中央値のこの倍率を超えたとき終了コード 1 になる (CI 用)。
+ * 各プロセスの標準出力は startup.dir/startup-logs に残す。
+ */
+public class StartupBenchmark {
+
+    private static final String CLIENT_ID = "client-app";
+    private static final String CLIENT_SECRET = "123456";
+    private static final String REDIRECT_URI = "http://localhost:8080/callback";
+    private static final Pattern CODE = Pattern.compile("[?&]code=([^&]+)");
+    private static final Pattern ACCESS_TOKEN = Pattern.compile("\"access_token\"\\s*:\\s*\"([^\"]+)\"");
+
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Path.of(System.getProperty("startup.dir", "target/faststart"));
+        Path fatJar = Path.of(System.getProperty("startup.fat-jar", "target/oauth-server-0.0.1-SNAPSHOT.jar"));
+        int runs = Integer.getInteger("startup.runs", 5);
+        String[] modes = System.getProperty("startup.modes", "jar,aot,aot-cds").split(",");
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger("startup.timeout-seconds", 120));
+        double maxRatio = Double.parseDouble(System.getProperty("startup.max-ratio", "0"));
+
+        Path logs = Files.createDirectories(dir.resolve("startup-logs"));
+        System.out.printf("Java %s, 各モード %d 回 (1 回目は捨てずに含める)%n", Runtime.version(), runs);
+
+        List<Result> results = new ArrayList<>();
+        for (String mode : modes) {
+            mode = mode.trim();
+            List<String> command = command(mode, dir, fatJar);
+            long[] samples = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                samples[i] = measure(command, dir, logs.resolve(mode + "-" + i + ".log"), timeoutNanos);
+            }
+            Arrays.sort(samples);
+            results.add(new Result(mode, samples));
+        }
+
+        System.out.printf("%n%-10s %10s %10s %10s %8s%n", "mode", "min(ms)", "p50(ms)", "max(ms)", "ratio");
+        double baseline = results.get(0).medianMillis();
+        for (Result r : results) {
+            System.out.printf("%-10s %10.0f %10.0f %10.0f %8.2f%n",
+                    r.mode(), r.samples()[0] / 1e6, r.medianMillis(), r.samples()[r.samples().length - 1] / 1e6,
+                    r.medianMillis() / baseline);
+        }
+        double ratio = results.get(results.size() - 1).medianMillis() / baseline;
+        if (maxRatio > 0 && ratio > maxRatio) {
+            System.out.printf("%n起動時間の比率 %.2f が上限 %.2f を超えています%n", ratio, maxRatio);
+            System.exit(1);
+        }
+    }
+
+    private static List<String> command(String mode, Path dir, Path fatJar) {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        return switch (mode) {
+            case "jar" -> List.of(java, "-jar", fatJar.toAbsolutePath().toString());
+            case "aot" -> List.of(java, "-Dspring.aot.enabled=true", "-jar", "app.jar");
+            case "aot-cds" -> List.of(java, "-XX:SharedArchiveFile=application.jsa", "-Xshare:auto",
+                    "-Dspring.aot.enabled=true", "-jar", "app.jar");
+            default -> throw new IllegalArgumentException("不明なモードです: " + mode + " (jar / aot / aot-cds)");
+        };
+    }
+
+    // 1 回分: プロセス生成からトークン取得までのナノ秒
+    private static long measure(List<String> baseCommand, Path dir, Path log, long timeoutNanos) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>(baseCommand);
+        command.add("--server.port=" + port);
+        command.add("--oauth.audit.dir=" + dir.resolve("startup-logs/audit").toAbsolutePath());
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(dir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            String baseUrl = "http://localhost:" + port;
+            Exception last = null;
+            while (System.nanoTime() - start < timeoutNanos) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("アプリが終了しました (終了コード " + process.exitValue() + ", ログ: " + log + ")");
+                }
+                try {
+                    firstToken(baseUrl);
+                    return System.nanoTime() - start;
+                } catch (ConnectException e) {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                } catch (IllegalStateException e) {
+                    // ポートは開いたが初期データ (DataInitializer) の投入がまだ終わっていない
+                    last = e;
+                    TimeUnit.MILLISECONDS.sleep(10);
+                }
+            }
+            throw new IllegalStateException("タイムアウトしました (ログ: " + log + ")", last);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    // authorize → login-action → token (接続できなければ ConnectException、応答が想定と違えば IllegalStateException)
+    private static void firstToken(String baseUrl) throws Exception {
+        expect(200, send(HttpRequest.newBuilder(URI.create(baseUrl + "/oauth/authorize?client_id=" + CLIENT_ID
+                + "&redirect_uri=" + encode(REDIRECT_URI) + "&response_type=code&scope=read&state=startup")).GET()));
+
+        HttpResponse<String> login = send(form(baseUrl, "/login-action",
+                "username=admin&password=password&client_id=" + CLIENT_ID + "&redirect_uri=" + encode(REDIRECT_URI) + "&scope=read&state=startup"));
+        expect(302, login);
+        String code = extract(CODE, login.headers().firstValue("Location").orElse(""));
+
+        HttpResponse<String> token = send(form(baseUrl, "/oauth/token",
+                "grant_type=authorization_code&code=" + code + "&redirect_uri=" + encode(REDIRECT_URI)
+                        + "&client_id=" + CLIENT_ID + "&client_secret=" + CLIENT_SECRET));
+        expect(200, token);
+        extract(ACCESS_TOKEN, token.body());
+    }
+
+    private static HttpRequest.Builder form(String baseUrl, String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private static HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return HTTP.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void expect(int status, HttpResponse<String> response) {
+        if (response.statusCode() != status) {
+            throw new IllegalStateException(response.uri().getPath() + " が " + response.statusCode() + " を返しました");
+        }
+    }
+
+    private static String extract(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        if (!matcher.find()) {
+            throw new IllegalStateException("応答から値を取り出せません");
+        }
+        return matcher.group(1);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private record Result(String mode, long[] samples) {
+
+        double medianMillis() {
+            return samples[samples.length / 2] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.auth.oauth_server.benchmark;
+
+import com.auth.oauth_server.OauthServerApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * プラットフォームスレッド / 仮想スレッドの両モードで、authorize → login → token → profile の一連の流れを
+ * 高い同時実行数で流し、p50/p99 レイテンシとスループットを比較する
+ *
+ * 実行方法 (仮想スレッドを使うには Java 21 以上の JDK で Maven を起動する):
+ * <pre>
+ *   mvn -B -Pbenchmark verify -DskipTests -Dbenchmark.concurrency=400 -Dbenchmark.seconds=30
+ * </pre>
+ * 各モードでアプリを別のポート・別のインメモリ DB で起動し、ウォームアップの後に計測する。
+ * BCrypt のコストは最小 (4) にして、パスワード検証ではなくリクエスト処理とブロッキング I/O の差が見えるようにしている。
+ */
+public class VirtualThreadBenchmark {
+
+    private static final String CLIENT_ID = "client-app";
+    private static final String CLIENT_SECRET = "123456";
+    private static final String REDIRECT_URI = "http://localhost:8080/callback";
+    private static final Pattern CODE = Pattern.compile("[?&]code=([^&]+)");
+    private static final Pattern ACCESS_TOKEN = Pattern.compile("\"access_token\"\\s*:\\s*\"([^\"]+)\"");
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = Integer.getInteger("benchmark.concurrency", 400);
+        int seconds = Integer.getInteger("benchmark.seconds", 30);
+        int warmupSeconds = Integer.getInteger("benchmark.warmup-seconds", 10);
+        String[] modes = System.getProperty("benchmark.modes", "platform,virtual").split(",");
+
+        if (Runtime.version().feature() < 21) {
+            System.out.println("注意: Java " + Runtime.version().feature() + " では spring.threads.virtual.enabled は無視されます (両モードとも同じ結果になります)");
+        }
+        System.out.printf("同時実行数=%d, 計測=%d 秒, ウォームアップ=%d 秒%n", concurrency, seconds, warmupSeconds);
+
+        List<Result> results = new ArrayList<>();
+        for (String mode : modes) {
+            boolean virtual = "virtual".equalsIgnoreCase(mode.trim());
+            try (ConfigurableApplicationContext context = start(virtual, concurrency)) {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                Flow flow = new Flow("http://localhost:" + port);
+                run(flow, concurrency, warmupSeconds);
+                results.add(run(flow, concurrency, seconds).named(virtual ? "virtual" : "platform"));
+            }
+        }
+
+        System.out.printf("%n%-10s %10s %10s %10s %10s %10s %8s%n", "mode", "flows/s", "req/s", "p50(ms)", "p99(ms)", "max(ms)", "errors");
+        for (Result r : results) {
+            System.out.printf("%-10s %10.1f %10.1f %10.2f %10.2f %10.2f %8d%n",
+                    r.mode(), r.flowsPerSecond(), r.flowsPerSecond() * Flow.REQUESTS, r.p50Millis(), r.p99Millis(), r.maxMillis(), r.errors());
+        }
+    }
+
+    private static ConfigurableApplicationContext start(boolean virtual, int concurrency) {
+        String mode = virtual ? "virtual" : "platform";
+        return new SpringApplicationBuilder(OauthServerApplication.class).run(
+                "--server.port=0",
+                "--spring.threads.virtual.enabled=" + virtual,
+                "--spring.datasource.url=jdbc:h2:mem:benchmark-" + mode + ";DB_CLOSE_DELAY=-1",
+                "--oauth.password.bcrypt-strength=4",
+                "--oauth.password-hashing.queue-capacity=" + concurrency * 2,
+                "--oauth.rate-limit.enabled=false", // 送信元がすべて 127.0.0.1 になるため
+                "--logging.level.root=WARN");
+    }
+
+    // concurrency 本のスレッドで seconds 秒間フローを繰り返し、フロー単位のレイテンシを集める
+    private static Result run(Flow flow, int concurrency, int seconds) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        LongAdder errors = new LongAdder();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        List<Future<long[]>> futures = new ArrayList<>(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(clients.submit(() -> {
+                long[] samples = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < deadline) {
+                    long begin = System.nanoTime();
+                    try {
+                        flow.execute();
+                    } catch (Exception e) {
+                        errors.increment();
+                        continue;
+                    }
+                    if (count == samples.length) {
+                        samples = Arrays.copyOf(samples, count * 2);
+                    }
+                    samples[count++] = System.nanoTime() - begin;
+                }
+                return Arrays.copyOf(samples, count);
+            }));
+        }
+        List<long[]> perThread = new ArrayList<>(concurrency);
+        for (Future<long[]> future : futures) {
+            perThread.add(future.get());
+        }
+        long elapsed = System.nanoTime() - start;
+        clients.shutdown();
+
+        long[] all = perThread.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(null, all.length * 1e9 / elapsed, percentile(all, 0.50), percentile(all, 0.99),
+                all.length == 0 ? 0 : all[all.length - 1] / 1e6, errors.sum());
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * authorize → login-action → token → profile の 4 リクエスト
+     */
+    private static final class Flow {
+
+        static final int REQUESTS = 4;
+
+        private final String baseUrl;
+        private final HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        Flow(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        void execute() throws Exception {
+            expect(200, send(HttpRequest.newBuilder(URI.create(baseUrl + "/oauth/authorize?client_id=" + CLIENT_ID
+                    + "&redirect_uri=" + encode(REDIRECT_URI) + "&response_type=code&scope=read&state=bench")).GET()));
+
+            HttpResponse<String> login = send(form("/login-action",
+                    "username=admin&password=password&client_id=" + CLIENT_ID + "&redirect_uri=" + encode(REDIRECT_URI) + "&scope=read&state=bench"));
+            expect(302, login);
+            String code = extract(CODE, login.headers().firstValue("Location").orElse(""));
+
+            HttpResponse<String> token = send(form("/oauth/token",
+                    "grant_type=authorization_code&code=" + code + "&redirect_uri=" + encode(REDIRECT_URI)
+                            + "&client_id=" + CLIENT_ID + "&client_secret=" + CLIENT_SECRET));
+            expect(200, token);
+            String accessToken = extract(ACCESS_TOKEN, token.body());
+
+            expect(200, send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/profile"))
+                    .header("Authorization", "Bearer " + accessToken).GET()));
+        }
+
+        private HttpRequest.Builder form(String path, String body) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString(body));
+        }
+
+        private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+            return http.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+        }
+
+        private static void expect(int status, HttpResponse<String> response) {
+            if (response.statusCode() != status) {
+                throw new IllegalStateException(response.uri().getPath() + " が " + response.statusCode() + " を返しました");
+            }
+        }
+
+        private static String extract(Pattern pattern, String text) {
+            Matcher matcher = pattern.matcher(text);
+            if (!matcher.find()) {
+                throw new IllegalStateException("応答から値を取り出せません");
+            }
+            return matcher.group(1);
+        }
+
+        private static String encode(String value) {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private record Result(String mode, double flowsPerSecond, double p50Millis, double p99Millis, double maxMillis, long errors) {
+
+        Result named(String mode) {
+            return new Result(mode, flowsPerSecond, p50Millis, p99Millis, maxMillis, errors);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 書き出したイベントを AuditLogReader で読み戻し、内容・コードを残さないこと・セグメントごとの文字列表を確認する
+ */
+class AuditLogTests {
+
+    @TempDir
+    Path dir;
+
+    private AuditLog auditLog;
+
+    @BeforeEach
+    void setUp() {
+        auditLog = new AuditLog();
+        ReflectionTestUtils.setField(auditLog, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(auditLog, "enabled", true);
+        ReflectionTestUtils.setField(auditLog, "dir", dir.toString());
+        ReflectionTestUtils.setField(auditLog, "bufferSize", 65536);
+        ReflectionTestUtils.setField(auditLog, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(auditLog, "maxSegments", 0);
+        ReflectionTestUtils.setField(auditLog, "forceIntervalMs", 1000L);
+        ReflectionTestUtils.setField(auditLog, "maxSymbols", 100000);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        auditLog.stop();
+    }
+
+    private List<AuditLogReader.Entry> stopAndRead() throws Exception {
+        auditLog.stop();
+        List<AuditLogReader.Entry> entries = new ArrayList<>();
+        AuditLogReader.readAll(dir, entries::add);
+        return entries;
+    }
+
+    @Test
+    void roundTripKeepsEventsButNotRawCodes() throws Exception {
+        auditLog.start();
+        String code = "raw-authorization-code-0123456789";
+        auditLog.record(AuditLog.Type.AUTHORIZE_REQUEST, null, "client-app", "http://localhost:8080/callback");
+        auditLog.record(AuditLog.Type.LOGIN_SUCCESS, "alice", null);
+        auditLog.recordCode(AuditLog.Type.CODE_ISSUED, "alice", "client-app", code);
+        auditLog.recordCode(AuditLog.Type.CODE_CONSUMED, "alice", "client-app", code);
+        auditLog.record(AuditLog.Type.TOKEN_ISSUED, "alice", "client-app", "x".repeat(AuditLog.MAX_SYMBOL_CHARS + 10));
+
+        List<AuditLogReader.Entry> entries = stopAndRead();
+        assertEquals(5, entries.size());
+        assertEquals(0, auditLog.dropped());
+
+        AuditLogReader.Entry request = entries.get(0);
+        assertEquals(AuditLog.Type.AUTHORIZE_REQUEST, request.type());
+        assertNull(request.username());
+        assertEquals("client-app", request.clientId());
+        assertEquals("http://localhost:8080/callback", request.detail());
+        assertNull(request.code());
+
+        assertEquals(AuditLog.Type.LOGIN_SUCCESS, entries.get(1).type());
+        assertEquals("alice", entries.get(1).username());
+        assertNull(entries.get(1).clientId());
+
+        // 発行と消費は同じ指紋で突き合わせられる
+        String fingerprint = String.format("%016x", auditLog.fingerprint(code));
+        assertEquals(fingerprint, entries.get(2).code());
+        assertEquals(fingerprint, entries.get(3).code());
+        assertEquals(AuditLog.Type.CODE_CONSUMED, entries.get(3).type());
+
+        assertEquals(AuditLog.MAX_SYMBOL_CHARS, entries.get(4).detail().length());
+
+        // コードそのものはファイルのどこにも書かれていない
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path segment : files.filter(AuditLogReader::isSegment).toList()) {
+                String content = new String(Files.readAllBytes(segment), StandardCharsets.ISO_8859_1);
+                assertFalse(content.contains(code), segment.toString());
+                assertTrue(content.contains("alice"));
+            }
+        }
+    }
+
+    @Test
+    void symbolTableIsPerSegmentAndResetOnRoll() throws Exception {
+        ReflectionTestUtils.setField(auditLog, "maxSymbols", 2);
+        auditLog.start();
+        auditLog.record(AuditLog.Type.LOGIN_SUCCESS, "alice", "client-app");
+        auditLog.record(AuditLog.Type.LOGIN_SUCCESS, "bob", "client-app"); // 上限 2 件を超える
+        // 文字列なしのイベントで 1 MB のセグメントを埋めて切り替えさせる
+        int filler = 1024 * 1024 / AuditLog.EVENT_BYTES;
+        for (int i = 0; i < filler; i++) {
+            auditLog.record(AuditLog.Type.LOGOUT, null, null);
+        }
+        auditLog.record(AuditLog.Type.LOGIN_SUCCESS, "bob", "client-app");
+
+        List<AuditLogReader.Entry> entries = stopAndRead();
+        assertEquals(filler + 3, entries.size());
+        assertEquals("alice", entries.get(0).username());
+        assertEquals("(overflow)", entries.get(1).username());
+        assertEquals("client-app", entries.get(1).clientId());
+        // 新しいセグメントでは表が空から始まるので、同じ値も記録できる
+        AuditLogReader.Entry last = entries.get(entries.size() - 1);
+        assertEquals("bob", last.username());
+        assertEquals("client-app", last.clientId());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.filter(AuditLogReader::isSegment).count());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.auth.oauth_server.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedCacheTests {
+
+    @Test
+    void sizeStaysWithinLimit() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(100);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, "v" + i);
+            assertTrue(cache.size() <= 100, "size=" + cache.size());
+        }
+        // 直近の半分 (現世代と旧世代) は残り、それより古いものは消えている
+        assertEquals("v9999", cache.get(9999));
+        assertEquals("v9950", cache.get(9950));
+        assertNull(cache.get(0));
+        assertTrue(cache.evictions() >= 10_000 - 100);
+    }
+
+    @Test
+    void entriesInPreviousGenerationAreStillFound() {
+        BoundedCache<String, String> cache = new BoundedCache<>(4); // 1 世代 2 件
+        cache.put("a", "1");
+        cache.put("b", "2"); // ここで a, b が旧世代になる
+        cache.put("c", "3");
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        cache.put("d", "4"); // a, b を捨てて c, d が旧世代になる
+        assertNull(cache.get("a"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    void removeCoversBothGenerations() {
+        BoundedCache<String, String> cache = new BoundedCache<>(4);
+        cache.put("client-a:read", "1");
+        cache.put("client-b:read", "2"); // 旧世代へ
+        cache.put("client-a:write", "3");
+
+        cache.remove("client-b:read", "other");
+        assertEquals("2", cache.get("client-b:read"));
+        cache.remove("client-b:read", "2");
+        assertNull(cache.get("client-b:read"));
+
+        cache.removeKeys(key -> key.startsWith("client-a:"));
+        assertNull(cache.get("client-a:read"));
+        assertNull(cache.get("client-a:write"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void rejectsNonPositiveSize() {
+        assertThrows(IllegalArgumentException.class, () -> new BoundedCache<>(0));
+    }
+}
@@ -0,0 +1,159 @@
+package com.auth.oauth_server.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.spy;
+
+/**
+ * H2 に対して CSV / NDJSON の取り込み、重複の数え方、途中で止まった取り込みのチェックポイントからの再開を確認する
+ */
+class BulkImportServiceTests {
+
+    @TempDir
+    Path dir;
+
+    private JdbcTemplate jdbcTemplate;
+    private BulkImportService service;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:import-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = spy(new JdbcTemplate(dataSource));
+        jdbcTemplate.execute("""
+                CREATE TABLE users (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    username VARCHAR(255), password VARCHAR(255), failed_attempts INT NOT NULL, lock_time TIMESTAMP)""");
+        jdbcTemplate.execute("""
+                CREATE TABLE oauth_clients (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    client_id VARCHAR(255), client_secret VARCHAR(255), redirect_uri VARCHAR(255),
+                    app_name VARCHAR(255), scopes VARCHAR(255), token_format VARCHAR(255))""");
+        service = new BulkImportService();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "transactionTemplate", new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        ReflectionTestUtils.setField(service, "passwordEncoder", new BCryptPasswordEncoder(4));
+        ReflectionTestUtils.setField(service, "batchSize", 3);
+        ReflectionTestUtils.setField(service, "parallelism", 2);
+        ReflectionTestUtils.setField(service, "progressIntervalSeconds", 10L);
+        service.init();
+    }
+
+    private Path write(String name, String... lines) throws Exception {
+        return Files.write(dir.resolve(name), List.of(lines), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void csvParserHandlesQuotesAndSkipsBrokenLines() throws Exception {
+        String hashed = new BCryptPasswordEncoder(4).encode("kept");
+        Path file = write("users.csv",
+                "Username,Password",
+                "alice,\"pa,ss\"",
+                "\"bob \"\"the\"\" builder\",plain",
+                "carol," + hashed,
+                "dave", // 列数が足りない
+                "\"erin,open", // クォートが閉じていない
+                "",
+                ",nopass"); // username が空
+
+        BulkImportService.Result result = service.importUsers(file);
+        assertEquals(3, result.imported());
+        assertEquals(0, result.skipped());
+        assertEquals(3, result.failed());
+
+        Map<String, Object> bob = jdbcTemplate.queryForMap("SELECT password FROM users WHERE username = ?", "bob \"the\" builder");
+        assertTrue(new BCryptPasswordEncoder(4).matches("plain", (String) bob.get("password")));
+        assertTrue(new BCryptPasswordEncoder(4).matches("pa,ss",
+                jdbcTemplate.queryForObject("SELECT password FROM users WHERE username = 'alice'", String.class)));
+        // BCrypt 済みのものはそのまま保存する
+        assertEquals(hashed, jdbcTemplate.queryForObject("SELECT password FROM users WHERE username = 'carol'", String.class));
+    }
+
+    @Test
+    void ndjsonAcceptsScopeArrays() throws Exception {
+        Path file = write("clients.ndjson",
+                "{\"client_id\":\"app-a\",\"client_secret\":\"s\",\"redirect_uri\":\"http://a/cb\",\"scopes\":[\"read\",\"write\"]}",
+                "{\"CLIENT_ID\":\"app-b\",\"client_secret\":\"s\",\"redirect_uri\":\"http://b/cb\",\"scopes\":\"read\",\"token_format\":\"reference\",\"app_name\":null}",
+                "[1,2,3]",
+                "{not json");
+
+        BulkImportService.Result result = service.importClients(file);
+        assertEquals(2, result.imported());
+        assertEquals(2, result.failed());
+        assertEquals("read,write", jdbcTemplate.queryForObject("SELECT scopes FROM oauth_clients WHERE client_id = 'app-a'", String.class));
+        assertEquals("reference", jdbcTemplate.queryForObject("SELECT token_format FROM oauth_clients WHERE client_id = 'app-b'", String.class));
+    }
+
+    @Test
+    void duplicatesWithinTheFileAndInTheTableAreSkipped() throws Exception {
+        jdbcTemplate.update("INSERT INTO users (username, password, failed_attempts) VALUES ('existing', 'x', 0)");
+        Path file = write("users.csv",
+                "username,password",
+                "alice,p1",
+                "alice,p2", // 同じバッチ内の重複
+                "existing,p3", // テーブルに既にある
+                "bob,p4",
+                "alice,p5"); // 別のバッチでの重複
+
+        BulkImportService.Result result = service.importUsers(file);
+        assertEquals(2, result.imported());
+        assertEquals(3, result.skipped());
+        assertEquals(0, result.failed());
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Integer.class));
+        assertEquals("x", jdbcTemplate.queryForObject("SELECT password FROM users WHERE username = 'existing'", String.class));
+    }
+
+    @Test
+    void interruptedImportResumesFromTheCheckpoint() throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add("username,password");
+        for (int i = 0; i < 10; i++) {
+            lines.add("user-" + i + ",pw" + i);
+        }
+        Path file = write("users.csv", lines.toArray(String[]::new));
+
+        // 2 バッチ目の INSERT で落ちる (そのバッチのトランザクションはチェックポイントごと巻き戻る)
+        doCallRealMethod()
+                .doThrow(new IllegalStateException("停止"))
+                .doCallRealMethod()
+                .when(jdbcTemplate).batchUpdate(anyString(), anyList());
+        assertThrows(IllegalStateException.class, () -> service.importUsers(file));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Integer.class));
+        assertEquals(4L, jdbcTemplate.queryForObject("SELECT line_no FROM import_checkpoints", Long.class)); // ヘッダー + 3 行
+
+        BulkImportService.Result resumed = service.importUsers(file);
+        assertEquals(10, resumed.imported());
+        assertEquals(7, resumed.importedThisRun());
+        assertEquals(0, resumed.skipped());
+        assertEquals(10, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Integer.class));
+        assertEquals(10, jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT username) FROM users", Integer.class));
+
+        // 完了済みのファイルは再実行しても何もしない
+        BulkImportService.Result again = service.importUsers(file);
+        assertEquals(10, again.imported());
+        assertEquals(0, again.importedThisRun());
+        assertEquals(10, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Integer.class));
+    }
+}
@@ -0,0 +1,124 @@
+package com.auth.oauth_server.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * トークンの再利用・executor 満杯時の呼び出しスレッドでの発行・上限・クライアント単位の破棄 (発行中の破棄を含む) を確認する
+ */
+class ClientCredentialsTokenCacheTests {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private JwtService jwtService;
+    private AsyncTaskExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        jwtService = mock(JwtService.class);
+        AtomicInteger sequence = new AtomicInteger();
+        when(jwtService.issueAccessToken(anyString(), any(), anyString()))
+                .thenAnswer(invocation -> "token-" + sequence.incrementAndGet());
+        when(jwtService.verify(anyString())).thenAnswer(invocation -> new JwtService.VerifiedToken(
+                "client-app", "read", "client-app", System.currentTimeMillis() + HOUR, invocation.getArgument(0)));
+        executor = mock(AsyncTaskExecutor.class);
+    }
+
+    private ClientCredentialsTokenCache cache(long refreshAheadSeconds, int maxSize) {
+        ClientCredentialsTokenCache cache = new ClientCredentialsTokenCache();
+        ReflectionTestUtils.setField(cache, "jwtService", jwtService);
+        ReflectionTestUtils.setField(cache, "revocationService", mock(TokenRevocationService.class));
+        ReflectionTestUtils.setField(cache, "referenceTokenStore", mock(ReferenceTokenStore.class));
+        ReflectionTestUtils.setField(cache, "executor", executor);
+        ReflectionTestUtils.setField(cache, "refreshAheadSeconds", refreshAheadSeconds);
+        ReflectionTestUtils.setField(cache, "maxSize", maxSize);
+        cache.init();
+        return cache;
+    }
+
+    @Test
+    void sameClientAndScopeReuseTheToken() {
+        ClientCredentialsTokenCache cache = cache(300, 100);
+        String first = cache.getToken("client-app", "read").accessToken();
+        assertEquals(first, cache.getToken("client-app", "read").accessToken());
+        assertNotEquals(first, cache.getToken("client-app", "write").accessToken());
+        verify(jwtService, times(2)).issueAccessToken(anyString(), any(), anyString());
+    }
+
+    @Test
+    void rejectedBackgroundRefreshMintsOnTheCallingThread() {
+        doThrow(new TaskRejectedException("full")).when(executor).execute(any(Runnable.class));
+        ClientCredentialsTokenCache cache = cache(2 * HOUR / 1000, 100); // 常に更新対象
+        String first = cache.getToken("client-app", "read").accessToken();
+
+        // 呼び出し元には現在のトークンを返し、更新は呼び出しスレッドで済ませる (例外にしない)
+        assertEquals(first, cache.getToken("client-app", "read").accessToken());
+        String refreshed = cache.getToken("client-app", "read").accessToken();
+        assertNotEquals(first, refreshed);
+    }
+
+    @Test
+    void cacheStaysWithinItsLimit() {
+        ClientCredentialsTokenCache cache = cache(300, 10);
+        for (int i = 0; i < 100; i++) {
+            cache.getToken("client-" + i, "read");
+        }
+        BoundedCache<?, ?> entries = (BoundedCache<?, ?>) ReflectionTestUtils.getField(cache, "cache");
+        assertTrue(entries.size() <= 10, "size=" + entries.size());
+    }
+
+    @Test
+    void invalidateDuringMintDoesNotCacheTheStaleToken() throws Exception {
+        CountDownLatch minting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger sequence = new AtomicInteger();
+        when(jwtService.issueAccessToken(anyString(), any(), anyString())).thenAnswer(invocation -> {
+            int n = sequence.incrementAndGet();
+            if (n == 1) {
+                minting.countDown();
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+            }
+            return "token-" + n;
+        });
+        ClientCredentialsTokenCache cache = cache(300, 100);
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.getToken("client-app", "read").accessToken());
+        assertTrue(minting.await(10, TimeUnit.SECONDS));
+        cache.invalidate("client-app"); // 発行中に設定が変わった
+        release.countDown();
+
+        // 発行を待っていた要求には結果を返すが、キャッシュには残さない
+        assertEquals("token-1", first.get(10, TimeUnit.SECONDS));
+        assertEquals("token-2", cache.getToken("client-app", "read").accessToken());
+        assertEquals("token-2", cache.getToken("client-app", "read").accessToken());
+    }
+
+    @Test
+    void invalidateDropsOnlyThatClientsTokens() {
+        ClientCredentialsTokenCache cache = cache(300, 100);
+        String a = cache.getToken("client-a", "read").accessToken();
+        String b = cache.getToken("client-b", "read").accessToken();
+        cache.invalidate("client-a");
+        assertNotEquals(a, cache.getToken("client-a", "read").accessToken());
+        assertEquals(b, cache.getToken("client-b", "read").accessToken());
+    }
+}
@@ -0,0 +1,105 @@
+package com.auth.oauth_server.service;
+
+import com.auth.oauth_server.entity.Client;
+import com.auth.oauth_server.repository.ClientRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * キャッシュのヒット・ミス・追い出しのメトリクスと、読み込み中の破棄で古いスナップショットが残らないことを確認する
+ */
+class ClientRegistryTests {
+
+    private ClientRepository clientRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private ClientRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        clientRepository = mock(ClientRepository.class);
+        when(clientRepository.findByClientId(anyString())).thenAnswer(invocation -> Optional.of(client(invocation.getArgument(0), "jwt")));
+        meterRegistry = new SimpleMeterRegistry();
+        registry = new ClientRegistry();
+        ReflectionTestUtils.setField(registry, "clientRepository", clientRepository);
+        ReflectionTestUtils.setField(registry, "scopeRegistry", new ScopeRegistry());
+        ReflectionTestUtils.setField(registry, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(registry, "maxSize", 2);
+        registry.registerMetrics();
+    }
+
+    private static Client client(String clientId, String tokenFormat) {
+        return new Client(clientId, "secret", "http://localhost:8080/callback", "app", "read,write", tokenFormat);
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(name).functionCounter().count();
+    }
+
+    @Test
+    void hitsMissesAndEvictionsAreExported() {
+        registry.find("client-a");
+        registry.find("client-a");
+        registry.find("client-a");
+        registry.find("client-b");
+        assertEquals(2.0, counter("oauth.client_cache.hits"));
+        assertEquals(2.0, counter("oauth.client_cache.misses"));
+        assertEquals(0.0, counter("oauth.client_cache.evictions"));
+        assertEquals(2.0, meterRegistry.get("oauth.client_cache.size").gauge().value());
+
+        registry.find("client-c"); // 上限 2 件なので 1 件追い出す
+        assertEquals(1.0, counter("oauth.client_cache.evictions"));
+        assertEquals(2.0, meterRegistry.get("oauth.client_cache.size").gauge().value());
+
+        registry.invalidateAll();
+        assertEquals(0.0, meterRegistry.get("oauth.client_cache.size").gauge().value());
+    }
+
+    @Test
+    void unknownClientIsNotCached() {
+        when(clientRepository.findByClientId("nobody")).thenReturn(Optional.empty());
+        assertFalse(registry.find("nobody").isPresent());
+        assertFalse(registry.find("nobody").isPresent());
+        assertFalse(registry.find(null).isPresent());
+        verify(clientRepository, times(2)).findByClientId("nobody");
+    }
+
+    @Test
+    void invalidateDuringLoadDoesNotLeaveTheStaleSnapshot() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(clientRepository.findByClientId("client-app"))
+                .thenAnswer(invocation -> {
+                    loading.countDown();
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                    return Optional.of(client("client-app", "jwt"));
+                })
+                .thenReturn(Optional.of(client("client-app", "reference")));
+
+        CompletableFuture<Optional<ClientRegistry.ClientSnapshot>> slow = CompletableFuture.supplyAsync(() -> registry.find("client-app"));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        registry.invalidate("client-app"); // 読み込み中に設定が変わった
+        release.countDown();
+        assertFalse(slow.get(10, TimeUnit.SECONDS).orElseThrow().referenceTokens());
+
+        // 次の参照は DB から読み直し、変更後の設定が見える
+        assertTrue(registry.find("client-app").orElseThrow().referenceTokens());
+        assertTrue(registry.find("client-app").orElseThrow().referenceTokens());
+        verify(clientRepository, times(2)).findByClientId("client-app");
+    }
+}
@@ -0,0 +1,92 @@
+package com.auth.oauth_server.service;
+
+import com.auth.oauth_server.entity.Client;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 記憶したシークレットが、誤ったシークレット・保存ハッシュの変更・ClientCacheInvalidator で使われなくなることを確認する
+ */
+class ClientSecretCacheTests {
+
+    private static final String HASH = "$2a$10$storedHashForClientApp";
+
+    private ClientSecretCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ClientSecretCache();
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+    }
+
+    @Test
+    void onlyTheRememberedSecretMatches() {
+        cache.remember("client-app", "123456", HASH);
+        assertTrue(cache.matches("client-app", "123456", HASH));
+
+        assertFalse(cache.matches("client-app", "1234567", HASH));
+        assertFalse(cache.matches("client-app", "", HASH));
+        assertFalse(cache.matches("client-app", null, HASH));
+        // シークレットはクライアント ID と結び付けて記憶する
+        assertFalse(cache.matches("other-app", "123456", HASH));
+        // 誤ったシークレットで記憶が消えたりはしない
+        assertTrue(cache.matches("client-app", "123456", HASH));
+    }
+
+    @Test
+    void changedStoredHashEvictsTheEntry() {
+        cache.remember("client-app", "123456", HASH);
+        assertFalse(cache.matches("client-app", "123456", "$2a$10$rotatedHash"));
+        // 一度ずれを見つけたら捨てるので、元のハッシュに戻しても BCrypt からやり直す
+        assertFalse(cache.matches("client-app", "123456", HASH));
+    }
+
+    @Test
+    void disabledCacheNeverMatches() {
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 0L);
+        cache.remember("client-app", "123456", HASH);
+        assertFalse(cache.matches("client-app", "123456", HASH));
+    }
+
+    @Test
+    void invalidatorEvictsOnSaveAndAgainAfterCommit() {
+        BeanFactory beanFactory = mock(BeanFactory.class);
+        when(beanFactory.getBean(ClientRegistry.class)).thenReturn(mock(ClientRegistry.class));
+        when(beanFactory.getBean(ClientSecretCache.class)).thenReturn(cache);
+        when(beanFactory.getBean(ClientCredentialsTokenCache.class)).thenReturn(mock(ClientCredentialsTokenCache.class));
+        ClientCacheInvalidator invalidator = new ClientCacheInvalidator();
+        invalidator.setBeanFactory(beanFactory);
+        Client client = new Client("client-app", HASH, "http://localhost:8080/callback", "app", "read", null);
+
+        cache.remember("client-app", "123456", HASH);
+        cache.remember("other-app", "abcdef", HASH);
+        invalidator.onChange(client);
+        assertFalse(cache.matches("client-app", "123456", HASH));
+        assertTrue(cache.matches("other-app", "abcdef", HASH));
+
+        // トランザクション内では、コミット前に読み直された値もコミット後に捨てる
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            invalidator.onChange(client);
+            cache.remember("client-app", "123456", HASH);
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            assertEquals(1, synchronizations.size());
+            synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            assertFalse(cache.matches("client-app", "123456", HASH));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 上限での発行拒否・一度だけの消費・掃除 (ホイール 1 周より長い有効期間を含む)・PKCE メソッドの格納を確認する
+ */
+class InMemoryAuthorizationCodeStoreTests {
+
+    private final AtomicLong millis = new AtomicLong(1_700_000_000_000L);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private InMemoryAuthorizationCodeStore store(int capacity, long ttlSeconds) {
+        InMemoryAuthorizationCodeStore store = new InMemoryAuthorizationCodeStore(meterRegistry, capacity, ttlSeconds, millis::get);
+        store.registerMetrics();
+        return store;
+    }
+
+    private String create(InMemoryAuthorizationCodeStore store, String method) {
+        return store.create("alice", "client-app", "read", "challenge", method, "http://localhost:8080/callback");
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(name).functionCounter().count();
+    }
+
+    @Test
+    void rejectsNewCodesAtCapacity() {
+        InMemoryAuthorizationCodeStore store = store(2, 600);
+        String first = create(store, null);
+        assertNotNull(create(store, null));
+        assertNull(create(store, null));
+        assertEquals(2, store.size());
+        assertEquals(1.0, counter("oauth.codes.rejected"));
+
+        // 消費すれば空きができる
+        assertNotNull(store.consume(first));
+        assertNotNull(create(store, null));
+    }
+
+    @Test
+    void codeIsConsumedOnlyOnce() {
+        InMemoryAuthorizationCodeStore store = store(10, 600);
+        String code = create(store, "S256");
+        AuthService.AuthCodeData data = store.consume(code);
+        assertNotNull(data);
+        assertEquals("alice", data.username());
+        assertEquals("client-app", data.clientId());
+        assertEquals("read", data.scope());
+        assertEquals("challenge", data.codeChallenge());
+        assertEquals("http://localhost:8080/callback", data.redirectUri());
+        assertEquals(millis.get() + 600_000, data.expiresAt());
+
+        assertNull(store.consume(code));
+        assertNull(store.consume(null));
+        assertNull(store.consume("not-a-code"));
+        assertNull(store.consume("00000000-0000-0000-0000-000000000000"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void expiredCodeIsRejectedAndSwept() {
+        InMemoryAuthorizationCodeStore store = store(10, 10);
+        String consumedLate = create(store, null);
+        create(store, null);
+        millis.addAndGet(10_001);
+        // 掃除前でも期限切れは消費できない (数からは外れる)
+        assertNull(store.consume(consumedLate));
+        assertEquals(1, store.size());
+
+        millis.addAndGet(5_000); // 有効期限のスロットを過ぎるまで進める
+        store.sweep();
+        assertEquals(0, store.size());
+        assertEquals(1.0, counter("oauth.codes.swept"));
+    }
+
+    @Test
+    void ttlLongerThanTheWheelIsRecheckedOnTheNextTurn() {
+        // ホイール 1 周は 128 x 5 秒 = 640 秒
+        InMemoryAuthorizationCodeStore store = store(10, 1_000);
+        String kept = create(store, null);
+        String swept = create(store, null);
+
+        for (int i = 0; i < 700 / 5; i++) { // 1 周以上進めても、まだ有効なコードは消さない
+            millis.addAndGet(5_000);
+            store.sweep();
+        }
+        assertEquals(2, store.size());
+        assertNotNull(store.consume(kept));
+
+        for (int i = 0; i < 310 / 5; i++) {
+            millis.addAndGet(5_000);
+            store.sweep();
+        }
+        assertEquals(0, store.size());
+        assertNull(store.consume(swept));
+        assertEquals(1.0, counter("oauth.codes.swept"));
+    }
+
+    @Test
+    void pkceMethodIsPackedWithTheExpiry() {
+        InMemoryAuthorizationCodeStore store = store(10, 600);
+        long expiresAt = millis.get() + 600_000;
+        String[][] cases = {
+                {null, null}, {"", null}, {" ", null},
+                {"plain", "plain"}, {"PLAIN", "plain"},
+                {"S256", "S256"}, {"s256", "S256"},
+                {"RS512", "unknown"},
+        };
+        for (String[] c : cases) {
+            AuthService.AuthCodeData data = store.consume(create(store, c[0]));
+            assertEquals(c[1], data.codeChallengeMethod(), "method=" + c[0]);
+            assertEquals(expiresAt, data.expiresAt());
+        }
+    }
+}
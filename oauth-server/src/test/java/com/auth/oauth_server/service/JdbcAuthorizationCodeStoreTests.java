@@ -0,0 +1,111 @@
+package com.auth.oauth_server.service;
+
+import com.auth.oauth_server.OauthServerApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 2 つのアプリケーションコンテキスト (= 2 ノード) が同じ DB を共有した状態で、
+ * 各認可コードが競合下でもちょうど 1 回だけ交換されることを確認する
+ */
+class JdbcAuthorizationCodeStoreTests {
+
+    private static final int CODES = 200;
+    private static final int ATTEMPTS_PER_NODE = 4;
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void startNodes() {
+        nodeA = startNode();
+        nodeB = startNode();
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        nodeB.close();
+        nodeA.close();
+    }
+
+    private static ConfigurableApplicationContext startNode() {
+        return new SpringApplicationBuilder(OauthServerApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:shared-codes;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.hibernate.ddl-auto=update", // 後から起動したノードが表を作り直さないように
+                        "--oauth.code-store.type=jdbc");
+    }
+
+    @Test
+    void eachCodeIsRedeemedExactlyOnceAcrossNodes() throws Exception {
+        AuthorizationCodeStore storeA = nodeA.getBean(AuthorizationCodeStore.class);
+        AuthorizationCodeStore storeB = nodeB.getBean(AuthorizationCodeStore.class);
+        assertInstanceOf(JdbcAuthorizationCodeStore.class, storeA);
+
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < CODES; i++) {
+            AuthorizationCodeStore issuer = i % 2 == 0 ? storeA : storeB;
+            codes.add(issuer.create("admin", "client-app", "read", null, null, "http://localhost:8080/callback"));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(ATTEMPTS_PER_NODE * 2);
+        try {
+            for (String code : codes) {
+                AtomicInteger redeemed = new AtomicInteger();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> attempts = new ArrayList<>();
+                for (int i = 0; i < ATTEMPTS_PER_NODE * 2; i++) {
+                    AuthorizationCodeStore store = i % 2 == 0 ? storeA : storeB;
+                    attempts.add(pool.submit(() -> {
+                        start.await();
+                        if (store.consume(code) != null) {
+                            redeemed.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> attempt : attempts) {
+                    attempt.get();
+                }
+                assertEquals(1, redeemed.get(), "コード " + code + " の交換回数");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(0, storeA.size());
+        assertEquals(0, storeB.size());
+    }
+
+    @Test
+    void codeIssuedOnOneNodeCanBeRedeemedOnTheOther() {
+        AuthorizationCodeStore storeA = nodeA.getBean(AuthorizationCodeStore.class);
+        AuthorizationCodeStore storeB = nodeB.getBean(AuthorizationCodeStore.class);
+
+        String code = storeA.create("admin", "client-app", "read", "challenge", "S256", "http://localhost:8080/callback");
+        AuthService.AuthCodeData data = storeB.consume(code);
+        assertNotNull(data);
+        assertEquals("admin", data.username());
+        assertEquals("S256", data.codeChallengeMethod());
+        assertNull(storeA.consume(code));
+    }
+}
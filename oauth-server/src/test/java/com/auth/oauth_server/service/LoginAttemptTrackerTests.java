@@ -0,0 +1,163 @@
+package com.auth.oauth_server.service;
+
+import com.auth.oauth_server.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 連続失敗によるロック・期限切れでの解除・成功時のリセットと、DB へ書き出す内容を確認する
+ */
+class LoginAttemptTrackerTests {
+
+    private LoginAttemptTracker tracker;
+    // batchUpdate に渡された行 (failed_attempts, lock_time, username)
+    private final List<Object[]> written = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        doAnswer(invocation -> {
+            List<Object[]> rows = invocation.getArgument(1);
+            written.addAll(rows);
+            return new int[rows.size()];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyList());
+        tracker = new LoginAttemptTracker();
+        ReflectionTestUtils.setField(tracker, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(tracker, "meterRegistry", new SimpleMeterRegistry());
+        tracker.registerMetrics();
+    }
+
+    private Object[] rowFor(String username) {
+        Object[] found = null;
+        for (Object[] row : written) {
+            if (username.equals(row[2])) {
+                found = row;
+            }
+        }
+        return found;
+    }
+
+    @Test
+    void locksAfterMaxFailuresAndFlushesImmediately() {
+        User user = new User("alice", "hash");
+        for (int i = 1; i < LoginAttemptTracker.MAX_FAILED_ATTEMPTS; i++) {
+            assertFalse(tracker.recordFailure(user));
+            assertFalse(tracker.isLocked(user));
+        }
+        assertTrue(written.isEmpty()); // ロックまでは定期書き出しを待つ
+
+        long before = System.currentTimeMillis();
+        assertTrue(tracker.recordFailure(user));
+        assertTrue(tracker.isLocked(user));
+        assertFalse(tracker.recordFailure(user)); // ロック中の失敗は新たなロックではない
+
+        Object[] row = rowFor("alice");
+        assertNotNull(row);
+        assertEquals(LoginAttemptTracker.MAX_FAILED_ATTEMPTS, row[0]);
+        long lockUntil = ((Timestamp) row[1]).getTime();
+        assertTrue(lockUntil >= before + LoginAttemptTracker.LOCK_MILLIS);
+    }
+
+    @Test
+    void inMemoryCheckSeesLockWithoutDatabase() {
+        User user = new User("dave", "hash");
+        assertFalse(tracker.isLockedInMemory("dave"));
+        for (int i = 0; i < LoginAttemptTracker.MAX_FAILED_ATTEMPTS; i++) {
+            tracker.recordFailure(user);
+        }
+        assertTrue(tracker.isLockedInMemory("dave"));
+        assertFalse(tracker.isLockedInMemory("nobody"));
+    }
+
+    @Test
+    void expiredLockIsReleasedAndCountersReset() {
+        User user = new User("bob", "hash");
+        user.setFailedAttempts(LoginAttemptTracker.MAX_FAILED_ATTEMPTS);
+        user.setLockTime(LocalDateTime.now().minusMinutes(1)); // DB 上はロック済みだが期限切れ
+
+        assertFalse(tracker.isLocked(user));
+        tracker.flush();
+        Object[] row = rowFor("bob");
+        assertNotNull(row);
+        assertEquals(0, row[0]);
+        assertNull(row[1]);
+
+        // リセット後は 1 回の失敗ではロックされない
+        assertFalse(tracker.recordFailure(user));
+        assertFalse(tracker.isLocked(user));
+    }
+
+    @Test
+    void lockedUserFromDatabaseStaysLocked() {
+        User user = new User("carol", "hash");
+        user.setFailedAttempts(LoginAttemptTracker.MAX_FAILED_ATTEMPTS);
+        user.setLockTime(LocalDateTime.now().plusMinutes(10));
+        assertTrue(tracker.isLocked(user));
+        tracker.recordSuccess(user); // ロック中の成功ではロックを解除しない
+        assertTrue(tracker.isLocked(user));
+    }
+
+    @Test
+    void successResetsFailures() {
+        User user = new User("dave", "hash");
+        for (int i = 1; i < LoginAttemptTracker.MAX_FAILED_ATTEMPTS; i++) {
+            tracker.recordFailure(user);
+        }
+        tracker.recordSuccess(user);
+        tracker.flush();
+        assertEquals(0, rowFor("dave")[0]);
+
+        // 数え直しになるので、上限 - 1 回の失敗ではロックされない
+        for (int i = 1; i < LoginAttemptTracker.MAX_FAILED_ATTEMPTS; i++) {
+            assertFalse(tracker.recordFailure(user));
+        }
+        assertFalse(tracker.isLocked(user));
+    }
+
+    @Test
+    void successWithoutHistoryWritesNothing() {
+        User user = new User("erin", "hash");
+        tracker.recordSuccess(user);
+        assertFalse(tracker.isLocked(user));
+        tracker.flush();
+        assertTrue(written.isEmpty());
+    }
+
+    @Test
+    void flushWritesPendingFailureCounts() {
+        User first = new User("frank", "hash");
+        User second = new User("grace", "hash");
+        tracker.recordFailure(first);
+        tracker.recordFailure(first);
+        tracker.recordFailure(second);
+        tracker.flush();
+
+        assertEquals(2, written.size());
+        assertEquals(2, rowFor("frank")[0]);
+        assertNull(rowFor("frank")[1]);
+        assertEquals(1, rowFor("grace")[0]);
+
+        // 変更がなければ次の書き出しでは何も書かない
+        written.clear();
+        tracker.flush();
+        assertTrue(written.isEmpty());
+    }
+}
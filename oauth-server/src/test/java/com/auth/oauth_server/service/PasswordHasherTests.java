@@ -0,0 +1,90 @@
+package com.auth.oauth_server.service;
+
+import com.auth.oauth_server.controller.BusyExceptionHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 待ち行列が満杯のときに BusyException で即座に断り、それが 503 + Retry-After になることを確認する
+ */
+class PasswordHasherTests {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private PasswordHasher hasher;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        hasher.shutdown();
+    }
+
+    private PasswordHasher hasher(int threads, int queueCapacity) {
+        PasswordEncoder encoder = mock(PasswordEncoder.class);
+        when(encoder.matches(any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        PasswordHasher hasher = new PasswordHasher();
+        ReflectionTestUtils.setField(hasher, "passwordEncoder", encoder);
+        ReflectionTestUtils.setField(hasher, "meterRegistry", registry);
+        ReflectionTestUtils.setField(hasher, "threads", threads);
+        ReflectionTestUtils.setField(hasher, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(hasher, "strength", 10);
+        hasher.init();
+        return hasher;
+    }
+
+    @Test
+    void fullQueueIsRejectedImmediatelyAsServiceUnavailable() throws Exception {
+        hasher = hasher(1, 1);
+        // 1 件目が専用スレッドを占有し、2 件目が待ち行列を埋める
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> hasher.matches("pw", "hash"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> hasher.matches("pw", "hash"));
+        while (registry.get("oauth.password.hash.queue").gauge().value() < 1) {
+            Thread.sleep(1);
+        }
+
+        PasswordHasher.BusyException busy = assertThrows(PasswordHasher.BusyException.class, () -> hasher.matches("pw", "hash"));
+        assertEquals(1.0, registry.get("oauth.password.hash.rejected").counter().count());
+
+        ResponseEntity<?> response = new BusyExceptionHandler().handleBusy(busy);
+        assertEquals(503, response.getStatusCode().value());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals("temporarily_unavailable", ((Map<?, ?>) response.getBody()).get("error"));
+
+        // 混雑が解ければ受け付けた分は処理される
+        release.countDown();
+        assertTrue(running.get(10, TimeUnit.SECONDS));
+        assertTrue(queued.get(10, TimeUnit.SECONDS));
+        assertTrue(hasher.matches("pw", "hash"));
+    }
+
+    @Test
+    void costIsReadFromTheStoredHash() {
+        hasher = hasher(1, 1);
+        assertTrue(hasher.needsRehash("$2a$04$abcdefghijklmnopqrstuv"));
+        assertFalse(hasher.needsRehash("$2a$10$abcdefghijklmnopqrstuv"));
+        assertFalse(hasher.needsRehash("{noop}plain"));
+    }
+}
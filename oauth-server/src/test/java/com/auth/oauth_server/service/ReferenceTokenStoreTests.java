@@ -0,0 +1,151 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 参照型トークンの発行・参照・失効と、表の探索 (末尾で折り返す探索列)・拡張・期限切れスロットの再利用・掃除を確認する
+ */
+class ReferenceTokenStoreTests {
+
+    private static final long HOUR = 3_600_000L;
+
+    private ReferenceTokenStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new ReferenceTokenStore();
+        ReflectionTestUtils.setField(store, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "capacity", 1_000_000);
+        store.registerMetrics();
+    }
+
+    @Test
+    void issueResolveAndRevoke() {
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        String handle = store.issue("alice", "read write", "client-app", expiresAt);
+        assertTrue(ReferenceTokenStore.isHandle(handle));
+
+        JwtService.VerifiedToken token = store.resolve(handle);
+        assertNotNull(token);
+        assertEquals("alice", token.subject());
+        assertEquals("read write", token.scope());
+        assertEquals("client-app", token.audience());
+        assertEquals(expiresAt, token.expiresAt());
+        assertNull(token.jti());
+
+        assertTrue(store.revoke(handle));
+        assertNull(store.resolve(handle));
+        assertFalse(store.revoke(handle));
+        assertEquals(0, store.size());
+
+        assertNull(store.resolve("not-a-handle"));
+        assertNull(store.resolve("!!!!!!!!!!!!!!!!!!!!!!"));
+        assertFalse(store.revoke(null));
+    }
+
+    @Test
+    void returnsNullWhenFull() {
+        ReflectionTestUtils.setField(store, "capacity", 2);
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        assertNotNull(store.issue("a", "read", "c", expiresAt));
+        assertNotNull(store.issue("b", "read", "c", expiresAt));
+        assertNull(store.issue("c", "read", "c", expiresAt));
+    }
+
+    @Test
+    void deleteCompactsProbeChainThatWrapsAround() {
+        ReferenceTokenStore.Table table = new ReferenceTokenStore.Table(8);
+        long now = System.currentTimeMillis();
+        long expiresAt = now + HOUR;
+        // 6, 14, 22 は本来の位置が 6、7 は本来の位置が 7 (22 と 7 は末尾から 0, 1 に折り返す)
+        for (long h : new long[]{6, 14, 22, 7}) {
+            assertTrue(table.put(h, h, expiresAt, (int) h, 0, 0, now));
+        }
+        assertEquals(6, table.find(6, 6));
+        assertEquals(7, table.find(14, 14));
+        assertEquals(0, table.find(22, 22));
+        assertEquals(1, table.find(7, 7));
+
+        // 折り返した後ろの要素が穴に詰められ、墓標は残らない
+        table.delete(table.find(14, 14));
+        assertEquals(-1, table.find(14, 14));
+        assertEquals(7, table.find(22, 22));
+        assertEquals(0, table.find(7, 7));
+        assertEquals(0, table.expires[1]);
+
+        table.delete(table.find(6, 6));
+        assertEquals(6, table.find(22, 22));
+        assertEquals(7, table.find(7, 7));
+        long[] claims = new long[2];
+        assertEquals(expiresAt, table.get(22, 22, claims));
+        assertEquals(22, claims[0]);
+        assertEquals(0, table.get(6, 6, claims));
+    }
+
+    @Test
+    void expiredSlotIsReusedWithoutGrowingTheCount() {
+        ReferenceTokenStore.Table table = new ReferenceTokenStore.Table(8);
+        long now = System.currentTimeMillis();
+        assertTrue(table.put(3, 3, now + 10, 1, 0, 0, now));
+        assertTrue(table.put(11, 11, now + HOUR, 2, 0, 0, now)); // 3 の後ろに並ぶ
+        // 3 の期限が過ぎた後の発行は、期限切れのスロット 3 を上書きする (使用数は増えない)
+        assertFalse(table.put(19, 19, now + HOUR, 3, 0, 0, now + 10));
+        assertEquals(3, table.find(19, 19));
+        assertEquals(-1, table.find(3, 3));
+        assertEquals(4, table.find(11, 11));
+    }
+
+    @Test
+    void resizeKeepsEveryHandleResolvable() {
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        // シャード 16 個 x 初期 1024 スロットの半分を超えるので、すべてのシャードが拡張される
+        List<String> handles = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            handles.add(store.issue("user" + (i % 100), "read", "client-app", expiresAt));
+        }
+        assertEquals(20_000, store.size());
+        for (int i = 0; i < handles.size(); i++) {
+            JwtService.VerifiedToken token = store.resolve(handles.get(i));
+            assertNotNull(token, "handle " + i);
+            assertEquals("user" + (i % 100), token.subject());
+        }
+        // 半分を失効させても残りは引ける (後方シフト削除で探索列が切れない)
+        for (int i = 0; i < handles.size(); i += 2) {
+            assertTrue(store.revoke(handles.get(i)));
+        }
+        for (int i = 1; i < handles.size(); i += 2) {
+            assertNotNull(store.resolve(handles.get(i)), "handle " + i);
+        }
+        assertEquals(10_000, store.size());
+    }
+
+    @Test
+    void sweepRemovesOnlyExpiredTokens() {
+        long now = System.currentTimeMillis();
+        List<String> live = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            store.issue("expired", "read", "client-app", now - 1);
+            live.add(store.issue("alice", "read", "client-app", now + HOUR));
+        }
+        for (String handle : live) {
+            assertNotNull(store.resolve(handle));
+        }
+        store.sweep();
+        assertEquals(live.size(), store.size());
+        for (String handle : live) {
+            assertNotNull(store.resolve(handle));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * ローテーション・再利用検知・上限到達・掃除 (解放とスロットの再利用) を確認する
+ */
+class RefreshTokenStoreTests {
+
+    private static RefreshTokenStore store(int capacity, long ttlSeconds, long reuseDetectionSeconds) {
+        RefreshTokenStore store = new RefreshTokenStore();
+        ReflectionTestUtils.setField(store, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "capacity", capacity);
+        ReflectionTestUtils.setField(store, "ttlSeconds", ttlSeconds);
+        ReflectionTestUtils.setField(store, "reuseDetectionSeconds", reuseDetectionSeconds);
+        store.init();
+        return store;
+    }
+
+    @Test
+    void rotationIssuesANewTokenOfTheSameGrant() {
+        RefreshTokenStore store = store(100, 3600, 3600);
+        String first = store.issue("alice", "client-app", "read write");
+
+        RefreshTokenStore.Rotation rotation = store.rotate(first, "client-app");
+        assertNotNull(rotation);
+        assertEquals("alice", rotation.username());
+        assertEquals("read write", rotation.scope());
+        assertNotNull(rotation.refreshToken());
+        assertNotEquals(first, rotation.refreshToken());
+
+        assertNotNull(store.rotate(rotation.refreshToken(), "client-app"));
+    }
+
+    @Test
+    void otherClientOrUnknownTokenIsRejectedWithoutConsumingIt() {
+        RefreshTokenStore store = store(100, 3600, 3600);
+        String token = store.issue("alice", "client-app", "read");
+        assertNull(store.rotate(token, "other-app"));
+        assertNull(store.rotate("unknown", "client-app"));
+        assertNull(store.rotate(null, "client-app"));
+        assertNotNull(store.rotate(token, "client-app"));
+    }
+
+    @Test
+    void reusedTokenRevokesTheWholeFamily() {
+        RefreshTokenStore store = store(100, 3600, 3600);
+        String first = store.issue("alice", "client-app", "read");
+        String second = store.rotate(first, "client-app").refreshToken();
+
+        assertNull(store.rotate(first, "client-app")); // 使用済みの再提示
+        assertNull(store.rotate(second, "client-app")); // 系列全体が失効している
+
+        // 別の系列には影響しない
+        String other = store.issue("bob", "client-app", "read");
+        assertNotNull(store.rotate(other, "client-app"));
+    }
+
+    @Test
+    void concurrentRotationLetsOnlyOneRequestThrough() throws Exception {
+        RefreshTokenStore store = store(100, 3600, 3600);
+        String token = store.issue("alice", "client-app", "read");
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<RefreshTokenStore.Rotation>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return store.rotate(token, "client-app");
+                }));
+            }
+            start.countDown();
+            int succeeded = 0;
+            for (Future<RefreshTokenStore.Rotation> future : futures) {
+                if (future.get() != null) {
+                    succeeded++;
+                }
+            }
+            assertEquals(1, succeeded);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void exhaustionDoesNotConsumeTheOldToken() {
+        RefreshTokenStore store = store(2, 3600, 0);
+        String first = store.issue("alice", "client-app", "read");
+        String second = store.rotate(first, "client-app").refreshToken(); // 2 スロットとも使用中
+
+        assertNull(store.issue("bob", "client-app", "read"));
+        assertThrows(RefreshTokenStore.CapacityExceededException.class, () -> store.rotate(second, "client-app"));
+        assertThrows(RefreshTokenStore.CapacityExceededException.class, () -> store.rotate(second, "client-app"));
+
+        // 使用済みレコード (検知期間 0) を掃除で解放すれば、同じトークンでローテーションできる
+        store.sweep();
+        assertEquals(1, store.size());
+        RefreshTokenStore.Rotation rotation = store.rotate(second, "client-app");
+        assertNotNull(rotation);
+        assertNotNull(rotation.refreshToken());
+    }
+
+    @Test
+    void usedRecordsAreFreedAfterTheReuseWindow() {
+        RefreshTokenStore store = store(4, 3600, 0);
+        String token = store.issue("alice", "client-app", "read");
+        // 上限 4 でも、掃除を挟めば何度でもローテーションできる
+        for (int i = 0; i < 100; i++) {
+            token = store.rotate(token, "client-app").refreshToken();
+            store.sweep();
+            assertEquals(1, store.size());
+        }
+        assertNotNull(store.rotate(token, "client-app"));
+    }
+
+    @Test
+    void usedRecordsAreKeptWithinTheReuseWindow() {
+        RefreshTokenStore store = store(100, 3600, 3600);
+        String first = store.issue("alice", "client-app", "read");
+        String second = store.rotate(first, "client-app").refreshToken();
+        store.sweep();
+        assertEquals(2, store.size());
+        assertNull(store.rotate(first, "client-app"));
+        assertNull(store.rotate(second, "client-app"));
+    }
+
+    @Test
+    void sweepFreesExpiredTokensAndReusesTheirSlots() throws Exception {
+        RefreshTokenStore store = store(1, 0, 0); // 発行した時点で期限切れ
+        String expired = store.issue("alice", "client-app", "read");
+        Thread.sleep(2);
+        assertNull(store.rotate(expired, "client-app"));
+
+        store.sweep();
+        assertEquals(0, store.size());
+        assertNull(store.rotate(expired, "client-app"));
+
+        // 解放されたスロットに新しいトークンが入り、古いトークンでは引けない
+        ReflectionTestUtils.setField(store, "ttlSeconds", 3600L);
+        String fresh = store.issue("bob", "client-app", "write");
+        assertNotNull(fresh);
+        assertNull(store.rotate(expired, "client-app"));
+        assertThrows(RefreshTokenStore.CapacityExceededException.class, () -> store.rotate(fresh, "client-app"));
+        store.sweep();
+        assertEquals(1, store.size()); // 有効なトークンは掃除されない
+    }
+}
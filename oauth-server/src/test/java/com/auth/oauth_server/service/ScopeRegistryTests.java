@@ -0,0 +1,111 @@
+package com.auth.oauth_server.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * スコープのマスク化 (parse / format / split) と、63 個を超えた名前の UNRESOLVED での扱いを確認する
+ */
+class ScopeRegistryTests {
+
+    private final ScopeRegistry registry = new ScopeRegistry();
+
+    @Test
+    void splitAcceptsSpacesAndCommasAndDropsDuplicates() {
+        assertEquals(List.of("read", "write", "admin"), new ArrayList<>(ScopeRegistry.split(" read,write  read ,admin,")));
+        assertTrue(ScopeRegistry.split("").isEmpty());
+        assertTrue(ScopeRegistry.split(", ,").isEmpty());
+    }
+
+    @Test
+    void parseAndFormatRoundTripInBitOrder() {
+        long allowed = registry.register(List.of("read", "write", "admin"));
+        long requested = registry.parse("admin read");
+        assertEquals(0, requested & ScopeRegistry.UNRESOLVED);
+        assertTrue(ScopeRegistry.contains(allowed, requested));
+        assertEquals("read admin", registry.format(requested)); // 登録順 (ビット順) に正規化
+        assertEquals(requested, registry.parse("read,admin"));
+        assertEquals(0, registry.parse(null));
+        assertEquals(0, registry.parse(" , "));
+        assertEquals("", registry.format(0));
+    }
+
+    @Test
+    void unknownNamesAreUnresolvedAndNotCached() {
+        registry.register(List.of("read"));
+        long mask = registry.parse("read profile");
+        assertNotEquals(0, mask & ScopeRegistry.UNRESOLVED);
+        assertFalse(ScopeRegistry.contains(registry.register(List.of("read")), mask));
+
+        // 後から登録されれば同じ文字列でも解決される
+        registry.register(List.of("profile"));
+        assertEquals(0, registry.parse("read profile") & ScopeRegistry.UNRESOLVED);
+    }
+
+    @Test
+    void namesBeyond63BitsFallBackToUnresolved() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 63; i++) {
+            names.add("scope-" + i);
+        }
+        long all = registry.register(names);
+        assertEquals(0, all & ScopeRegistry.UNRESOLVED);
+        assertEquals(63, Long.bitCount(all));
+
+        long overflow = registry.register(List.of("scope-63", "scope-0"));
+        assertNotEquals(0, overflow & ScopeRegistry.UNRESOLVED);
+        assertNotEquals(0, registry.parse("scope-63") & ScopeRegistry.UNRESOLVED);
+        // 既存の割り当ては変わらない
+        assertEquals("scope-0 scope-62", registry.format(registry.parse("scope-62 scope-0")));
+    }
+
+    @Test
+    void grantFallsBackToNameComparisonForUnresolvedScopes() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            names.add("scope-" + i);
+        }
+        registry.register(names); // scope-63 だけがビットを持たない
+        AuthService authService = authService(Set.copyOf(names));
+        assertEquals("scope-63 scope-1", authService.grantScope("client-app", "scope-63,scope-1"));
+        assertNull(authService.grantScope("client-app", "scope-63 unknown"));
+        assertEquals("scope-63", authService.narrowScope("scope-1 scope-63", "scope-63"));
+        assertNull(authService.narrowScope("scope-1", "scope-63"));
+    }
+
+    @Test
+    void emptyParsedScopeIsRejected() {
+        registry.register(List.of("read", "write")); // ビット順を固定する
+        AuthService authService = authService(Set.of("read", "write"));
+        assertEquals("read write", authService.grantScope("client-app", "write read"));
+        assertNull(authService.grantScope("client-app", ","));
+        assertNull(authService.grantScope("client-app", " , "));
+        assertEquals("read", authService.narrowScope("read write", "read"));
+        assertNull(authService.narrowScope("read write", ",,"));
+    }
+
+    private AuthService authService(Set<String> clientScopes) {
+        ClientRegistry.ClientSnapshot client = new ClientRegistry.ClientSnapshot("client-app", "secret", "app",
+                "http://localhost/callback", clientScopes, registry.register(clientScopes), false);
+        ClientRegistry clientRegistry = mock(ClientRegistry.class);
+        when(clientRegistry.find("client-app")).thenReturn(Optional.of(client));
+        AuthService authService = new AuthService();
+        ReflectionTestUtils.setField(authService, "clientRegistry", clientRegistry);
+        ReflectionTestUtils.setField(authService, "scopeRegistry", registry);
+        ReflectionTestUtils.setField(authService, "stageMetrics", mock(StageMetrics.class));
+        return authService;
+    }
+}
@@ -0,0 +1,174 @@
+package com.auth.oauth_server.service;
+
+import com.auth.oauth_server.controller.JwksController;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 鍵ローテーション (旧鍵での検証と期限後の破棄)・kid での鍵選択・JWKS の内容と ETag (304) を確認する
+ */
+class SigningKeyManagerTests {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private final AtomicLong millis = new AtomicLong(System.currentTimeMillis());
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private SigningKeyManager manager(String algorithm) {
+        SigningKeyManager manager = new SigningKeyManager();
+        ReflectionTestUtils.setField(manager, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(manager, "algorithmName", algorithm);
+        ReflectionTestUtils.setField(manager, "codeStoreType", "memory");
+        ReflectionTestUtils.setField(manager, "secretKeyString", "test-secret-key-that-is-long-enough-for-hs256!!");
+        ReflectionTestUtils.setField(manager, "rotationIntervalSeconds", DAY / 1000);
+        ReflectionTestUtils.setField(manager, "clock", (LongSupplier) millis::get);
+        manager.init();
+        return manager;
+    }
+
+    private static String sign(SigningKeyManager.SigningKey key) {
+        return Jwts.builder()
+                .setHeaderParam("kid", key.kid())
+                .setSubject("alice")
+                .setExpiration(new Date(System.currentTimeMillis() + JwtService.EXPIRATION_TIME))
+                .signWith(key.signingKey(), key.algorithm())
+                .compact();
+    }
+
+    private List<String> jwksKids(SigningKeyManager manager) throws IOException {
+        List<String> kids = new ArrayList<>();
+        for (JsonNode key : objectMapper.readTree(manager.jwks().payload()).get("keys")) {
+            kids.add(key.get("kid").asText());
+        }
+        return kids;
+    }
+
+    @Test
+    void jwksListsCurrentAndNextKeys() throws IOException {
+        SigningKeyManager manager = manager("ES256");
+        String current = manager.current().kid();
+        List<String> kids = jwksKids(manager);
+        assertEquals(2, kids.size());
+        assertEquals(current, kids.get(0));
+        String next = kids.get(1);
+        assertNotEquals(current, next);
+        assertNotNull(manager.parser(next));
+
+        // ローテーションで next が current になり、事前に公開していた鍵で署名が始まる
+        millis.addAndGet(DAY);
+        manager.rotateIfDue();
+        assertEquals(next, manager.current().kid());
+        assertTrue(jwksKids(manager).containsAll(List.of(current, next)));
+        assertEquals(3, jwksKids(manager).size());
+    }
+
+    @Test
+    void tokenSignedBeforeRotationStillVerifiesUntilTheKeyRetires() throws IOException {
+        SigningKeyManager manager = manager("ES256");
+        SigningKeyManager.SigningKey old = manager.current();
+        String token = sign(old);
+
+        millis.addAndGet(DAY);
+        manager.rotateIfDue();
+        assertNotEquals(old.kid(), manager.current().kid());
+        assertEquals("alice", manager.parser(old.kid()).parseClaimsJws(token).getBody().getSubject());
+
+        // トークンの有効期間 + 時計のずれ分までは残す
+        millis.addAndGet(JwtService.EXPIRATION_TIME);
+        manager.rotateIfDue();
+        assertNotNull(manager.parser(old.kid()));
+
+        millis.addAndGet(5 * 60 * 1000 + 1);
+        manager.rotateIfDue();
+        assertNull(manager.parser(old.kid()));
+        assertFalse(jwksKids(manager).contains(old.kid()));
+        assertNull(manager.parser("unknown-kid"));
+        assertNull(manager.parser(null)); // 非対称鍵では kid なしのトークンを受け付けない
+    }
+
+    @Test
+    void ecJwkUsesFixedLengthCoordinates() throws IOException {
+        SigningKeyManager manager = manager("ES256");
+        JsonNode jwk = objectMapper.readTree(manager.jwks().payload()).get("keys").get(0);
+        assertEquals("EC", jwk.get("kty").asText());
+        assertEquals("P-256", jwk.get("crv").asText());
+        assertEquals("ES256", jwk.get("alg").asText());
+        assertEquals("sig", jwk.get("use").asText());
+        assertEquals(32, Base64.getUrlDecoder().decode(jwk.get("x").asText()).length);
+        assertEquals(32, Base64.getUrlDecoder().decode(jwk.get("y").asText()).length);
+    }
+
+    @Test
+    void rsaJwkHasUnsignedModulus() throws IOException {
+        SigningKeyManager manager = manager("RS256");
+        JsonNode jwk = objectMapper.readTree(manager.jwks().payload()).get("keys").get(0);
+        assertEquals("RSA", jwk.get("kty").asText());
+        assertEquals("AQAB", jwk.get("e").asText());
+        byte[] modulus = Base64.getUrlDecoder().decode(jwk.get("n").asText());
+        assertEquals(256, modulus.length); // 符号用の 0 バイトを含まない
+        assertTrue((modulus[0] & 0x80) != 0);
+    }
+
+    @Test
+    void hmacUsesOneKeyAndPublishesNothing() throws IOException {
+        SigningKeyManager manager = manager("HS256");
+        assertEquals("hs256", manager.current().kid());
+        assertTrue(jwksKids(manager).isEmpty());
+        assertNotNull(manager.parser(null));
+        String token = sign(manager.current());
+        assertEquals("alice", manager.parser("hs256").parseClaimsJws(token).getBody().getSubject());
+
+        String etag = manager.jwks().etag();
+        millis.addAndGet(DAY);
+        manager.rotateIfDue(); // HS256 はローテーションしない
+        assertEquals(etag, manager.jwks().etag());
+    }
+
+    @Test
+    void jwksEndpointAnswersNotModifiedForMatchingEtag() {
+        SigningKeyManager manager = manager("ES256");
+        JwksController controller = new JwksController();
+        ReflectionTestUtils.setField(controller, "signingKeyManager", manager);
+        ReflectionTestUtils.setField(controller, "maxAgeSeconds", 300L);
+
+        ResponseEntity<byte[]> first = controller.jwks(null);
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        String etag = first.getHeaders().getETag();
+        assertEquals(manager.jwks().etag(), etag);
+        assertArrayEquals(manager.jwks().payload(), first.getBody());
+        assertEquals("max-age=300, public", first.getHeaders().getCacheControl());
+
+        ResponseEntity<byte[]> cached = controller.jwks(etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, cached.getStatusCode());
+        assertNull(cached.getBody());
+        assertEquals(etag, cached.getHeaders().getETag());
+
+        // ローテーション後は ETag が変わり、古い ETag では本文が返る
+        millis.addAndGet(DAY);
+        manager.rotateIfDue();
+        ResponseEntity<byte[]> rotated = controller.jwks(etag);
+        assertEquals(HttpStatus.OK, rotated.getStatusCode());
+        assertNotEquals(etag, rotated.getHeaders().getETag());
+    }
+}
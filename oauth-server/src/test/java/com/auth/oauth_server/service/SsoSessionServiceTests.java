@@ -0,0 +1,125 @@
+package com.auth.oauth_server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cookie の HMAC 検証・無操作期限と最長期限・セッション数の上限・ログアウトを確認する
+ */
+class SsoSessionServiceTests {
+
+    private SsoSessionService service;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new SsoSessionService();
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "idleTimeoutSeconds", 1800L);
+        ReflectionTestUtils.setField(service, "maxAgeSeconds", 28800L);
+        ReflectionTestUtils.setField(service, "maxSessions", 100000);
+        service.registerMetrics();
+    }
+
+    private Map<?, ?> sessions() {
+        return (Map<?, ?>) ReflectionTestUtils.getField(service, "sessions");
+    }
+
+    @Test
+    void resolvesOwnCookieAndRejectsForgedMac() {
+        String cookie = service.create("alice");
+        assertNotNull(cookie);
+        assertEquals("alice", service.resolve(cookie));
+
+        // セッション ID は本物のまま MAC だけ差し替える
+        String id = cookie.substring(0, cookie.indexOf('.'));
+        char last = cookie.charAt(cookie.length() - 2);
+        String tampered = cookie.substring(0, cookie.length() - 2) + (last == 'A' ? 'B' : 'A') + cookie.charAt(cookie.length() - 1);
+        assertNull(service.resolve(tampered));
+        assertNull(service.resolve(id + ".AAAAAAAAAAAAAAAAAAAAAA"));
+
+        // 別インスタンス (別の HMAC 鍵) が作った Cookie も通らない
+        SsoSessionService other = new SsoSessionService();
+        ReflectionTestUtils.setField(other, "idleTimeoutSeconds", 1800L);
+        ReflectionTestUtils.setField(other, "maxAgeSeconds", 28800L);
+        ReflectionTestUtils.setField(other, "maxSessions", 100000);
+        assertNull(service.resolve(other.create("mallory")));
+
+        // 長さや区切りが違うものは表を引く前に弾く
+        assertNull(service.resolve(null));
+        assertNull(service.resolve(cookie + "A"));
+        assertNull(service.resolve(cookie.replace('.', '-')));
+        assertNull(service.resolve(id + ".!!!!!!!!!!!!!!!!!!!!!!"));
+        assertEquals("alice", service.resolve(cookie));
+    }
+
+    @Test
+    void idleTimeoutExpiresSession() {
+        ReflectionTestUtils.setField(service, "idleTimeoutSeconds", 0L);
+        String cookie = service.create("alice");
+        assertNull(service.resolve(cookie));
+        assertTrue(sessions().isEmpty()); // 期限切れを見つけたら表からも消す
+    }
+
+    @Test
+    void maxAgeExpiresSessionEvenWhenRecentlyUsed() {
+        ReflectionTestUtils.setField(service, "maxAgeSeconds", 0L);
+        String cookie = service.create("alice");
+        assertNull(service.resolve(cookie));
+    }
+
+    @Test
+    void slidingIdleTimeoutNeverPassesMaxAge() {
+        ReflectionTestUtils.setField(service, "maxAgeSeconds", 60L);
+        String cookie = service.create("alice");
+        Object session = sessions().values().iterator().next();
+        long expiresAt = (long) ReflectionTestUtils.getField(session, "expiresAt");
+        // 無操作期限 (1800 秒) は最長期限 (60 秒) で頭打ちになる
+        assertEquals("alice", service.resolve(cookie));
+        assertEquals(expiresAt, (long) ReflectionTestUtils.getField(session, "idleExpiresAt"));
+    }
+
+    @Test
+    void capacityCapRejectsNewSessions() {
+        ReflectionTestUtils.setField(service, "maxSessions", 2);
+        String first = service.create("alice");
+        assertNotNull(service.create("bob"));
+        assertNull(service.create("carol"));
+        assertEquals(1.0, meterRegistry.get("oauth.sso.rejected").functionCounter().count());
+        assertEquals(2.0, meterRegistry.get("oauth.sso.sessions").gauge().value());
+
+        // ログアウトで空きができれば作れる
+        service.invalidate(first);
+        assertNotNull(service.create("carol"));
+    }
+
+    @Test
+    void logoutRemovesSession() {
+        String cookie = service.create("alice");
+        assertEquals("alice", service.invalidate(cookie));
+        assertNull(service.resolve(cookie));
+        assertNull(service.invalidate(cookie));
+        assertNull(service.invalidate(null));
+    }
+
+    @Test
+    void sweepDropsOnlyExpiredSessions() {
+        ReflectionTestUtils.setField(service, "idleTimeoutSeconds", 0L);
+        service.create("expired");
+        ReflectionTestUtils.setField(service, "idleTimeoutSeconds", 1800L);
+        String live = service.create("alice");
+        service.sweep();
+        assertEquals(1, sessions().size());
+        assertEquals("alice", service.resolve(live));
+    }
+}
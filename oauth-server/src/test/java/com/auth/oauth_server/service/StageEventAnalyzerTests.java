@@ -0,0 +1,130 @@
+package com.auth.oauth_server.service;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * StageEvents を同梱の jfr/oauth.jfc で実際に記録し、StageEventAnalyzer の段階別の件数とグループ分けを確認する
+ * (イベント名・フィールド名・設定ファイルのどれかがずれると失敗する)
+ */
+class StageEventAnalyzerTests {
+
+    private static Path recording;
+
+    @BeforeAll
+    static void record(@TempDir Path dir) throws Exception {
+        Configuration configuration;
+        try (Reader reader = new InputStreamReader(
+                StageEventAnalyzerTests.class.getResourceAsStream("/jfr/oauth.jfc"), StandardCharsets.UTF_8)) {
+            configuration = Configuration.create(reader);
+        }
+        recording = dir.resolve("oauth.jfr");
+        try (Recording jfr = new Recording(configuration)) {
+            jfr.start();
+            validate("client-a", StageEvents.OK);
+            validate("client-a", StageEvents.OK);
+            validate("client-b", "unknown_client");
+            authenticate(StageEvents.OK);
+            authenticate("bad_password");
+            authenticate("bad_password");
+            authenticate("locked");
+            parse("client-a", StageEvents.OK);
+            parse("client-a", "cached");
+            StageEvents.TokenSign sign = new StageEvents.TokenSign();
+            sign.begin();
+            sign.finish("client-a", "ES256", "kid-1");
+            jfr.stop();
+            jfr.dump(recording);
+        }
+    }
+
+    private static void validate(String clientId, String outcome) {
+        StageEvents.ClientValidation event = new StageEvents.ClientValidation();
+        event.begin();
+        event.finish(clientId, outcome);
+    }
+
+    private static void authenticate(String outcome) {
+        StageEvents.UserAuthentication event = new StageEvents.UserAuthentication();
+        event.begin();
+        event.finish(outcome, false);
+    }
+
+    private static void parse(String clientId, String outcome) {
+        StageEvents.TokenParse event = new StageEvents.TokenParse();
+        event.begin();
+        event.finish(clientId, outcome);
+    }
+
+    // 段階名 → (グループ → 件数)
+    private static Map<String, Map<String, Integer>> counts(List<StageEventAnalyzer.Row> rows) {
+        return rows.stream().collect(Collectors.groupingBy(StageEventAnalyzer.Row::stage,
+                Collectors.toMap(StageEventAnalyzer.Row::group, StageEventAnalyzer.Row::count)));
+    }
+
+    @Test
+    void countsEventsPerStage() throws Exception {
+        Map<String, Map<String, Integer>> counts = counts(StageEventAnalyzer.analyze(recording, StageEventAnalyzer.GroupBy.STAGE));
+
+        assertEquals(Map.of(
+                "ClientValidation", Map.of("", 3),
+                "UserAuthentication", Map.of("", 4),
+                "TokenParse", Map.of("", 2),
+                "TokenSign", Map.of("", 1)), counts);
+    }
+
+    @Test
+    void groupsByOutcome() throws Exception {
+        Map<String, Map<String, Integer>> counts = counts(StageEventAnalyzer.analyze(recording, StageEventAnalyzer.GroupBy.OUTCOME));
+
+        assertEquals(Map.of(StageEvents.OK, 2, "unknown_client", 1), counts.get("ClientValidation"));
+        assertEquals(Map.of(StageEvents.OK, 1, "bad_password", 2, "locked", 1), counts.get("UserAuthentication"));
+        assertEquals(Map.of(StageEvents.OK, 1, "cached", 1), counts.get("TokenParse"));
+        // outcome を持たないイベントは "-" にまとまる
+        assertEquals(Map.of("-", 1), counts.get("TokenSign"));
+    }
+
+    @Test
+    void groupsByClient() throws Exception {
+        Map<String, Map<String, Integer>> counts = counts(StageEventAnalyzer.analyze(recording, StageEventAnalyzer.GroupBy.CLIENT));
+
+        assertEquals(Map.of("client-a", 2, "client-b", 1), counts.get("ClientValidation"));
+        assertEquals(Map.of("client-a", 2), counts.get("TokenParse"));
+        assertEquals(Map.of("client-a", 1), counts.get("TokenSign"));
+        assertEquals(Map.of("-", 4), counts.get("UserAuthentication"));
+    }
+
+    @Test
+    void rowsAreSortedAndSummarized() throws Exception {
+        List<StageEventAnalyzer.Row> rows = StageEventAnalyzer.analyze(recording, StageEventAnalyzer.GroupBy.OUTCOME);
+
+        List<String> keys = rows.stream().map(row -> row.stage() + "/" + row.group()).toList();
+        assertEquals(keys.stream().sorted().toList(), keys);
+        for (StageEventAnalyzer.Row row : rows) {
+            assertTrue(row.p50() <= row.p90() && row.p90() <= row.p99() && row.p99() <= row.max(), row.toString());
+            assertTrue(row.totalNanos() >= row.max(), row.toString());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StageEventAnalyzer.print(rows, new PrintStream(out, true, StandardCharsets.UTF_8));
+        String table = out.toString(StandardCharsets.UTF_8);
+        assertTrue(table.contains("UserAuthentication"));
+        assertTrue(table.contains("bad_password"));
+    }
+}
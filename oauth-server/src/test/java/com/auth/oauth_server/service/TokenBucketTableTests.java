@@ -0,0 +1,176 @@
+package com.auth.oauth_server.service;
+
+import com.auth.oauth_server.config.RateLimitFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 端数のある補充レート・待ち時間 (Retry-After)・使われていないバケットの破棄・上限到達時の動作を確認する
+ */
+class TokenBucketTableTests {
+
+    private final AtomicLong millis = new AtomicLong(1_000_000);
+
+    private TokenBucketTable table(double perSecond, int burst, int maxBuckets, boolean failOpenWhenFull) {
+        return new TokenBucketTable(perSecond, burst, maxBuckets, failOpenWhenFull, millis::get);
+    }
+
+    @Test
+    void burstIsAllowedThenRequestsWaitForRefill() {
+        TokenBucketTable table = table(0.2, 3, 100, false); // 5 秒に 1 個
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, table.tryAcquire("alice"));
+        }
+        assertEquals(5_000, table.tryAcquire("alice"));
+
+        millis.addAndGet(4_999);
+        assertEquals(1, table.tryAcquire("alice"));
+        millis.addAndGet(1);
+        assertEquals(0, table.tryAcquire("alice"));
+        assertEquals(5_000, table.tryAcquire("alice"));
+
+        // 他のキーには影響しない
+        assertEquals(0, table.tryAcquire("bob"));
+    }
+
+    @Test
+    void fractionalRateKeepsTheRemainderBetweenCalls() {
+        TokenBucketTable table = table(0.3, 2, 100, false); // 1 個あたり 3333.3 ミリ秒
+        assertEquals(0, table.tryAcquire("alice"));
+        assertEquals(0, table.tryAcquire("alice"));
+        assertEquals(3_334, table.tryAcquire("alice"));
+
+        // 1 秒ごとに試すと、1 回あたりの補充 (0.3 個) の端数を持ち越すので 101 秒で 30 個になる
+        int allowed = 0;
+        for (int i = 0; i < 101; i++) {
+            millis.addAndGet(1_000);
+            if (table.tryAcquire("alice") == 0) {
+                allowed++;
+            }
+        }
+        assertEquals(30, allowed);
+    }
+
+    @Test
+    void idleBucketsAreEvicted() {
+        TokenBucketTable table = table(1, 2, 100, false);
+        table.tryAcquire("alice");
+        table.tryAcquire("bob");
+        table.tryAcquire("bob");
+        assertEquals(2, table.size());
+
+        millis.addAndGet(1_000); // alice は満杯に戻ったが bob はまだ 1 個足りない
+        table.evictIdle();
+        assertEquals(1, table.size());
+
+        millis.addAndGet(1_000);
+        table.evictIdle();
+        assertEquals(0, table.size());
+        // 作り直したバケットは満杯から始まる
+        assertEquals(0, table.tryAcquire("bob"));
+        assertEquals(0, table.tryAcquire("bob"));
+    }
+
+    @Test
+    void fullTableSharesTheOverflowBucket() {
+        TokenBucketTable table = table(1, 1, 1, false);
+        assertEquals(0, table.tryAcquire("alice"));
+        assertEquals(0, table.tryAcquire("bob")); // 上限超過: 共有バケットから
+        assertTrue(table.tryAcquire("carol") > 0); // 共有バケットは尽きている
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void fullTableFailsOpenForNewKeys() {
+        TokenBucketTable table = table(1, 1, 1, true);
+        assertEquals(0, table.tryAcquire("alice"));
+        assertTrue(table.tryAcquire("alice") > 0); // 表にあるキーは引き続き制限する
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, table.tryAcquire("random-" + i));
+        }
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void unknownClientIdsDoNotCrowdOutRegisteredClients() {
+        ClientRegistry clientRegistry = mock(ClientRegistry.class);
+        when(clientRegistry.find(anyString())).thenReturn(Optional.empty());
+        when(clientRegistry.find("client-app")).thenReturn(Optional.of(new ClientRegistry.ClientSnapshot(
+                "client-app", "secret", "app", "http://localhost:8080/callback", Set.of("read"), 0, false)));
+        RateLimitService service = new RateLimitService();
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "clientRegistry", clientRegistry);
+        ReflectionTestUtils.setField(service, "ipPerSecond", 20.0);
+        ReflectionTestUtils.setField(service, "ipBurst", 40);
+        ReflectionTestUtils.setField(service, "clientPerSecond", 1.0);
+        ReflectionTestUtils.setField(service, "clientBurst", 5);
+        ReflectionTestUtils.setField(service, "usernamePerSecond", 0.2);
+        ReflectionTestUtils.setField(service, "usernameBurst", 10);
+        ReflectionTestUtils.setField(service, "maxBuckets", 4);
+        service.init();
+
+        // 未登録の client_id を大量に送っても、クライアントの表も共有バケットも使われない
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(0, service.tryAcquire(null, "junk-" + i, null));
+        }
+        assertEquals(0, service.size());
+
+        // 登録済みクライアントは自分のバケットで制限される
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, service.tryAcquire(null, "client-app", null));
+        }
+        assertTrue(service.tryAcquire(null, "client-app", null) > 0);
+        assertEquals(1, service.size());
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> table(0, 1, 1, false));
+        assertThrows(IllegalArgumentException.class, () -> table(1, 0, 1, false));
+        assertThrows(IllegalArgumentException.class, () -> table(1, 1_001, 1, false));
+    }
+
+    @Test
+    void filterAnswersWithTooManyRequestsAndRetryAfterInWholeSeconds() throws Exception {
+        RateLimitService service = mock(RateLimitService.class);
+        when(service.tryAcquire(any(), any(), any())).thenReturn(1_500L);
+        RateLimitFilter filter = new RateLimitFilter();
+        ReflectionTestUtils.setField(filter, "rateLimitService", service);
+        ReflectionTestUtils.setField(filter, "enabled", true);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/login-action");
+        request.addParameter("username", "alice");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+
+        assertEquals(429, response.getStatus());
+        assertEquals("2", response.getHeader(HttpHeaders.RETRY_AFTER));
+        assertTrue(response.getContentAsString().contains("too_many_requests"));
+        assertNull(chain.getRequest()); // コントローラーまで届かない
+
+        when(service.tryAcquire(any(), any(), any())).thenReturn(0L);
+        MockFilterChain passed = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("POST", "/oauth/token"), new MockHttpServletResponse(), passed);
+        assertNotNull(passed.getRequest());
+    }
+}
@@ -0,0 +1,86 @@
+package com.auth.oauth_server.service;
+
+import io.jsonwebtoken.MalformedJwtException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * ネガティブキャッシュのヒット・期限切れ・上限到達時の動作を確認する
+ */
+class TokenIntrospectionServiceTests {
+
+    private JwtService jwtService;
+
+    @BeforeEach
+    void setUp() {
+        jwtService = mock(JwtService.class);
+        when(jwtService.verify(anyString())).thenThrow(new MalformedJwtException("bad"));
+    }
+
+    private TokenIntrospectionService service(long ttlSeconds, int maxSize) {
+        TokenIntrospectionService service = new TokenIntrospectionService();
+        ReflectionTestUtils.setField(service, "jwtService", jwtService);
+        ReflectionTestUtils.setField(service, "negativeTtlSeconds", ttlSeconds);
+        ReflectionTestUtils.setField(service, "negativeMaxSize", maxSize);
+        service.init();
+        return service;
+    }
+
+    @Test
+    void repeatedInvalidTokenIsAnsweredFromCache() {
+        TokenIntrospectionService service = service(30, 100);
+        assertNull(service.introspect("garbage"));
+        assertNull(service.introspect("garbage"));
+        assertNull(service.introspect("garbage"));
+        verify(jwtService, times(1)).verify("garbage");
+        assertEquals(2, service.negativeCacheHits());
+    }
+
+    @Test
+    void expiredEntryIsVerifiedAgain() {
+        TokenIntrospectionService service = service(0, 100); // 入れた時点で期限切れ
+        assertNull(service.introspect("garbage"));
+        assertNull(service.introspect("garbage"));
+        verify(jwtService, times(2)).verify("garbage");
+        assertEquals(0, service.negativeCacheHits());
+    }
+
+    @Test
+    void validTokenIsNotCachedAsInvalid() {
+        JwtService.VerifiedToken claims = new JwtService.VerifiedToken("alice", "read", "client-app", Long.MAX_VALUE, "jti");
+        when(jwtService.verify(eq("good"))).thenReturn(claims);
+        TokenIntrospectionService service = service(30, 100);
+        assertNotNull(service.introspect("good"));
+        assertNotNull(service.introspect("good"));
+        verify(jwtService, times(2)).verify("good");
+        assertEquals(0, service.negativeCacheSize());
+    }
+
+    @Test
+    void fullCacheStaysBoundedAndKeepsRecentEntries() {
+        TokenIntrospectionService service = service(30, 10);
+        for (int i = 0; i < 1_000; i++) {
+            assertNull(service.introspect("garbage-" + i));
+            assertTrue(service.negativeCacheSize() <= 10, "size=" + service.negativeCacheSize());
+        }
+        assertNull(service.introspect("garbage-999"));
+        verify(jwtService, times(1)).verify("garbage-999");
+        assertEquals(1, service.negativeCacheHits());
+
+        // 追い出された古いトークンは再検証される
+        assertNull(service.introspect("garbage-0"));
+        verify(jwtService, times(2)).verify("garbage-0");
+    }
+}
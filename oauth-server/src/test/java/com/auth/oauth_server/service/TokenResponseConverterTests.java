@@ -0,0 +1,83 @@
+package com.auth.oauth_server.service;
+
+import com.auth.oauth_server.config.TokenResponseConverter;
+import com.auth.oauth_server.controller.TokenResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 手書きの JSON 出力を Jackson で読み戻し、省略・エスケープ・非 ASCII・数値の書き出しを確認する
+ */
+class TokenResponseConverterTests {
+
+    private final TokenResponseConverter converter = new TokenResponseConverter();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private JsonNode write(TokenResponse response) throws IOException {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        converter.write(response, MediaType.APPLICATION_JSON, message);
+        assertEquals(MediaType.APPLICATION_JSON, message.getHeaders().getContentType());
+        // 本文は ASCII だけで書かれる (それ以外は \\u エスケープ)
+        byte[] body = message.getBodyAsBytes();
+        for (byte b : body) {
+            assertTrue(b >= 0x20 && b < 0x7F, "非 ASCII のバイトがあります: " + b);
+        }
+        return mapper.readTree(body);
+    }
+
+    @Test
+    void nullScopeAndRefreshTokenAreOmitted() throws IOException {
+        JsonNode json = write(new TokenResponse("eyJ.abc.def", 3600, null, null));
+        assertEquals("eyJ.abc.def", json.get("access_token").asText());
+        assertEquals("Bearer", json.get("token_type").asText());
+        assertEquals(3600, json.get("expires_in").asLong());
+        assertFalse(json.has("scope"));
+        assertFalse(json.has("refresh_token"));
+        assertEquals(3, json.size());
+    }
+
+    @Test
+    void allFieldsAreWritten() throws IOException {
+        JsonNode json = write(new TokenResponse("access", 1, "read write", "refresh"));
+        assertEquals("read write", json.get("scope").asText());
+        assertEquals("refresh", json.get("refresh_token").asText());
+        assertEquals(5, json.size());
+    }
+
+    @Test
+    void quotesBackslashesAndControlCharactersAreEscaped() throws IOException {
+        String tricky = "a\"b\\c\nd\te\u0000f\u001F\u007F";
+        JsonNode json = write(new TokenResponse(tricky, 60, tricky, tricky));
+        assertEquals(tricky, json.get("access_token").asText());
+        assertEquals(tricky, json.get("scope").asText());
+        assertEquals(tricky, json.get("refresh_token").asText());
+    }
+
+    @Test
+    void nonAsciiScopeRoundTrips() throws IOException {
+        String scope = "読み取り café 🔑";
+        JsonNode json = write(new TokenResponse("access", 60, scope, null));
+        assertEquals(scope, json.get("scope").asText());
+    }
+
+    @Test
+    void expiresInIsWrittenAsANumber() throws IOException {
+        for (long expiresIn : new long[]{0, 7, 10, 99, 100, 3600, 1_000_000_007L, Long.MAX_VALUE}) {
+            MockHttpOutputMessage message = new MockHttpOutputMessage();
+            converter.write(new TokenResponse("access", expiresIn, null, null), MediaType.APPLICATION_JSON, message);
+            JsonNode json = mapper.readTree(message.getBodyAsString(StandardCharsets.UTF_8));
+            assertTrue(json.get("expires_in").isIntegralNumber());
+            assertEquals(expiresIn, json.get("expires_in").asLong());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.auth.oauth_server.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 世代の置き換え・並行登録 (CAS)・Bloom フィルタの誤検知時の正確な集合での確認を検証する
+ */
+class TokenRevocationServiceTests {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static TokenRevocationService service(int expectedPerWindow) {
+        TokenRevocationService service = new TokenRevocationService();
+        ReflectionTestUtils.setField(service, "expectedPerWindow", expectedPerWindow);
+        return service;
+    }
+
+    private static String jti() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Test
+    void revokedJtiIsReportedUntilItsGenerationIsReplaced() {
+        TokenRevocationService service = service(1000);
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        String revoked = jti();
+        service.revoke(revoked, expiresAt);
+
+        assertTrue(service.isRevoked(revoked, expiresAt));
+        assertFalse(service.isRevoked(jti(), expiresAt));
+        assertFalse(service.isRevoked(null, expiresAt));
+        assertEquals(1, service.size());
+
+        // SLOTS 世代後の期限は同じスロットに入り、古い世代を置き換える
+        long later = expiresAt + TokenRevocationService.SLOTS * TokenRevocationService.WINDOW_MILLIS;
+        String next = jti();
+        service.revoke(next, later);
+        assertTrue(service.isRevoked(next, later));
+        assertFalse(service.isRevoked(revoked, expiresAt));
+        assertEquals(1, service.size());
+    }
+
+    @Test
+    void expiredOrMalformedJtiIsIgnored() {
+        TokenRevocationService service = service(1000);
+        service.revoke(jti(), System.currentTimeMillis() - 1);
+        service.revoke("not-a-uuid", System.currentTimeMillis() + HOUR);
+        assertEquals(0, service.size());
+    }
+
+    @Test
+    void concurrentRevocationsIntoANewGenerationAreAllKept() throws Exception {
+        TokenRevocationService service = service(1000);
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        int threads = 8;
+        int perThread = 500;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    List<String> ids = new ArrayList<>();
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        String id = jti();
+                        service.revoke(id, expiresAt);
+                        ids.add(id);
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+            for (Future<List<String>> future : futures) {
+                for (String id : future.get()) {
+                    assertTrue(service.isRevoked(id, expiresAt), id);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(threads * perThread, service.size());
+    }
+
+    @Test
+    void bloomFalsePositivesFallBackToTheExactSet() {
+        // 64 ビットのフィルタに大量に登録して飽和させる (ほぼすべての問い合わせが「含まれるかもしれない」になる)
+        TokenRevocationService service = service(1);
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        List<String> revoked = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            String id = jti();
+            service.revoke(id, expiresAt);
+            revoked.add(id);
+        }
+        for (String id : revoked) {
+            assertTrue(service.isRevoked(id, expiresAt));
+        }
+        for (int i = 0; i < 1_000; i++) {
+            assertFalse(service.isRevoked(jti(), expiresAt));
+        }
+    }
+}